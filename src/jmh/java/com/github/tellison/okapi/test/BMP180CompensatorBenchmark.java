@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180Compensator;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+
+/**
+ * Throughput of the compensation math, for single readings and for batches of
+ * raw samples.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180CompensatorBenchmark {
+
+    private static final int BATCH_SIZE = 4096;
+
+    // The calibration coefficients from the data sheet worked example.
+    private final BMP180Compensator compensator = new BMP180Compensator(408, -72, -14383, 32741, 32757, 23153, 6190,
+            4, -32768, -8711, 2868);
+
+    @Param({ "ULTRA_LOW_POWER", "ULTRA_HIGH_RESOLUTION" })
+    public BMP180SamplingMode mode;
+
+    private int[] ut;
+    private int[] up;
+    private float[] temperatures;
+    private float[] pressures;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        ut = new int[BATCH_SIZE];
+        up = new int[BATCH_SIZE];
+        temperatures = new float[BATCH_SIZE];
+        pressures = new float[BATCH_SIZE];
+        // Vary the raw values around the data sheet example, so the results
+        // cannot be folded to constants.
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            ut[i] = 27898 + (i % 64) - 32;
+            up[i] = (23843 + (i % 128) - 64) << mode.ordinal();
+        }
+    }
+
+    @Benchmark
+    public int pressure() {
+        int i = index++ & (BATCH_SIZE - 1);
+        int b5 = compensator.computeB5(ut[i]);
+        return compensator.computePressure(up[i], b5, mode);
+    }
+
+    @Benchmark
+    public int temperature() {
+        int i = index++ & (BATCH_SIZE - 1);
+        return BMP180Compensator.computeTemperature(compensator.computeB5(ut[i]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public float[] batch() {
+        compensator.compensate(ut, up, mode, temperatures, pressures);
+        return pressures;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * End to end latency of a temperature and pressure reading in each sampling
+ * mode, against the emulated device with conversions that complete
+ * immediately. The measured time is the driver's own conversion wait plus
+ * its overhead, with and without polling for the end of conversion, and
+ * with and without combined write-read transactions. Run with the GC profiler
+ * to see the allocation per reading.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180DeviceBenchmark {
+
+    @Param({ "ULTRA_LOW_POWER", "STANDARD", "HIGH_RESOLUTION", "ULTRA_HIGH_RESOLUTION" })
+    public BMP180SamplingMode mode;
+
+    @Param({ "false", "true" })
+    public boolean polling;
+
+    @Param({ "false", "true" })
+    public boolean combined;
+
+    private BMP180Device device;
+
+    private final BMP180Reading reading = new BMP180Reading();
+
+    @Setup
+    public void setUp() throws IOException {
+        DebugLogger.setEnabled(false);
+        MockI2CDevice.setZeroDelay(true);
+        I2CFactory.setFactory(new MockFactory());
+        device = new BMP180Device();
+        device.setConversionPolling(polling);
+        device.setCombinedTransactions(combined);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        device.close();
+        MockI2CDevice.setZeroDelay(false);
+        DebugLogger.setEnabled(true);
+    }
+
+    @Benchmark
+    public float[] readArray() throws IOException {
+        return device.getTemperatureAndPressure(mode);
+    }
+
+    @Benchmark
+    public BMP180Reading readHolder() throws IOException {
+        return device.getTemperatureAndPressure(mode, reading);
+    }
+}
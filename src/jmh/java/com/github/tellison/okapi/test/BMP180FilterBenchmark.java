@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180Filter;
+import com.github.tellison.okapi.device.BMP180FilterPipeline;
+import com.github.tellison.okapi.device.BMP180KalmanFilter;
+import com.github.tellison.okapi.device.BMP180MovingAverage;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180RunningMedian;
+
+/**
+ * Throughput of each reading filter stage, and of a pipeline of all three
+ * over both channels, fed with noisy pressures that contain occasional
+ * spikes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180FilterBenchmark {
+
+    // A repeating sequence of inputs, a power of two long.
+    private static final int INPUTS = 4096;
+
+    // The window of the moving average and running median stages.
+    @Param({ "5", "63" })
+    private int windowSize;
+
+    private final int[] pascals = new int[INPUTS];
+    private final long[] packed = new long[INPUTS];
+    private int next;
+
+    private BMP180Filter movingAverage;
+    private BMP180Filter runningMedian;
+    private BMP180Filter kalmanFilter;
+    private BMP180FilterPipeline pipeline;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(180);
+        for (int i = 0; i < INPUTS; i++) {
+            pascals[i] = 100_000 + (int) Math.round(random.nextGaussian() * 6);
+            if (random.nextInt(100) == 0) {
+                pascals[i] += 5_000;
+            }
+            packed[i] = BMP180Reading.pack(150 + random.nextInt(3), pascals[i]);
+        }
+        movingAverage = new BMP180MovingAverage(windowSize);
+        runningMedian = new BMP180RunningMedian(windowSize);
+        kalmanFilter = new BMP180KalmanFilter(1, 6);
+        pipeline = new BMP180FilterPipeline(new BMP180Filter[] { new BMP180MovingAverage(windowSize) },
+                new BMP180Filter[] { new BMP180RunningMedian(windowSize), new BMP180MovingAverage(windowSize),
+                        new BMP180KalmanFilter(1, 6) });
+    }
+
+    /* Returns the index of the next input. */
+    private int next() {
+        return next = (next + 1) & (INPUTS - 1);
+    }
+
+    @Benchmark
+    public int movingAverage() {
+        return movingAverage.filter(pascals[next()]);
+    }
+
+    @Benchmark
+    public int runningMedian() {
+        return runningMedian.filter(pascals[next()]);
+    }
+
+    @Benchmark
+    public int kalmanFilter() {
+        return kalmanFilter.filter(pascals[next()]);
+    }
+
+    @Benchmark
+    public long pipeline() {
+        return pipeline.filter(packed[next()]);
+    }
+}
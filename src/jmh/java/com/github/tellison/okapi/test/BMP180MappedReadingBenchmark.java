@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180MappedReadingReader;
+import com.github.tellison.okapi.device.BMP180MappedReadingWriter;
+import com.github.tellison.okapi.device.BMP180Reading;
+
+/**
+ * A single writer and several readers sharing a memory-mapped reading file,
+ * with each reader using its own mapping as another process would. The
+ * throughput of each side is reported separately.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class BMP180MappedReadingBenchmark {
+
+    private Path directory;
+    private Path file;
+    private BMP180MappedReadingWriter writer;
+    private long timestamp;
+
+    /*
+     * The reader for each reading thread.
+     */
+    @State(Scope.Thread)
+    public static class ReaderState {
+        BMP180MappedReadingReader reader;
+        final BMP180Reading reading = new BMP180Reading();
+        final long[] timestamps = new long[60];
+        final int[] deciCelsius = new int[60];
+        final int[] pascals = new int[60];
+
+        @Setup
+        public void setUp(BMP180MappedReadingBenchmark shared) throws IOException {
+            reader = new BMP180MappedReadingReader(shared.file);
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("okapi");
+        file = directory.resolve("readings");
+        writer = new BMP180MappedReadingWriter(file, 1024);
+        for (int i = 0; i < 1024; i++) {
+            writer.write(timestamp++, BMP180Reading.pack(150, 101_325));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(1)
+    public void write() {
+        long now = timestamp++;
+        writer.write(now, BMP180Reading.pack((int) now & 0x3FF, 101_325));
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(2)
+    public BMP180Reading readLatest(ReaderState state) {
+        state.reader.readLatest(state.reading);
+        return state.reading;
+    }
+
+    @Benchmark
+    @Group("shared")
+    @GroupThreads(1)
+    public int readRecent(ReaderState state) {
+        return state.reader.readRecent(state.timestamps, state.deciCelsius, state.pascals);
+    }
+}
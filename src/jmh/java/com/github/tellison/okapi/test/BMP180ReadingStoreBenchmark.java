@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180ReadingStore;
+
+/**
+ * Time range queries against the compressed reading store, and against a
+ * plain array store of the same readings for comparison. The memory used per
+ * reading by each store is printed when the benchmark is set up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180ReadingStoreBenchmark {
+
+    // A day of readings every second.
+    private static final int READINGS = 86_400;
+    private static final long START = 1_500_000_000_000L;
+
+    /*
+     * Readings in parallel arrays, searched by timestamp, using 16 bytes per
+     * reading.
+     */
+    private static final class ArrayStore {
+        final long[] timestamps = new long[READINGS];
+        final int[] deciCelsius = new int[READINGS];
+        final int[] pascals = new int[READINGS];
+
+        int query(long from, long to, long[] times, int[] temperatures, int[] pressures) {
+            int first = Arrays.binarySearch(timestamps, from);
+            if (first < 0) {
+                first = -first - 1;
+            }
+            int copied = 0;
+            for (int i = first; i < READINGS && timestamps[i] <= to && copied < times.length; i++) {
+                times[copied] = timestamps[i];
+                temperatures[copied] = deciCelsius[i];
+                pressures[copied] = pascals[i];
+                copied++;
+            }
+            return copied;
+        }
+    }
+
+    // The length of each query, in readings.
+    @Param({ "60", "3600" })
+    public int range;
+
+    // Readings per block, trading memory for the readings decoded before the
+    // start of a query within a block.
+    @Param({ "128", "1024" })
+    public int blockSize;
+
+    private BMP180ReadingStore store;
+    private ArrayStore arrays;
+
+    private long[] times;
+    private int[] temperatures;
+    private int[] pressures;
+
+    private int query;
+
+    @Setup
+    public void setUp() {
+        store = new BMP180ReadingStore(blockSize, (READINGS + blockSize - 1) / blockSize);
+        arrays = new ArrayStore();
+        int temperature = 215;
+        int pressure = 101_325;
+        for (int i = 0; i < READINGS; i++) {
+            // Slowly varying values, sampled with a little jitter.
+            long timestamp = START + i * 1000L + (i * 7 % 5);
+            temperature += (i * 31 % 7 == 0) ? (i % 2) * 2 - 1 : 0;
+            pressure += i * 17 % 9 - 4;
+            store.append(timestamp, BMP180Reading.pack(temperature, pressure));
+            arrays.timestamps[i] = timestamp;
+            arrays.deciCelsius[i] = temperature;
+            arrays.pascals[i] = pressure;
+        }
+        times = new long[range];
+        temperatures = new int[range];
+        pressures = new int[range];
+        System.out.printf("%nBytes per reading: compressed %.2f, array %d%n", (double) store.getMemoryBytes()
+                / READINGS, Long.BYTES + 2 * Integer.BYTES);
+    }
+
+    /* Returns the start of the next query, stepping through the day. */
+    private long nextFrom() {
+        query = (query + 9973) % (READINGS - range);
+        return START + query * 1000L;
+    }
+
+    @Benchmark
+    public int compressed() {
+        long from = nextFrom();
+        return store.query(from, from + (range - 1) * 1000L, times, temperatures, pressures);
+    }
+
+    @Benchmark
+    public int array() {
+        long from = nextFrom();
+        return arrays.query(from, from + (range - 1) * 1000L, times, temperatures, pressures);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180CalibrationCache;
+import com.github.tellison.okapi.device.BMP180Device;
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Time to construct a device, with and without a warm calibration cache, on
+ * an emulated 100kHz bus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180StartupBenchmark {
+
+    // Nine bit times per byte, including the acknowledgement, at 100kHz.
+    private static final long BYTE_TRANSFER_NANOS = 90_000;
+
+    @Param({ "false", "true" })
+    public boolean cached;
+
+    private Path directory;
+    private BMP180CalibrationCache cache;
+
+    private BMP180Device device;
+
+    @Setup
+    public void setUp() throws IOException {
+        DebugLogger.setEnabled(false);
+        MockI2CDevice.setByteTransferNanos(BYTE_TRANSFER_NANOS);
+        I2CFactory.setFactory(new MockFactory());
+        directory = Files.createTempDirectory("okapi");
+        if (cached) {
+            cache = new BMP180CalibrationCache(directory);
+            open().close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        MockI2CDevice.setByteTransferNanos(0);
+        DebugLogger.setEnabled(true);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+        device.close();
+    }
+
+    @Benchmark
+    public BMP180Device startup() throws IOException {
+        device = open();
+        return device;
+    }
+
+    private BMP180Device open() throws IOException {
+        return new BMP180Device(I2CBus.BUS_1, BMP180Device.DEVICE_I2C_ADDRESS, cache);
+    }
+}
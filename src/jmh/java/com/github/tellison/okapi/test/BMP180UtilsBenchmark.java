@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.tellison.okapi.device.BMP180Utils;
+
+/**
+ * Throughput of the altitude and pressure utility calculations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BMP180UtilsBenchmark {
+
+    // Non-final inputs so that the calculations are not constant folded.
+    private float seaLevelPressure = 1013.25f;
+    private float measuredPressure = 699.64f;
+    private float measuredTemperature = 15.0f;
+    private float heightASL = 3000.0f;
+
+    @Benchmark
+    public float absoluteAltitude() {
+        return BMP180Utils.absoluteAltitude(seaLevelPressure, measuredPressure, measuredTemperature);
+    }
+
+    @Benchmark
+    public float seaLevelPressure() {
+        return BMP180Utils.seaLevelPressure(heightASL, measuredPressure, measuredTemperature);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * Summary statistics of the readings taken within a period of time.
+ *
+ * Instances are mutable holders, owned by the caller, that are filled in by
+ * {@link BMP180Rollup} queries. The values are in the fixed-point units of
+ * {@link BMP180Reading}.
+ */
+public class BMP180Aggregate {
+
+    // The period covered, in milliseconds since the epoch.
+    private long start;
+    private long end;
+
+    private int count;
+
+    // Temperature statistics, in steps of 0.1 deg.C.
+    private int minDeciCelsius;
+    private int maxDeciCelsius;
+    private long sumDeciCelsius;
+
+    // Pressure statistics, in Pa.
+    private int minPascals;
+    private int maxPascals;
+    private long sumPascals;
+
+    /**
+     * Constructs a new, empty, aggregate holder.
+     */
+    public BMP180Aggregate() {
+        super();
+    }
+
+    /**
+     * Returns the start of the period.
+     *
+     * @return The start time, inclusive, in milliseconds since the epoch.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the period.
+     *
+     * @return The end time, exclusive, in milliseconds since the epoch.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of readings in the period.
+     *
+     * @return The count of readings.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the lowest temperature in the period.
+     *
+     * @return The minimum temperature in steps of 0.1 deg.C.
+     */
+    public int getMinDeciCelsius() {
+        return minDeciCelsius;
+    }
+
+    /**
+     * Returns the highest temperature in the period.
+     *
+     * @return The maximum temperature in steps of 0.1 deg.C.
+     */
+    public int getMaxDeciCelsius() {
+        return maxDeciCelsius;
+    }
+
+    /**
+     * Returns the mean temperature in the period.
+     *
+     * @return The mean temperature in steps of 0.1 deg.C.
+     */
+    public double getMeanDeciCelsius() {
+        return (double) sumDeciCelsius / count;
+    }
+
+    /**
+     * Returns the lowest pressure in the period.
+     *
+     * @return The minimum pressure in Pa.
+     */
+    public int getMinPascals() {
+        return minPascals;
+    }
+
+    /**
+     * Returns the highest pressure in the period.
+     *
+     * @return The maximum pressure in Pa.
+     */
+    public int getMaxPascals() {
+        return maxPascals;
+    }
+
+    /**
+     * Returns the mean pressure in the period.
+     *
+     * @return The mean pressure in Pa.
+     */
+    public double getMeanPascals() {
+        return (double) sumPascals / count;
+    }
+
+    /*
+     * Sets all the values of this aggregate.
+     */
+    void set(long start, long end, int count, int minDeciCelsius, int maxDeciCelsius, long sumDeciCelsius,
+            int minPascals, int maxPascals, long sumPascals) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.minDeciCelsius = minDeciCelsius;
+        this.maxDeciCelsius = maxDeciCelsius;
+        this.sumDeciCelsius = sumDeciCelsius;
+        this.minPascals = minPascals;
+        this.maxPascals = maxPascals;
+        this.sumPascals = sumPascals;
+    }
+
+    /*
+     * Combines the values of another period into this aggregate.
+     */
+    void merge(long start, long end, int count, int minDeciCelsius, int maxDeciCelsius, long sumDeciCelsius,
+            int minPascals, int maxPascals, long sumPascals) {
+        if (this.count == 0) {
+            set(start, end, count, minDeciCelsius, maxDeciCelsius, sumDeciCelsius, minPascals, maxPascals,
+                    sumPascals);
+            return;
+        }
+        this.start = Math.min(this.start, start);
+        this.end = Math.max(this.end, end);
+        this.count += count;
+        this.minDeciCelsius = Math.min(this.minDeciCelsius, minDeciCelsius);
+        this.maxDeciCelsius = Math.max(this.maxDeciCelsius, maxDeciCelsius);
+        this.sumDeciCelsius += sumDeciCelsius;
+        this.minPascals = Math.min(this.minPascals, minPascals);
+        this.maxPascals = Math.max(this.maxPascals, maxPascals);
+        this.sumPascals += sumPascals;
+    }
+
+    /**
+     * Returns a readable representation of this aggregate.
+     *
+     * @return A debug string showing the values of this aggregate.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(start=" + start + ", end=" + end + ", count=" + count
+                + ", deciCelsius=" + minDeciCelsius + ".." + maxDeciCelsius + ", pascals=" + minPascals + ".."
+                + maxPascals + ")";
+    }
+}
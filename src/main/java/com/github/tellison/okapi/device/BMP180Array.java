@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+
+/**
+ * A set of BMP180 devices connected via a TCA9548A style I2C multiplexer.
+ * 
+ * Every BMP180 device has the same fixed I2C address, so several devices can
+ * only share a bus when each is on its own downstream channel of a
+ * multiplexer. Instances of this class own the multiplexer channel selection,
+ * and the calibration coefficients of each device.
+ * 
+ * Readings are pipelined across the devices: while one device is converting,
+ * the bus is used to start or collect a conversion on another, so that reading
+ * all of the devices takes little longer than reading one of them.
+ *
+ */
+public class BMP180Array implements Closeable {
+
+    /**
+     * The default I2C bus address of the multiplexer, a constant
+     * <code>0x70</code>.
+     */
+    public static final int MULTIPLEXER_I2C_ADDRESS = 0x70;
+
+    // The number of downstream channels on the multiplexer.
+    private static final int MAX_CHANNELS = 8;
+
+    // Value of the selected channel when it is not known.
+    private static final int NO_CHANNEL = -1;
+
+    // Device references.
+    private final I2CDevice multiplexer;
+    private final I2CDevice device;
+    private final int busNumber;
+    private volatile I2CBus bus; // Nulled when closed.
+
+    // The multiplexer channel of each device.
+    private final int[] channels;
+
+    // Calculations using the calibration coefficients of each device.
+    private final BMP180Compensator[] compensators;
+
+    // Guards access to the bus, including for the duration of conversions.
+    private final DeviceLock lock = new DeviceLock();
+
+    // The currently selected multiplexer channel, only used while holding the
+    // lock.
+    private int selected = NO_CHANNEL;
+
+    // Transfer buffer and per device scratch space for a reading, only used
+    // while holding the lock.
+    private final byte[] data = new byte[3];
+    private final long[] deadlines;
+    private final int[] ut;
+    private final int[] up;
+
+    /**
+     * Constructs a new representation of the devices on the given multiplexer
+     * channels, and reads their calibration information.
+     * 
+     * The bus handle is shared with other devices opened by bus number.
+     * 
+     * @param busNumber
+     *            the I2C bus that the multiplexer is connected to.
+     * @param multiplexerAddress
+     *            the I2C address of the multiplexer.
+     * @param channels
+     *            the multiplexer channel of each device, from 0 to 7.
+     * 
+     * @throws IllegalArgumentException
+     *             No channels are given, or a channel is out of range or
+     *             repeated.
+     * @throws IOException
+     *             A problem occurred communicating with the devices.
+     */
+    public BMP180Array(int busNumber, int multiplexerAddress, int... channels) throws IOException {
+        super();
+        if (channels.length == 0) {
+            throw new IllegalArgumentException("At least one channel is required.");
+        }
+        int seen = 0;
+        for (int channel : channels) {
+            if (channel < 0 || channel >= MAX_CHANNELS) {
+                throw new IllegalArgumentException("Invalid multiplexer channel: " + channel);
+            }
+            if ((seen & (1 << channel)) != 0) {
+                throw new IllegalArgumentException("Repeated multiplexer channel: " + channel);
+            }
+            seen |= 1 << channel;
+        }
+        this.channels = channels.clone();
+        compensators = new BMP180Compensator[channels.length];
+        deadlines = new long[channels.length];
+        ut = new int[channels.length];
+        up = new int[channels.length];
+
+        this.busNumber = busNumber;
+        bus = SharedBuses.acquire(busNumber);
+        try {
+            multiplexer = bus.getDevice(multiplexerAddress);
+            device = bus.getDevice(BMP180Device.DEVICE_I2C_ADDRESS);
+            for (int i = 0; i < channels.length; i++) {
+                select(i);
+                compensators[i] = BMP180Protocol.readCalibrationData(device);
+            }
+        } catch (IOException | RuntimeException ex) {
+            SharedBuses.release(busNumber);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the number of devices in this array.
+     * 
+     * @return The number of devices.
+     */
+    public int getSensorCount() {
+        return channels.length;
+    }
+
+    /**
+     * Returns the multiplexer channel of a device.
+     * 
+     * @param index
+     *            the index of the device in this array.
+     * 
+     * @return The multiplexer channel of the device.
+     */
+    public int getChannel(int index) {
+        return channels[index];
+    }
+
+    /**
+     * Returns the compensator that calculates true values for a device from
+     * raw readings, using the device's calibration coefficients.
+     * 
+     * @param index
+     *            the index of the device in this array.
+     * 
+     * @return The compensator for the device.
+     */
+    public BMP180Compensator getCompensator(int index) {
+        return compensators[index];
+    }
+
+    /**
+     * Reads the temperature and pressure from every device in the given mode.
+     * 
+     * The conversions on the devices overlap, so this takes roughly the time
+     * of a single device reading plus the bus time to select and talk to each
+     * device. A <code>null</code> element of the readings array is replaced
+     * with a new holder, and existing holders are reused.
+     * 
+     * @param mode
+     *            the sampling mode requested for the device pressure readings.
+     * @param readings
+     *            the holders that receive the reading for the device at the
+     *            same index.
+     * 
+     * @return The given array of readings.
+     * 
+     * @throws IllegalArgumentException
+     *             The readings array length is not the number of devices.
+     * @throws IOException
+     *             A problem occurred communicating with the devices.
+     */
+    public BMP180Reading[] getTemperatureAndPressure(BMP180SamplingMode mode, BMP180Reading[] readings)
+            throws IOException {
+        int count = channels.length;
+        if (readings.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " readings, but got " + readings.length);
+        }
+        lock.lock();
+        try {
+            checkOpen();
+            // Temperature can always be read at ultra low power speeds.
+            long temperatureNanos = BMP180Protocol.conversionNanos(BMP180SamplingMode.ULTRA_LOW_POWER);
+            long pressureNanos = BMP180Protocol.conversionNanos(mode);
+
+            for (int i = 0; i < count; i++) {
+                select(i);
+                BMP180Protocol.startTemperatureConversion(device);
+                deadlines[i] = System.nanoTime() + temperatureNanos;
+            }
+            for (int i = 0; i < count; i++) {
+                BMP180Protocol.awaitDeadline(deadlines[i]);
+                select(i);
+                ut[i] = BMP180Protocol.readUncalibratedTemperature(device, data);
+                BMP180Protocol.startPressureConversion(device, mode);
+                deadlines[i] = System.nanoTime() + pressureNanos;
+            }
+            for (int i = 0; i < count; i++) {
+                BMP180Protocol.awaitDeadline(deadlines[i]);
+                select(i);
+                up[i] = BMP180Protocol.readUncompensatedPressure(device, data, mode);
+            }
+
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                BMP180Compensator compensator = compensators[i];
+                int b5 = compensator.computeB5(ut[i]);
+                int pa = compensator.computePressure(up[i], b5, mode);
+                if (readings[i] == null) {
+                    readings[i] = new BMP180Reading();
+                }
+                readings[i].set(timestamp, BMP180Compensator.computeTemperature(b5), pa);
+            }
+            return readings;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Free underlying resources associated with the devices and mark them as
+     * closed. Further operations on the array, including further calls to
+     * <code>close()</code>, result in an exception.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the devices.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            checkOpen();
+            try {
+                // Leave the downstream channels disconnected.
+                multiplexer.write((byte) 0);
+                selected = NO_CHANNEL;
+            } finally {
+                bus = null;
+                SharedBuses.release(busNumber);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Selects the multiplexer channel of the device at the given index, if it
+     * is not already selected. Must hold the lock.
+     */
+    private void select(int index) throws IOException {
+        int channel = channels[index];
+        if (selected != channel) {
+            // Forget the selection until the multiplexer has acknowledged it.
+            selected = NO_CHANNEL;
+            multiplexer.write((byte) (1 << channel));
+            selected = channel;
+        }
+    }
+
+    /*
+     * Check that the array was not closed by the user.
+     */
+    private void checkOpen() throws IOException {
+        if (bus == null) {
+            throw new IOException("BMP180 array has been closed.");
+        }
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     * 
+     * @return A debug string showing the multiplexer channels of the devices.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(this.getClass().getSimpleName());
+        buffer.append("(channels=");
+        for (int i = 0; i < channels.length; i++) {
+            if (i > 0) {
+                buffer.append(',');
+            }
+            buffer.append(channels[i]);
+        }
+        buffer.append(')');
+        return buffer.toString();
+    }
+}
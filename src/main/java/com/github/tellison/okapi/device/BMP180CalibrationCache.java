@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * An on-disk cache of BMP180 device calibration data.
+ * 
+ * Reading the calibration data from a device's EEPROM takes a 22 byte
+ * transfer on the I2C bus. A device constructed with a cache loads its
+ * calibration data from the cache when possible, then checks the cached data
+ * against the device in the background.
+ * <p>
+ * Entries are kept in files in the cache directory, one for each combination
+ * of bus number, device address, and chip ID. Each file carries a checksum,
+ * and entries that are damaged or do not match their key are ignored and
+ * replaced.
+ *
+ * @see BMP180Device#BMP180Device(int, int, BMP180CalibrationCache)
+ */
+public final class BMP180CalibrationCache {
+
+    // Identifies cache files, and their format version.
+    private static final int MAGIC = 0x42313830; // "B180"
+    private static final int VERSION = 1;
+
+    // Magic, version, bus, address, chip ID, data, and checksum.
+    private static final int FILE_LENGTH = 5 * 4 + BMP180Protocol.CALIB_BYTES_LENGTH + 4;
+
+    private final Path directory;
+
+    /**
+     * Constructs a cache that keeps its entries in the given directory. The
+     * directory is created when the first entry is stored.
+     * 
+     * @param directory
+     *            the directory holding the cache files.
+     */
+    public BMP180CalibrationCache(Path directory) {
+        super();
+        if (directory == null) {
+            throw new NullPointerException("directory");
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory holding the cache files.
+     * 
+     * @return The cache directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /*
+     * Returns the cached calibration data for the given key, or null if there
+     * is no intact entry.
+     */
+    byte[] load(int bus, int address, int chipID) {
+        byte[] contents;
+        try {
+            contents = Files.readAllBytes(fileFor(bus, address, chipID));
+        } catch (IOException ex) {
+            // A missing or unreadable entry is a miss, and will be replaced.
+            return null;
+        }
+        if (contents.length != FILE_LENGTH) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != bus
+                || buffer.getInt() != address || buffer.getInt() != chipID) {
+            return null;
+        }
+        byte[] calibData = new byte[BMP180Protocol.CALIB_BYTES_LENGTH];
+        buffer.get(calibData);
+        if (buffer.getInt() != (int) checksum(contents, FILE_LENGTH - 4)) {
+            return null;
+        }
+        return calibData;
+    }
+
+    /*
+     * Stores the calibration data for the given key, replacing any existing
+     * entry atomically where the file system allows.
+     */
+    void store(int bus, int address, int chipID, byte[] calibData) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(FILE_LENGTH);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bus);
+            out.writeInt(address);
+            out.writeInt(chipID);
+            out.write(calibData, 0, BMP180Protocol.CALIB_BYTES_LENGTH);
+            out.writeInt((int) checksum(bytes.toByteArray(), bytes.size()));
+        }
+
+        Files.createDirectories(directory);
+        Path file = fileFor(bus, address, chipID);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /* Returns the cache file for the given key. */
+    private Path fileFor(int bus, int address, int chipID) {
+        return directory.resolve(String.format("bmp180-bus%d-0x%02x-id0x%02x.cal", bus, address, chipID));
+    }
+
+    /* Returns the checksum of the first length bytes. */
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     * 
+     * @return A debug string showing the cache directory.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + directory + ")";
+    }
+}
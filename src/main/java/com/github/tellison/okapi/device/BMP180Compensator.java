@@ -0,0 +1,361 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Calculates true temperature and pressure values from raw device readings.
+ *
+ * Every BMP180 device has 11 individual calibration coefficients, set at time
+ * of manufacturing, that are used to convert the uncompensated temperature
+ * (UT) and pressure (UP) values read from the device into real units. This
+ * class implements the calculations described in the device data sheet.
+ * <p>
+ * Instances are immutable, so can be shared freely between threads. They do
+ * not need a device, so can also be used to process raw values captured
+ * elsewhere.
+ */
+public final class BMP180Compensator {
+
+    // Number of samples above which batch compensation is split across cores.
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // Calibration coefficients for an individual device.
+    private final int ac1, ac2, ac3;
+    private final int ac4, ac5, ac6;
+    private final int b1, b2, mb, mc, md;
+
+    /**
+     * Constructs a new compensator from the given calibration coefficients.
+     *
+     * The coefficients AC4, AC5, and AC6 are unsigned 16-bit values, and all
+     * the others are signed 16-bit values, as read from the device.
+     *
+     * @param ac1
+     *            calibration coefficient AC1.
+     * @param ac2
+     *            calibration coefficient AC2.
+     * @param ac3
+     *            calibration coefficient AC3.
+     * @param ac4
+     *            calibration coefficient AC4.
+     * @param ac5
+     *            calibration coefficient AC5.
+     * @param ac6
+     *            calibration coefficient AC6.
+     * @param b1
+     *            calibration coefficient B1.
+     * @param b2
+     *            calibration coefficient B2.
+     * @param mb
+     *            calibration coefficient MB.
+     * @param mc
+     *            calibration coefficient MC.
+     * @param md
+     *            calibration coefficient MD.
+     * @throws IllegalArgumentException
+     *             if any coefficient is out of range for its type.
+     */
+    public BMP180Compensator(int ac1, int ac2, int ac3, int ac4, int ac5, int ac6, int b1, int b2, int mb, int mc,
+            int md) {
+        super();
+        this.ac1 = checkSigned("AC1", ac1);
+        this.ac2 = checkSigned("AC2", ac2);
+        this.ac3 = checkSigned("AC3", ac3);
+        this.ac4 = checkUnsigned("AC4", ac4);
+        this.ac5 = checkUnsigned("AC5", ac5);
+        this.ac6 = checkUnsigned("AC6", ac6);
+        this.b1 = checkSigned("B1", b1);
+        this.b2 = checkSigned("B2", b2);
+        this.mb = checkSigned("MB", mb);
+        this.mc = checkSigned("MC", mc);
+        this.md = checkSigned("MD", md);
+    }
+
+    private static int checkSigned(String name, int value) {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Calibration coefficient " + name + " out of range: " + value);
+        }
+        return value;
+    }
+
+    private static int checkUnsigned(String name, int value) {
+        if (value < 0 || value > 0xFFFF) {
+            throw new IllegalArgumentException("Calibration coefficient " + name + " out of range: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Calculates the temperature compensation factor, B5, from an
+     * uncompensated temperature reading.
+     *
+     * The factor is needed to calculate both the true temperature and the
+     * true pressure.
+     *
+     * @param ut
+     *            the uncompensated temperature read from the device.
+     * @return The temperature compensation factor.
+     */
+    public int computeB5(int ut) {
+        long t1 = ((long) (ut - ac6) * ac5) >> 15;
+        long t2 = ((long) mc << 11) / (t1 + md);
+        return (int) (t1 + t2);
+    }
+
+    /**
+     * Calculates the true temperature from a temperature compensation factor.
+     *
+     * @param b5
+     *            the temperature compensation factor.
+     * @return The temperature in steps of 0.1 deg.C.
+     */
+    public static int computeTemperature(int b5) {
+        return (b5 + 8) >> 4;
+    }
+
+    /**
+     * Calculates the true pressure from an uncompensated pressure reading.
+     *
+     * @param up
+     *            the uncompensated pressure read from the device.
+     * @param b5
+     *            the temperature compensation factor, see
+     *            {@link #computeB5(int)}.
+     * @param mode
+     *            the sampling mode used to read the pressure.
+     * @return The pressure in Pa.
+     */
+    public int computePressure(int up, int b5, BMP180SamplingMode mode) {
+        int oss = mode.getOSS();
+        long b6 = b5 - 4000;
+        long p1 = (b2 * (b6 * b6) >> 12) >> 11;
+        long p2 = ac2 * b6 >> 11;
+        long p3 = p1 + p2;
+        long b3 = (((ac1 * 4 + p3) << oss) + 2) / 4;
+        p1 = ac3 * b6 >> 13;
+        p2 = (b1 * ((b6 * b6) >> 12)) >> 16;
+        p3 = ((p1 + p2) + 2) >> 2;
+        long b4 = (ac4 * (p3 + 32768)) >> 15;
+        long b7 = (up - b3) * (50000 >> oss);
+
+        long pa = (b7 < 0x80000000L) ? (b7 * 2) / b4 : (b7 / b4) * 2;
+        p1 = (pa >> 8) * (pa >> 8);
+        p1 = (p1 * 3038) >> 16;
+        p2 = (-7357 * pa) >> 16;
+
+        return (int) (pa + ((p1 + p2 + 3791) >> 4));
+    }
+
+    /**
+     * Returns the true temperature for an uncompensated temperature reading.
+     *
+     * @param ut
+     *            the uncompensated temperature read from the device.
+     * @return The temperature in deg.C.
+     */
+    public float getTemperature(int ut) {
+        return toCelsius(computeB5(ut));
+    }
+
+    /**
+     * Returns the true pressure for uncompensated temperature and pressure
+     * readings.
+     *
+     * @param ut
+     *            the uncompensated temperature read from the device.
+     * @param up
+     *            the uncompensated pressure read from the device.
+     * @param mode
+     *            the sampling mode used to read the pressure.
+     * @return The pressure in hPa.
+     */
+    public float getPressure(int ut, int up, BMP180SamplingMode mode) {
+        return toHectopascals(computePressure(up, computeB5(ut), mode));
+    }
+
+    /**
+     * Calculates true temperatures and pressures for arrays of raw readings.
+     *
+     * This is equivalent to calling {@link #getTemperature(int)} and
+     * {@link #getPressure(int, int, BMP180SamplingMode)} for each pair of raw
+     * values, but is intended for recomputing large archives of readings. Large
+     * inputs are split into ranges that are compensated in parallel.
+     *
+     * @param ut
+     *            the uncompensated temperatures read from the device.
+     * @param up
+     *            the uncompensated pressures read from the device.
+     * @param mode
+     *            the sampling mode used to read all the pressures.
+     * @param temperatures
+     *            receives the temperatures, in deg.C.
+     * @param pressures
+     *            receives the pressures, in hPa.
+     * @throws IllegalArgumentException
+     *             if the arrays are not all the same length.
+     */
+    public void compensate(int[] ut, int[] up, BMP180SamplingMode mode, float[] temperatures, float[] pressures) {
+        int length = ut.length;
+        if (up.length != length || temperatures.length != length || pressures.length != length) {
+            throw new IllegalArgumentException("Raw and compensated arrays must be the same length.");
+        }
+        int oss = mode.getOSS();
+        if (length < PARALLEL_THRESHOLD) {
+            compensate(ut, up, oss, temperatures, pressures, 0, length);
+            return;
+        }
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int chunkSize = (length + chunks - 1) / chunks;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * chunkSize;
+            int to = Math.min(length, from + chunkSize);
+            if (from < to) {
+                compensate(ut, up, oss, temperatures, pressures, from, to);
+            }
+        });
+    }
+
+    /*
+     * Compensates the given range of raw readings. The loop is a simple
+     * counted loop over primitive arrays, with the coefficients held in locals
+     * and no calls, so the JIT can unroll it and eliminate bounds checks.
+     */
+    private void compensate(int[] ut, int[] up, int oss, float[] temperatures, float[] pressures, int from,
+            int to) {
+        final long ac1 = this.ac1, ac2 = this.ac2, ac3 = this.ac3;
+        final long ac4 = this.ac4, ac5 = this.ac5, ac6 = this.ac6;
+        final long b1 = this.b1, b2 = this.b2, mc = this.mc, md = this.md;
+        final long ossScale = 50000 >> oss;
+
+        for (int i = from; i < to; i++) {
+            // Temperature, as computeB5(int).
+            long t1 = ((ut[i] - ac6) * ac5) >> 15;
+            long b5 = t1 + (mc << 11) / (t1 + md);
+            temperatures[i] = (float) ((b5 + 8) >> 4) / 10;
+
+            // Pressure, as computePressure(int, int, BMP180SamplingMode).
+            long b6 = b5 - 4000;
+            long b6Squared = (b6 * b6) >> 12;
+            long p1 = (b2 * (b6 * b6) >> 12) >> 11;
+            long p2 = ac2 * b6 >> 11;
+            long b3 = (((ac1 * 4 + p1 + p2) << oss) + 2) / 4;
+            p1 = ac3 * b6 >> 13;
+            p2 = (b1 * b6Squared) >> 16;
+            long b4 = (ac4 * ((((p1 + p2) + 2) >> 2) + 32768)) >> 15;
+            long b7 = (up[i] - b3) * ossScale;
+
+            long pa = (b7 < 0x80000000L) ? (b7 * 2) / b4 : (b7 / b4) * 2;
+            p1 = (pa >> 8) * (pa >> 8);
+            p1 = (p1 * 3038) >> 16;
+            p2 = (-7357 * pa) >> 16;
+            pressures[i] = (float) (pa + ((p1 + p2 + 3791) >> 4)) / 100;
+        }
+    }
+
+    /* Converts a temperature compensation factor to deg.C. */
+    static float toCelsius(int b5) {
+        return (float) computeTemperature(b5) / 10;
+    }
+
+    /* Converts a pressure in Pa to hPa. */
+    static float toHectopascals(int pa) {
+        return (float) pa / 100;
+    }
+
+    /** @return Calibration coefficient AC1. */
+    public int getAC1() {
+        return ac1;
+    }
+
+    /** @return Calibration coefficient AC2. */
+    public int getAC2() {
+        return ac2;
+    }
+
+    /** @return Calibration coefficient AC3. */
+    public int getAC3() {
+        return ac3;
+    }
+
+    /** @return Calibration coefficient AC4. */
+    public int getAC4() {
+        return ac4;
+    }
+
+    /** @return Calibration coefficient AC5. */
+    public int getAC5() {
+        return ac5;
+    }
+
+    /** @return Calibration coefficient AC6. */
+    public int getAC6() {
+        return ac6;
+    }
+
+    /** @return Calibration coefficient B1. */
+    public int getB1() {
+        return b1;
+    }
+
+    /** @return Calibration coefficient B2. */
+    public int getB2() {
+        return b2;
+    }
+
+    /** @return Calibration coefficient MB. */
+    public int getMB() {
+        return mb;
+    }
+
+    /** @return Calibration coefficient MC. */
+    public int getMC() {
+        return mc;
+    }
+
+    /** @return Calibration coefficient MD. */
+    public int getMD() {
+        return md;
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     *
+     * @return A debug string showing the calibration coefficients.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append(this.getClass().getSimpleName());
+        buffer.append("(\n\t");
+        buffer.append("AC1=").append(ac1).append("\n\t");
+        buffer.append("AC2=").append(ac2).append("\n\t");
+        buffer.append("AC3=").append(ac3).append("\n\t");
+        buffer.append("AC4=").append(ac4).append("\n\t");
+        buffer.append("AC5=").append(ac5).append("\n\t");
+        buffer.append("AC6=").append(ac6).append("\n\t");
+        buffer.append("B1=").append(b1).append("\n\t");
+        buffer.append("B2=").append(b2).append("\n\t");
+        buffer.append("MB=").append(mb).append("\n\t");
+        buffer.append("MC=").append(mc).append("\n\t");
+        buffer.append("MD=").append(md);
+        buffer.append(")");
+        return buffer.toString();
+    }
+}
@@ -16,14 +16,20 @@
 
 package com.github.tellison.okapi.device;
 
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.pi4j.io.i2c.I2CBus;
 import com.pi4j.io.i2c.I2CDevice;
-import com.pi4j.io.i2c.I2CFactory;
 
 /**
  * A BMP180 device connected via I2C.
@@ -46,33 +52,65 @@ public class BMP180Device implements Closeable {
      */
     public static final int DEVICE_ID = 0x55;
 
-    // Control register information.
-    private static final int CALIB_REGISTER_ADDRESS = 0xAA;
-    private static final int ID_REGISTER_ADDRESS = 0xD0;
-    private static final int SOFT_RESET_ADDRESS = 0xE0;
-    private static final int CONTROL_REGISTER_ADDRESS = 0xF4;
-    private static final int DATA_REGISTER_ADDRESS = 0xF6;
+    // Value of the shared bus number for a bus supplied by the caller.
+    private static final int CALLER_BUS = -1;
 
-    // Command information.
-    private static final byte SOFT_RESET_COMMAND = (byte) 0xB6;
-    private static final byte READ_TEMPERATURE_COMMAND = (byte) 0x2E;
-    private static final byte READ_PRESSURE_COMMAND = (byte) 0x34;
+    // Device reference, and the same device reading registers with combined
+    // write-read transactions.
+    private final I2CDevice device;
+    private final I2CDevice combinedDevice;
+    private volatile I2CBus bus; // Nulled when closed.
 
-    // Calibration data information.
-    private static final int CALIB_BYTES_LENGTH = 22;
+    // The number of the shared bus to release when closed, or CALLER_BUS.
+    private final int sharedBusNumber;
 
-    // Device reference.
-    private I2CDevice device;
-    private volatile I2CBus bus; // Nulled when closed.
+    // Calculations using the calibration coefficients for this device,
+    // replaced if the background check finds cached coefficients are stale.
+    private volatile BMP180Compensator compensator;
+
+    // Completes when any cached calibration data has been checked.
+    private final CompletableFuture<Boolean> calibrationCheck = new CompletableFuture<>();
+
+    // Guards access to the device, including for the duration of conversions.
+    private final DeviceLock lock = new DeviceLock();
+
+    // Transaction counts and latencies for this device.
+    private final BMP180Metrics metrics;
+
+    // Flight Recorder events for this device.
+    private final DeviceEvents events;
+
+    // Transfer buffer for raw readings, only used while holding the lock.
+    private final byte[] data = new byte[3];
+
+    // How long a temperature reading can be reused for pressure readings.
+    private volatile long temperatureReuseNanos;
+
+    // Whether to poll for the end of conversions, rather than waiting for the
+    // maximum conversion time.
+    private volatile boolean conversionPolling;
+
+    // Whether to read registers with combined write-read transactions.
+    private volatile boolean combinedTransactions;
+
+    // Whether concurrent blocking readings share a reading in progress.
+    private volatile boolean readCoalescing = true;
 
-    // Calibration coefficients for this individual device.
-    private short ac1, ac2, ac3;
-    private int ac4, ac5, ac6;
-    private short b1, b2, mb, mc, md;
+    // Live estimates of the time taken by readings in each mode.
+    private final ReadingTimeEstimates readingTimes = new ReadingTimeEstimates();
+
+    // Shares blocking readings in progress with concurrent callers.
+    private final ReadingCoalescer coalescer = new ReadingCoalescer();
+
+    // The most recent uncompensated temperature and when it was read, only
+    // used while holding the lock.
+    private boolean hasUT;
+    private int lastUT;
+    private long lastUTTime;
 
     /**
-     * Constructs a new representation of the device, and reads it's calibration
-     * information.
+     * Constructs a new representation of the device at the standard address
+     * on I2C bus 1, and reads it's calibration information.
      * 
      * Every device has individual calibration coefficients used to configure
      * the device at time of manufacturing. Creating a new instance of the
@@ -83,50 +121,196 @@ public class BMP180Device implements Closeable {
      *             A problem occurred communicating with the device.
      */
     public BMP180Device() throws IOException {
-        super();
-        bus = I2CFactory.getInstance(I2CBus.BUS_1);
-        device = bus.getDevice(DEVICE_I2C_ADDRESS);
-        readCalibrationData();
+        this(I2CBus.BUS_1);
     }
 
-    /*
-     * Reads the calibration data from the device, and initialise the local
-     * variables. Every sensor has 11 individual calibration coefficients.
+    /**
+     * Constructs a new representation of the device at the standard address
+     * on the given I2C bus, and reads it's calibration information.
+     * 
+     * @param busNumber
+     *            the I2C bus that the device is connected to.
      * 
-     * @throws IOException An exception occurred reading data from the device.
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     * 
+     * @see #BMP180Device(int, int)
      */
-    private void readCalibrationData() throws IOException {
-        // Read all of the calibration data into a byte array.
-        byte[] calibData = new byte[CALIB_BYTES_LENGTH];
-        int result = device.read(CALIB_REGISTER_ADDRESS, calibData, 0, CALIB_BYTES_LENGTH);
-        if (result < CALIB_BYTES_LENGTH) {
-            throw new IOException("Error reading calibration data.  Only read " + result);
-        }
+    public BMP180Device(int busNumber) throws IOException {
+        this(busNumber, DEVICE_I2C_ADDRESS);
+    }
 
-        // Extract calibration data values (see device data sheet).
-        try (DataInputStream calibDataStream = new DataInputStream(new ByteArrayInputStream(calibData));) {
-            ac1 = calibDataStream.readShort();
-            ac2 = calibDataStream.readShort();
-            ac3 = calibDataStream.readShort();
-            ac4 = calibDataStream.readUnsignedShort();
-            ac5 = calibDataStream.readUnsignedShort();
-            ac6 = calibDataStream.readUnsignedShort();
-            b1 = calibDataStream.readShort();
-            b2 = calibDataStream.readShort();
-            mb = calibDataStream.readShort();
-            mc = calibDataStream.readShort();
-            md = calibDataStream.readShort();
-
-            // No value should be 0 or 0xFFFF if communications working.
-            if (ac1 == 0 || ac2 == 0 || ac3 == 0 || ac4 == 0 || ac5 == 0 || ac6 == 0 || b1 == 0 || b2 == 0 || mb == 0
-                    || mc == 0 || md == 0 || ac1 == (short) 0xFFFF || ac2 == (short) 0xFFFF || ac3 == (short) 0xFFFF
-                    || ac4 == 0xFFFF || ac5 == 0xFFFF || ac6 == 0xFFFF || b1 == (short) 0xFFFF || b2 == (short) 0xFFFF
-                    || mb == (short) 0xFFFF || mc == (short) 0xFFFF || md == (short) 0xFFFF) {
-                throw new IOException("Error reading valid calibration data from device.");
+    /**
+     * Constructs a new representation of the device at the given address on
+     * the given I2C bus, and reads it's calibration information.
+     * 
+     * Devices opened by bus number share a single handle for each bus, which
+     * is opened by the first device on the bus and closed when the last
+     * device on the bus is closed.
+     * 
+     * @param busNumber
+     *            the I2C bus that the device is connected to.
+     * @param address
+     *            the I2C address of the device on the bus.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     */
+    public BMP180Device(int busNumber, int address) throws IOException {
+        this(busNumber, address, null);
+    }
+
+    /**
+     * Constructs a new representation of the device at the given address on
+     * the given I2C bus, using calibration information from the given cache
+     * if possible.
+     * 
+     * When the cache has an entry for the device, the device is usable
+     * without reading its calibration information, which is then read and
+     * checked against the cached entry in the background. Readings taken
+     * before the check completes use the cached information. Otherwise the
+     * calibration information is read from the device and stored in the
+     * cache.
+     * 
+     * @param busNumber
+     *            the I2C bus that the device is connected to.
+     * @param address
+     *            the I2C address of the device on the bus.
+     * @param cache
+     *            the calibration cache, or <code>null</code> to always read
+     *            the calibration information from the device.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     * 
+     * @see #getCalibrationCheck()
+     */
+    public BMP180Device(int busNumber, int address, BMP180CalibrationCache cache) throws IOException {
+        this(SharedBuses.acquire(busNumber), address, busNumber, cache);
+    }
+
+    /**
+     * Constructs a new representation of the device at the standard address
+     * on the given I2C bus, and reads it's calibration information.
+     * 
+     * @param bus
+     *            the I2C bus that the device is connected to.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     * 
+     * @see #BMP180Device(I2CBus, int)
+     */
+    public BMP180Device(I2CBus bus) throws IOException {
+        this(bus, DEVICE_I2C_ADDRESS);
+    }
+
+    /**
+     * Constructs a new representation of the device at the given address on
+     * the given I2C bus, and reads it's calibration information.
+     * 
+     * The caller remains responsible for the bus, which is not closed when
+     * this device is closed.
+     * 
+     * @param bus
+     *            the I2C bus that the device is connected to.
+     * @param address
+     *            the I2C address of the device on the bus.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     */
+    public BMP180Device(I2CBus bus, int address) throws IOException {
+        this(Objects.requireNonNull(bus, "bus"), address, CALLER_BUS, null);
+    }
+
+    /*
+     * Constructs the device on the given bus, releasing a shared bus again if
+     * the device cannot be initialized.
+     */
+    private BMP180Device(I2CBus bus, int address, int sharedBusNumber, BMP180CalibrationCache cache)
+            throws IOException {
+        super();
+        this.bus = bus;
+        this.sharedBusNumber = sharedBusNumber;
+        metrics = new BMP180Metrics(address);
+        events = new DeviceEvents((sharedBusNumber != CALLER_BUS) ? sharedBusNumber : busNumber(bus), address);
+        int chipID = 0;
+        byte[] cached = null;
+        try {
+            device = new MeteredDevice(bus.getDevice(address), metrics);
+            combinedDevice = new CombinedReadDevice(device);
+            if (cache != null) {
+                chipID = BMP180Protocol.readChipID(device, data);
+                cached = cache.load(sharedBusNumber, address, chipID);
+            }
+            if (cached != null) {
+                try {
+                    compensator = BMP180Protocol.parseCalibrationData(cached);
+                } catch (IOException ex) {
+                    // Only valid data is stored, but fall back to the device.
+                    cached = null;
+                }
             }
+            if (cached == null) {
+                byte[] calibData = readCalibrationBytes();
+                compensator = BMP180Protocol.parseCalibrationData(calibData);
+                if (cache != null) {
+                    storeCalibration(cache, address, chipID, calibData);
+                }
+                calibrationCheck.complete(Boolean.TRUE);
+            }
+        } catch (IOException | RuntimeException ex) {
+            releaseBus();
+            throw ex;
+        }
+        metrics.register();
+        if (cached != null) {
+            checkCalibration(cache, address, chipID, cached);
         }
     }
 
+    /**
+     * Returns the metrics for this device.
+     * 
+     * The metrics are also registered as an MBean in the platform MBean server
+     * while the device is open.
+     * 
+     * @return The metrics for this device.
+     */
+    public BMP180MetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns a future for the check of cached calibration information
+     * against the device.
+     * 
+     * The future completes with <code>true</code> if the cached calibration
+     * information matched the device, or if it was read from the device
+     * during construction. It completes with <code>false</code> if the cached
+     * information was stale, in which case the device's own calibration
+     * information replaces it from then on, and the cache is updated.
+     * 
+     * @return A future that completes when the calibration information has
+     *         been checked.
+     * 
+     * @see #BMP180Device(int, int, BMP180CalibrationCache)
+     */
+    public CompletableFuture<Boolean> getCalibrationCheck() {
+        return calibrationCheck;
+    }
+
+    /**
+     * Returns the compensator that calculates true values for this device
+     * from raw readings, using the device's calibration coefficients.
+     * 
+     * @return The compensator for this device.
+     */
+    public BMP180Compensator getCompensator() {
+        return compensator;
+    }
+
     /**
      * Returns the chip ID for this device.
      * 
@@ -138,16 +322,14 @@ public class BMP180Device implements Closeable {
      * @throws IOException
      *             A problem occurred communicating with the device.
      */
-    public synchronized int getChipID() throws IOException {
-        checkOpen();
-
-        byte[] data = new byte[1];
-        int result = device.read(ID_REGISTER_ADDRESS, data, 0, data.length);
-        if (result < data.length) {
-            throw new IOException("Error reading device id. Expected 1 byte but got " + result);
+    public int getChipID() throws IOException {
+        acquireLock();
+        try {
+            checkOpen();
+            return BMP180Protocol.readChipID(transport(), data);
+        } finally {
+            lock.unlock();
         }
-        // Extract the device id
-        return (data[0] & 0xFF);
     }
 
     /**
@@ -162,16 +344,153 @@ public class BMP180Device implements Closeable {
      *             A problem occurred communicating with the device.
      */
     public float getTemperature() throws IOException {
+        int ut;
+        acquireLock();
+        try {
+            checkOpen();
+            ut = convertTemperature();
+        } finally {
+            lock.unlock();
+        }
+        return compensator.getTemperature(ut);
+    }
+
+    /**
+     * Sets how long a temperature reading may be reused when reading pressure.
+     * 
+     * Calculating the true pressure requires a temperature compensation
+     * factor, so by default every pressure reading is preceded by a 4.5ms
+     * temperature conversion. The temperature changes slowly, and the device
+     * data sheet suggests one temperature reading per second is sufficient
+     * when sampling pressure at a high rate. Setting a reuse time allows
+     * pressure readings to reuse the most recent temperature until it is
+     * older than the given time, which can almost double the pressure
+     * sampling rate in the faster modes.
+     * <p>
+     * The temperature reported with such readings is the reused temperature.
+     * Calling {@link #getTemperature()} always takes a fresh temperature
+     * reading.
+     * 
+     * @param time
+     *            the maximum age of a reused temperature, or zero to read the
+     *            temperature for every pressure reading.
+     * @param unit
+     *            the unit of the time argument.
+     */
+    public void setTemperatureReuse(long time, TimeUnit unit) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Temperature reuse time must not be negative.");
+        }
+        temperatureReuseNanos = unit.toNanos(time);
+    }
+
+    /**
+     * Returns how long a temperature reading may be reused when reading
+     * pressure.
+     * 
+     * @param unit
+     *            the unit of the returned time.
+     * @return The maximum age of a reused temperature, or zero if the
+     *         temperature is read for every pressure reading.
+     * 
+     * @see #setTemperatureReuse(long, TimeUnit)
+     */
+    public long getTemperatureReuse(TimeUnit unit) {
+        return unit.convert(temperatureReuseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Sets whether to poll the device for the end of each conversion.
+     * 
+     * By default every conversion waits for the maximum conversion time given
+     * in the device data sheet. Devices often complete their conversions
+     * sooner, and report this through the start of conversion bit of the
+     * control register. When polling is enabled, each conversion waits for the
+     * typical conversion time, then polls the device until the conversion is
+     * complete, which reduces the latency of each reading at the cost of some
+     * additional bus traffic. If a conversion has still not completed by the
+     * maximum conversion time the reading fails with an {@link IOException}.
+     * 
+     * @param polling
+     *            <code>true</code> to poll for the end of conversions, or
+     *            <code>false</code> to wait for the maximum conversion time.
+     */
+    public void setConversionPolling(boolean polling) {
+        conversionPolling = polling;
+    }
 
-        long ut = getUncalibratedTemperature();
+    /**
+     * Answers whether the device is polled for the end of each conversion.
+     * 
+     * @return <code>true</code> if polling for the end of conversions.
+     * 
+     * @see #setConversionPolling(boolean)
+     */
+    public boolean isConversionPolling() {
+        return conversionPolling;
+    }
+
+    /**
+     * Sets whether to read registers with combined write-read transactions.
+     * 
+     * Reading a register normally takes two separate I2C transactions, one
+     * writing the register address and one reading the register contents.
+     * When combined transactions are enabled, each register read is a single
+     * transaction that writes the register address and reads the contents
+     * with a repeated start, halving the transactions, and the calls into the
+     * operating system, needed for each read. Not all I2C adapters support
+     * combined transactions, so they are disabled by default.
+     * 
+     * @param combined
+     *            <code>true</code> to read registers with combined
+     *            transactions, or <code>false</code> to use separate
+     *            transactions.
+     */
+    public void setCombinedTransactions(boolean combined) {
+        combinedTransactions = combined;
+    }
 
-        // Calculate the temperature compensation factor
-        long t1 = ((ut - ac6) * ac5) >> 15;
-        long t2 = ((long) mc << 11) / (t1 + md);
-        long b5 = t1 + t2;
+    /**
+     * Answers whether registers are read with combined write-read
+     * transactions.
+     * 
+     * @return <code>true</code> if reading registers with combined
+     *         transactions.
+     * 
+     * @see #setCombinedTransactions(boolean)
+     */
+    public boolean isCombinedTransactions() {
+        return combinedTransactions;
+    }
 
-        // Calculate the real temperature
-        return (float) ((b5 + 8) >> 4) / 10;
+    /**
+     * Sets whether concurrent readings share a reading already in progress.
+     * 
+     * Each reading holds the device for a full temperature and pressure
+     * conversion, so concurrent callers would otherwise wait for each other's
+     * readings in turn. With coalescing enabled, a caller that arrives while
+     * another caller's reading is in progress in the same or a higher
+     * resolution sampling mode waits for that reading and shares its values,
+     * so no caller waits much longer than a single reading. Coalescing is
+     * enabled by default, and applies to the blocking reading methods.
+     * 
+     * @param coalescing
+     *            <code>true</code> to share readings in progress, or
+     *            <code>false</code> to take a new reading for every caller.
+     */
+    public void setReadCoalescing(boolean coalescing) {
+        readCoalescing = coalescing;
+    }
+
+    /**
+     * Answers whether concurrent readings share a reading already in progress.
+     * 
+     * @return <code>true</code> if sharing readings in progress.
+     * 
+     * @see #setReadCoalescing(boolean)
+     */
+    public boolean isReadCoalescing() {
+        return readCoalescing;
     }
 
     /**
@@ -236,102 +555,727 @@ public class BMP180Device implements Closeable {
      *             A problem occurred communicating with the device.
      */
     public float[] getTemperatureAndPressure(BMP180SamplingMode mode) throws IOException {
-        //
-        // Temperature
-        //
-        long ut = getUncalibratedTemperature();
-
-        // Calculate the temperature compensation factor
-        long t1 = ((ut - ac6) * ac5) >> 15;
-        long t2 = ((long) mc << 11) / (t1 + md);
-        long b5 = t1 + t2;
-
-        // Calculate the real temperature
-        float celsius = (float) ((b5 + 8) >> 4) / 10;
-
-        //
-        // Pressure
-        //
-        long up = getUncompensatedPressure(mode);
-
-        // Calculate the true pressure (see device data sheet)
-        long b6 = b5 - 4000;
-        long p1 = (b2 * (b6 * b6) >> 12) >> 11;
-        long p2 = ac2 * b6 >> 11;
-        long p3 = p1 + p2;
-        long b3 = (((ac1 * 4 + p3) << mode.getOSS()) + 2) / 4;
-        p1 = ac3 * b6 >> 13;
-        p2 = (b1 * ((b6 * b6) >> 12)) >> 16;
-        p3 = ((p1 + p2) + 2) >> 2;
-        long b4 = (ac4 * (p3 + 32768)) >> 15;
-        long b7 = (up - b3) * (50000 >> mode.getOSS());
-
-        long pa = (b7 < 0x80000000) ? (b7 * 2) / b4 : (b7 / b4) * 2;
-        p1 = (pa >> 8) * (pa >> 8);
-        p1 = (p1 * 3038) >> 16;
-        p2 = (-7357 * pa) >> 16;
-
-        pa += ((p1 + p2 + 3791) >> 4);
-
-        float hPa = (float) (pa) / 100;
+        BMP180Reading reading = getTemperatureAndPressure(mode, new BMP180Reading());
 
         // Return the two values.
         float[] result = new float[2];
-        result[0] = celsius;
-        result[1] = hPa;
+        result[0] = reading.getTemperature();
+        result[1] = reading.getPressure();
         return result;
     }
 
+    /**
+     * Reads the temperature and pressure from the device in the given mode
+     * into a reading holder supplied by the caller.
+     * 
+     * This method produces the same values as
+     * {@link #getTemperatureAndPressure(BMP180SamplingMode)}, but reuses the
+     * given holder and the device's own transfer buffers so that no garbage
+     * is created for each reading. The reading is timestamped when the values
+     * have been read from the device.
+     * 
+     * @param mode
+     *            the sampling mode requested for the device pressure reading.
+     * @param reading
+     *            the holder that receives the temperature and pressure values.
+     * 
+     * @return The given reading holder.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     */
+    public BMP180Reading getTemperatureAndPressure(BMP180SamplingMode mode, BMP180Reading reading)
+            throws IOException {
+        return timestamped(getPackedTemperatureAndPressure(mode), reading);
+    }
+
+    /**
+     * Reads the temperature and pressure from the device in the given mode as
+     * fixed-point values packed into a single <code>long</code>.
+     * 
+     * The values are exactly those calculated by the device compensation, a
+     * temperature in steps of 0.1 deg.C and a pressure in Pa, without any
+     * conversion to floating point. They are packed as by
+     * {@link BMP180Reading#pack(int, int)}, and can be extracted with
+     * {@link BMP180Reading#unpackDeciCelsius(long)} and
+     * {@link BMP180Reading#unpackPascals(long)}. No garbage is created for
+     * each reading.
+     * 
+     * @param mode
+     *            the sampling mode requested for the device pressure reading.
+     * 
+     * @return The packed temperature and pressure values.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     */
+    public long getPackedTemperatureAndPressure(BMP180SamplingMode mode) throws IOException {
+        long start = System.nanoTime();
+        long number;
+        while (readCoalescing && (number = coalescer.enter(mode)) != 0) {
+            if (number > 0) {
+                // Lead a reading that concurrent callers can share, and always
+                // finish it, even on an Error, so they do not wait forever.
+                try {
+                    long packed = readPacked(mode, start);
+                    coalescer.finish(number, packed, null);
+                    return packed;
+                } catch (Throwable ex) {
+                    coalescer.finish(number, 0, ex);
+                    throw ex;
+                }
+            }
+            long packed;
+            try {
+                packed = coalescer.await(-number);
+            } catch (IOException ex) {
+                metrics.failedReadings.increment();
+                throw ex;
+            }
+            if (packed != ReadingCoalescer.NO_READING) {
+                metrics.coalescedReadings.increment();
+                metrics.readingLatency.record(System.nanoTime() - start);
+                return packed;
+            }
+        }
+        return readPacked(mode, start);
+    }
+
+    /**
+     * Reads the temperature and pressure from the device within a time
+     * budget, in the highest resolution sampling mode that fits the budget.
+     * 
+     * The mode is chosen from live estimates of the time each mode takes on
+     * this device, including the conversion waits and bus transfers, which
+     * follow the readings actually taken rather than only the data sheet
+     * times. Any time spent waiting for other callers to release the device
+     * comes out of the budget, and the mode is chosen once the device has
+     * been acquired. If even the fastest mode is not expected to fit in the
+     * time remaining, the reading fails at once without using the bus, rather
+     * than overrunning the budget.
+     * 
+     * @param budget
+     *            the time available for the reading.
+     * @param unit
+     *            the unit of the budget argument.
+     * @param reading
+     *            the holder that receives the temperature and pressure values.
+     * 
+     * @return The sampling mode used for the reading.
+     * 
+     * @throws IOException
+     *             A problem occurred communicating with the device.
+     * @throws TimeoutException
+     *             No sampling mode is expected to complete within the budget.
+     * 
+     * @see #getEstimatedReadingTime(BMP180SamplingMode, TimeUnit)
+     */
+    public BMP180SamplingMode getTemperatureAndPressureWithin(long budget, TimeUnit unit, BMP180Reading reading)
+            throws IOException, TimeoutException {
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(budget);
+        long fastest = readingTimes.estimate(BMP180SamplingMode.ULTRA_LOW_POWER);
+        if (deadline - start < fastest) {
+            throw overBudget(budget, unit);
+        }
+        BMP180SamplingMode mode;
+        int ut;
+        int up;
+        try {
+            if (!lock.tryLock(deadline - start - fastest)) {
+                throw overBudget(budget, unit);
+            }
+            try {
+                long locked = System.nanoTime();
+                metrics.lockWait.record(locked - start);
+                checkOpen();
+                mode = readingTimes.bestWithin(deadline - locked);
+                if (mode == null) {
+                    throw overBudget(budget, unit);
+                }
+                ut = currentUT();
+                up = convertPressure(mode);
+                readingTimes.record(mode, System.nanoTime() - locked);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException | RuntimeException ex) {
+            metrics.failedReadings.increment();
+            throw ex;
+        }
+        // Compensation is done outside the lock.
+        long packed = compensate(ut, up, mode);
+        metrics.readingLatency.record(System.nanoTime() - start);
+        timestamped(packed, reading);
+        return mode;
+    }
+
+    /**
+     * Returns the estimated time for a reading in the given sampling mode,
+     * from acquiring the device to reading the values.
+     * 
+     * The estimate follows the readings taken on this device in that mode,
+     * rising at once to a slower reading and decaying gradually towards
+     * faster ones. Between readings it decays with time towards the fastest
+     * reading taken in the mode, so a mode passed over after one slow
+     * reading becomes eligible again. Before any readings have been taken in the mode it is
+     * estimated from the data sheet conversion times and the bus transfer
+     * times seen in other modes.
+     * 
+     * @param mode
+     *            the sampling mode.
+     * @param unit
+     *            the unit of the returned time.
+     * @return The estimated reading time.
+     */
+    public long getEstimatedReadingTime(BMP180SamplingMode mode, TimeUnit unit) {
+        return unit.convert(readingTimes.estimate(mode), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the highest resolution sampling mode whose estimated reading
+     * time fits within the given time.
+     * 
+     * @param time
+     *            the time available for a reading.
+     * @param unit
+     *            the unit of the time argument.
+     * @return The sampling mode, or <code>null</code> if no mode is expected
+     *         to fit.
+     * 
+     * @see #getEstimatedReadingTime(BMP180SamplingMode, TimeUnit)
+     */
+    public BMP180SamplingMode getSamplingModeWithin(long time, TimeUnit unit) {
+        return readingTimes.bestWithin(unit.toNanos(time));
+    }
+
+    /*
+     * Returns the number of a bus supplied by the caller, from the name of its
+     * device file such as /dev/i2c-1, or -1 if the number is not known.
+     */
+    private static int busNumber(I2CBus bus) {
+        String name;
+        try {
+            name = bus.getFileName();
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+        int end = (name == null) ? 0 : name.length();
+        int start = end;
+        while (start > 0 && name.charAt(start - 1) >= '0' && name.charAt(start - 1) <= '9') {
+            start--;
+        }
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        return Integer.parseInt(name.substring(start, end));
+    }
+
     /*
-     * Reads the uncalibrated temperature from the device in the given mode.
+     * Returns the exception for a reading that cannot complete in its budget.
      */
-    private synchronized long getUncalibratedTemperature() throws IOException {
-        checkOpen();
+    private static TimeoutException overBudget(long budget, TimeUnit unit) {
+        return new TimeoutException("No sampling mode can complete a reading in " + budget + " " + unit + ".");
+    }
 
-        // Write the read temperature command to the command register
-        device.write(CONTROL_REGISTER_ADDRESS, READ_TEMPERATURE_COMMAND);
+    /*
+     * Reads the packed temperature and pressure from the device, recording
+     * the latency from the given start time.
+     */
+    private long readPacked(BMP180SamplingMode mode, long start) throws IOException {
+        int ut;
+        int up;
         try {
-            // Temperature can always be read at ultra low power speeds.
-            Thread.sleep(BMP180SamplingMode.ULTRA_LOW_POWER.getDelayMillis(),
-                    BMP180SamplingMode.ULTRA_LOW_POWER.getDelayNanos());
-        } catch (InterruptedException ex) {
+            acquireLock();
+            try {
+                checkOpen();
+                long locked = System.nanoTime();
+                ut = currentUT();
+                up = convertPressure(mode);
+                readingTimes.record(mode, System.nanoTime() - locked);
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException | RuntimeException ex) {
+            metrics.failedReadings.increment();
+            throw ex;
         }
+        // Compensation is done outside the lock.
+        long packed = compensate(ut, up, mode);
+        metrics.readingLatency.record(System.nanoTime() - start);
+        return packed;
+    }
+
+    /**
+     * Reads the temperature and pressure from the device asynchronously in the
+     * given mode, using a scheduler shared by all devices.
+     * 
+     * @param mode
+     *            the sampling mode requested for the device pressure reading.
+     * 
+     * @return A future that completes with the reading.
+     * 
+     * @see #readAsync(BMP180SamplingMode, ScheduledExecutorService)
+     */
+    public CompletableFuture<BMP180Reading> readAsync(BMP180SamplingMode mode) {
+        return readAsync(mode, SharedScheduler.INSTANCE);
+    }
 
-        byte[] data = new byte[2];
-        int result = device.read(DATA_REGISTER_ADDRESS, data, 0, data.length);
-        if (result < data.length) {
-            throw new IOException("Error reading temperature. Expected 2 bytes but got " + result);
+    /**
+     * Reads the temperature and pressure from the device asynchronously in the
+     * given mode.
+     * 
+     * Each step of the reading, acquiring the device, writing a conversion
+     * command, and reading the converted data, runs as a short task on the
+     * given scheduler. No thread is held while the device is converting, so a
+     * single scheduler thread can serve many outstanding readings.
+     * <p>
+     * The returned future completes exceptionally with an
+     * <code>IOException</code> if there is a problem communicating with the
+     * device. Cancelling the future abandons the reading at the next step and
+     * releases the device for other callers.
+     * 
+     * @param mode
+     *            the sampling mode requested for the device pressure reading.
+     * @param scheduler
+     *            the scheduler used to run each step of the reading.
+     * 
+     * @return A future that completes with the reading.
+     */
+    public CompletableFuture<BMP180Reading> readAsync(BMP180SamplingMode mode, ScheduledExecutorService scheduler) {
+        AsyncRead read = new AsyncRead(mode, scheduler);
+        read.begin();
+        return read.result;
+    }
+
+    /*
+     * Returns the uncompensated temperature for a pressure reading, reusing
+     * the last temperature if it is recent enough. Must hold the lock.
+     */
+    private int currentUT() throws IOException {
+        return canReuseUT() ? lastUT : convertTemperature();
+    }
+
+    /*
+     * Answers whether the last uncompensated temperature is recent enough to
+     * reuse. Must hold the lock.
+     */
+    private boolean canReuseUT() {
+        long reuse = temperatureReuseNanos;
+        return hasUT && reuse > 0 && System.nanoTime() - lastUTTime < reuse;
+    }
+
+    /*
+     * Reads the uncompensated temperature. Must hold the lock.
+     */
+    private int convertTemperature() throws IOException {
+        startTemperatureConversion();
+        awaitConversion(null);
+        return rememberUT(readUncalibratedTemperature());
+    }
+
+    /*
+     * Records the uncompensated temperature for reuse. Must hold the lock.
+     */
+    private int rememberUT(int ut) {
+        lastUT = ut;
+        lastUTTime = System.nanoTime();
+        hasUT = true;
+        return ut;
+    }
+
+    /*
+     * Reads the uncompensated pressure in the given mode. Must hold the lock.
+     */
+    private int convertPressure(BMP180SamplingMode mode) throws IOException {
+        startPressureConversion(mode);
+        awaitConversion(mode);
+        return readUncompensatedPressure(mode);
+    }
+
+    /*
+     * Waits for a pressure conversion in the given mode to complete, or a
+     * temperature conversion if the mode is null. Must hold the lock.
+     */
+    private void awaitConversion(BMP180SamplingMode mode) throws IOException {
+        boolean polling = conversionPolling;
+        Object event = events.beginConversionWait();
+        long start = System.nanoTime();
+        if (polling) {
+            BMP180Protocol.pollConversion(transport(), conversionTiming(mode));
+        } else {
+            BMP180Protocol.awaitConversion(conversionTiming(mode));
         }
-        // Extract the uncompensated temperature
-        return ((data[0] << 8) & 0xFF00) + (data[1] & 0xFF);
+        conversionHistogram(mode).record(System.nanoTime() - start);
+        events.endConversionWait(event, mode, polling);
     }
 
     /*
-     * Reads the uncompensated pressure from the device in the given mode.
+     * Returns the mode giving the conversion times for pressure in the given
+     * mode, or temperature if the mode is null.
      */
-    private synchronized long getUncompensatedPressure(BMP180SamplingMode mode) throws IOException {
-        checkOpen();
+    private static BMP180SamplingMode conversionTiming(BMP180SamplingMode mode) {
+        // Temperature can always be read at ultra low power speeds.
+        return (mode == null) ? BMP180SamplingMode.ULTRA_LOW_POWER : mode;
+    }
+
+    /*
+     * Returns the wait histogram for pressure conversions in the given mode,
+     * or temperature conversions if the mode is null.
+     */
+    private LatencyHistogram conversionHistogram(BMP180SamplingMode mode) {
+        return (mode == null) ? metrics.temperatureConversion : metrics.pressureConversion(mode);
+    }
 
-        // Write the read pressure command to the command register
-        // Combine the hardware over sampling rate request with the read
-        // pressure command.
-        byte combined = (byte) (READ_PRESSURE_COMMAND | ((mode.getOSS() << 6) & 0xFF));
-        device.write(CONTROL_REGISTER_ADDRESS, combined);
+    /*
+     * Reads the raw calibration data from the device. Must hold the lock, or
+     * be constructing the device.
+     */
+    private byte[] readCalibrationBytes() throws IOException {
+        Object event = events.beginCalibrationRead();
+        byte[] calibData = BMP180Protocol.readCalibrationBytes(transport());
+        events.endCalibrationRead(event);
+        return calibData;
+    }
+
+    /*
+     * Stores calibration data in the cache. The cache is an optimization, so
+     * failing to update it does not affect the device.
+     */
+    private void storeCalibration(BMP180CalibrationCache cache, int address, int chipID, byte[] calibData) {
         try {
-            Thread.sleep(mode.getDelayMillis(), mode.getDelayNanos());
-        } catch (InterruptedException ex) {
+            cache.store(sharedBusNumber, address, chipID, calibData);
+        } catch (IOException | RuntimeException ex) {
+            // The next device construction reads the device again.
+        }
+    }
+
+    /*
+     * Reads the calibration data from the device in the background, and
+     * replaces the cached data if it differs.
+     */
+    private void checkCalibration(BMP180CalibrationCache cache, int address, int chipID, byte[] cached) {
+        lock.lockAsync().thenRunAsync(() -> {
+            try {
+                byte[] calibData;
+                try {
+                    checkOpen();
+                    calibData = readCalibrationBytes();
+                } finally {
+                    lock.unlock();
+                }
+                boolean matched = Arrays.equals(cached, calibData);
+                if (!matched) {
+                    compensator = BMP180Protocol.parseCalibrationData(calibData);
+                    storeCalibration(cache, address, chipID, calibData);
+                }
+                calibrationCheck.complete(matched);
+            } catch (IOException | RuntimeException ex) {
+                calibrationCheck.completeExceptionally(ex);
+            }
+        }, SharedScheduler.INSTANCE);
+    }
+
+    /*
+     * Calculates the true temperature and pressure from raw values, packed as
+     * BMP180Reading.pack(int, int).
+     */
+    private long compensate(int ut, int up, BMP180SamplingMode mode) {
+        BMP180Compensator compensator = this.compensator;
+        Object event = events.beginCompensation();
+        int b5 = compensator.computeB5(ut);
+        int pa = compensator.computePressure(up, b5, mode);
+        long packed = BMP180Reading.pack(BMP180Compensator.computeTemperature(b5), pa);
+        events.endCompensation(event, mode);
+        return packed;
+    }
+
+    /*
+     * Sets the given reading to the packed values, timestamped now.
+     */
+    private static BMP180Reading timestamped(long packed, BMP180Reading reading) {
+        reading.set(System.currentTimeMillis(), BMP180Reading.unpackDeciCelsius(packed),
+                BMP180Reading.unpackPascals(packed));
+        return reading;
+    }
+
+    /*
+     * Acquires the device lock, recording how long it took.
+     */
+    private void acquireLock() throws InterruptedIOException {
+        long start = System.nanoTime();
+        lock.lock();
+        metrics.lockWait.record(System.nanoTime() - start);
+    }
+
+    /*
+     * Starts a temperature conversion. Must hold the lock.
+     */
+    private void startTemperatureConversion() throws IOException {
+        Object event = events.beginCommand();
+        BMP180Protocol.startTemperatureConversion(device);
+        events.endCommand(event, BMP180Protocol.CONTROL_REGISTER_ADDRESS, BMP180Protocol.READ_TEMPERATURE_COMMAND,
+                null);
+    }
+
+    /*
+     * Reads the result of a temperature conversion. Must hold the lock.
+     */
+    private int readUncalibratedTemperature() throws IOException {
+        Object event = events.beginDataRead();
+        int ut = BMP180Protocol.readUncalibratedTemperature(transport(), data);
+        events.endDataRead(event, 2, null);
+        return ut;
+    }
+
+    /*
+     * Starts a pressure conversion in the given mode. Must hold the lock.
+     */
+    private void startPressureConversion(BMP180SamplingMode mode) throws IOException {
+        Object event = events.beginCommand();
+        BMP180Protocol.startPressureConversion(device, mode);
+        events.endCommand(event, BMP180Protocol.CONTROL_REGISTER_ADDRESS, BMP180Protocol.pressureCommand(mode), mode);
+    }
+
+    /*
+     * Reads the result of a pressure conversion. Must hold the lock.
+     */
+    private int readUncompensatedPressure(BMP180SamplingMode mode) throws IOException {
+        Object event = events.beginDataRead();
+        int up = BMP180Protocol.readUncompensatedPressure(transport(), data, mode);
+        events.endDataRead(event, 3, mode);
+        return up;
+    }
+
+    /*
+     * The state of a single asynchronous reading. Each step runs on the
+     * scheduler while holding the device lock, and schedules the next step to
+     * run once the device has completed its conversion.
+     */
+    private final class AsyncRead implements Runnable {
+
+        private static final int START_TEMPERATURE = 0;
+        private static final int READ_TEMPERATURE = 1;
+        private static final int READ_PRESSURE = 2;
+
+        final CompletableFuture<BMP180Reading> result = new CompletableFuture<>();
+
+        private final BMP180SamplingMode mode;
+        private final ScheduledExecutorService scheduler;
+
+        // Lock request, and the next scheduled step. Guarded by this.
+        private CompletableFuture<Void> ticket;
+        private Future<?> pending;
+
+        // Whether a step is running, and so responsible for releasing the
+        // lock, and whether a cancelled reading released the lock instead.
+        // Guarded by this.
+        private boolean running;
+        private boolean released;
+
+        // Whether to poll for the end of conversions.
+        private final boolean polling = conversionPolling;
+
+        // Progress of the reading, only accessed by the running step.
+        private int step = START_TEMPERATURE;
+        private int ut;
+        private BMP180SamplingMode conversion;
+        private Object conversionEvent;
+        private long conversionStart;
+        private long deadline;
+
+        // When the reading was requested.
+        private final long start = System.nanoTime();
+
+        AsyncRead(BMP180SamplingMode mode, ScheduledExecutorService scheduler) {
+            this.mode = mode;
+            this.scheduler = scheduler;
         }
 
-        // Read the uncompensated pressure value
-        byte[] data = new byte[3];
-        int result = device.read(DATA_REGISTER_ADDRESS, data, 0, data.length);
-        if (result < data.length) {
-            throw new IOException("Error reading pressure.  Expected 3 bytes but got " + result);
+        /*
+         * Requests the device lock, and runs the first step once granted.
+         */
+        void begin() {
+            CompletableFuture<Void> request = lock.lockAsync();
+            synchronized (this) {
+                ticket = request;
+            }
+            result.whenComplete((reading, ex) -> {
+                if (result.isCancelled()) {
+                    abandon();
+                }
+            });
+            request.thenRun(() -> {
+                metrics.lockWait.record(System.nanoTime() - start);
+                next(0);
+            });
         }
 
-        // Extract the uncompensated pressure as a three byte word
-        long word = ((data[0] << 16) & 0xFF0000) + ((data[1] << 8) & 0xFF00) + (data[2] & 0xFF);
-        return (word >> (8 - mode.getOSS()));
+        /*
+         * Schedules the next step after the given delay, or releases the lock
+         * if the reading has been cancelled or cannot be scheduled.
+         */
+        private void next(long delayNanos) {
+            try {
+                synchronized (this) {
+                    if (!result.isDone()) {
+                        pending = scheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+                        running = false;
+                        return;
+                    }
+                }
+            } catch (RuntimeException ex) {
+                fail(ex);
+            }
+            lock.unlock();
+        }
+
+        /*
+         * Completes the reading, recording its latency first so that callers
+         * seeing the result also see it in the metrics.
+         */
+        private void succeed(BMP180Reading reading) {
+            if (!result.isDone()) {
+                metrics.readingLatency.record(System.nanoTime() - start);
+                result.complete(reading);
+            }
+        }
+
+        /*
+         * Fails the reading, counting the failure first so that callers
+         * seeing the result also see it in the metrics.
+         */
+        private void fail(Throwable ex) {
+            if (!result.isDone()) {
+                metrics.failedReadings.increment();
+                result.completeExceptionally(ex);
+            }
+        }
+
+        /*
+         * Schedules the given step to run when a pressure conversion just
+         * started in the given mode, or a temperature conversion if the mode
+         * is null, is expected to complete.
+         */
+        private void awaitConversion(int nextStep, BMP180SamplingMode pressureMode) {
+            BMP180SamplingMode timing = conversionTiming(pressureMode);
+            long maximum = BMP180Protocol.conversionNanos(timing);
+            step = nextStep;
+            conversion = pressureMode;
+            conversionEvent = events.beginConversionWait();
+            conversionStart = System.nanoTime();
+            deadline = conversionStart + maximum;
+            next(polling ? timing.getTypicalNanos() : maximum);
+        }
+
+        /*
+         * Answers whether the current conversion is complete. If polling and
+         * the conversion is still running, schedules this step to run again.
+         */
+        private boolean isConversionComplete() throws IOException {
+            if (!polling || BMP180Protocol.isConversionComplete(transport())) {
+                conversionHistogram(conversion).record(System.nanoTime() - conversionStart);
+                events.endConversionWait(conversionEvent, conversion, polling);
+                conversionEvent = null;
+                return true;
+            }
+            long remaining = BMP180Protocol.checkConversionDeadline(deadline);
+            next(Math.min(BMP180Protocol.POLL_INTERVAL_NANOS, remaining));
+            return false;
+        }
+
+        /*
+         * Cleans up after the reading was cancelled. If the lock was granted
+         * and a step is waiting to run, then we are responsible for releasing
+         * the lock, otherwise a running step will see the cancellation and
+         * release it when it finishes. Cancelling a step that has just started
+         * also succeeds, so the step checks whether we released the lock.
+         */
+        private void abandon() {
+            CompletableFuture<Void> request;
+            synchronized (this) {
+                request = ticket;
+            }
+            if (request.cancel(false)) {
+                return;
+            }
+            synchronized (this) {
+                if (running || pending == null || !pending.cancel(false)) {
+                    return;
+                }
+                released = true;
+            }
+            lock.unlock();
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                running = true;
+            }
+            int up;
+            try {
+                switch (step) {
+                    case START_TEMPERATURE:
+                        checkOpen();
+                        if (canReuseUT()) {
+                            ut = lastUT;
+                            startPressureConversion(mode);
+                            awaitConversion(READ_PRESSURE, mode);
+                        } else {
+                            startTemperatureConversion();
+                            awaitConversion(READ_TEMPERATURE, null);
+                        }
+                        return;
+                    case READ_TEMPERATURE:
+                        if (!isConversionComplete()) {
+                            return;
+                        }
+                        ut = rememberUT(readUncalibratedTemperature());
+                        startPressureConversion(mode);
+                        awaitConversion(READ_PRESSURE, mode);
+                        return;
+                    default:
+                        if (!isConversionComplete()) {
+                            return;
+                        }
+                        up = readUncompensatedPressure(mode);
+                }
+            } catch (IOException | RuntimeException ex) {
+                lock.unlock();
+                fail(ex);
+                return;
+            }
+            lock.unlock();
+
+            // Compensate the values outside the lock.
+            try {
+                succeed(timestamped(compensate(ut, up, mode), new BMP180Reading()));
+            } catch (RuntimeException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    /*
+     * Lazily created scheduler shared by all devices for asynchronous reads.
+     * The steps are short, so a single daemon thread is sufficient.
+     */
+    private static final class SharedScheduler {
+        static final ScheduledExecutorService INSTANCE;
+
+        static {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "BMP180 async reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            INSTANCE = executor;
+        }
     }
 
     /**
@@ -342,12 +1286,19 @@ public class BMP180Device implements Closeable {
      * @throws IOException
      *             A problem occurred communicating with the device.
      */
-    public synchronized void softReset() throws IOException {
-        checkOpen();
+    public void softReset() throws IOException {
+        acquireLock();
+        try {
+            checkOpen();
 
-        // Write the reset command to the command register. No response
-        // expected.
-        device.write(SOFT_RESET_ADDRESS, SOFT_RESET_COMMAND);
+            // Write the reset command to the command register. No response
+            // expected.
+            Object event = events.beginCommand();
+            device.write(BMP180Protocol.SOFT_RESET_ADDRESS, BMP180Protocol.SOFT_RESET_COMMAND);
+            events.endCommand(event, BMP180Protocol.SOFT_RESET_ADDRESS, BMP180Protocol.SOFT_RESET_COMMAND, null);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -359,10 +1310,33 @@ public class BMP180Device implements Closeable {
      *             A problem occurred communicating with the device.
      */
     @Override
-    public synchronized void close() throws IOException {
-        checkOpen();
-        bus.close();
-        bus = null;
+    public void close() throws IOException {
+        acquireLock();
+        try {
+            checkOpen();
+            bus = null;
+            metrics.unregister();
+            releaseBus();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Releases the shared bus, leaving a bus supplied by the caller open.
+     */
+    private void releaseBus() throws IOException {
+        if (sharedBusNumber != CALLER_BUS) {
+            SharedBuses.release(sharedBusNumber);
+        }
+    }
+
+    /*
+     * Returns the device to read registers through, only used while holding
+     * the lock.
+     */
+    private I2CDevice transport() {
+        return combinedTransactions ? combinedDevice : device;
     }
 
     /*
@@ -383,20 +1357,21 @@ public class BMP180Device implements Closeable {
      */
     @Override
     public String toString() {
+        BMP180Compensator compensator = this.compensator;
         StringBuilder buffer = new StringBuilder();
         buffer.append(this.getClass().getSimpleName());
         buffer.append("(\n\t");
-        buffer.append("AC1=").append(ac1).append("\n\t");
-        buffer.append("AC2=").append(ac2).append("\n\t");
-        buffer.append("AC3=").append(ac3).append("\n\t");
-        buffer.append("AC4=").append(ac4).append("\n\t");
-        buffer.append("AC5=").append(ac5).append("\n\t");
-        buffer.append("AC6=").append(ac6).append("\n\t");
-        buffer.append("B1=").append(b1).append("\n\t");
-        buffer.append("B2=").append(b2).append("\n\t");
-        buffer.append("MB=").append(mb).append("\n\t");
-        buffer.append("MC=").append(mc).append("\n\t");
-        buffer.append("MD=").append(md);
+        buffer.append("AC1=").append(compensator.getAC1()).append("\n\t");
+        buffer.append("AC2=").append(compensator.getAC2()).append("\n\t");
+        buffer.append("AC3=").append(compensator.getAC3()).append("\n\t");
+        buffer.append("AC4=").append(compensator.getAC4()).append("\n\t");
+        buffer.append("AC5=").append(compensator.getAC5()).append("\n\t");
+        buffer.append("AC6=").append(compensator.getAC6()).append("\n\t");
+        buffer.append("B1=").append(compensator.getB1()).append("\n\t");
+        buffer.append("B2=").append(compensator.getB2()).append("\n\t");
+        buffer.append("MB=").append(compensator.getMB()).append("\n\t");
+        buffer.append("MC=").append(compensator.getMC()).append("\n\t");
+        buffer.append("MD=").append(compensator.getMD());
         buffer.append(")");
         return buffer.toString();
     }
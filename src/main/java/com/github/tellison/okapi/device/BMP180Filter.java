@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * A stage of a {@link BMP180FilterPipeline}, that filters one channel of
+ * readings, either the temperatures or the pressures.
+ *
+ * Values are in the fixed-point units of {@link BMP180Reading}, steps of 0.1
+ * deg.C or Pa. A stage keeps its state in primitive fields and preallocated
+ * arrays, so filtering a value creates no garbage. Stages are stateful and
+ * not thread safe, so each stage belongs to a single channel of a single
+ * pipeline.
+ */
+public interface BMP180Filter {
+
+    /**
+     * Adds the next value of the channel to the filter, and returns the
+     * filtered value.
+     *
+     * @param value
+     *            the next value, in fixed-point units.
+     * @return The filtered value, in the same units.
+     */
+    int filter(int value);
+
+    /**
+     * Discards the values seen so far, so that the next value starts the
+     * filter afresh.
+     */
+    void reset();
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Smooths a stream of readings through a chain of filter stages, with no
+ * allocation per reading.
+ *
+ * The temperatures and the pressures each pass through their own chain of
+ * {@link BMP180Filter} stages in turn, for example a running median to reject
+ * spikes followed by a moving average. Either chain may be empty, to pass the
+ * values through unchanged. The filtered reading keeps the timestamp of the
+ * original.
+ * <p>
+ * A pipeline is not thread safe. Consumers wanting the same smoothed readings
+ * share one pipeline fed by a single thread, for example a subscriber to a
+ * {@link BMP180Sampler}, and each reading is filtered exactly once.
+ *
+ * <pre>
+ * BMP180FilterPipeline pipeline = new BMP180FilterPipeline(
+ *         new BMP180Filter[] { new BMP180MovingAverage(8) },
+ *         new BMP180Filter[] { new BMP180RunningMedian(5), new BMP180KalmanFilter(1, 6) });
+ * BMP180Reading reading = new BMP180Reading();
+ * BMP180Reading smoothed = new BMP180Reading();
+ * ...
+ * device.getTemperatureAndPressure(BMP180SamplingMode.ULTRA_LOW_POWER, reading);
+ * pipeline.filter(reading, smoothed);
+ * </pre>
+ */
+public class BMP180FilterPipeline {
+
+    private final BMP180Filter[] temperatureStages;
+    private final BMP180Filter[] pressureStages;
+
+    /**
+     * Constructs a new pipeline of the given stages. Stages hold the state of
+     * their channel, so each stage instance may appear only once.
+     *
+     * @param temperatureStages
+     *            the stages applied to temperatures, in order.
+     * @param pressureStages
+     *            the stages applied to pressures, in order.
+     */
+    public BMP180FilterPipeline(BMP180Filter[] temperatureStages, BMP180Filter[] pressureStages) {
+        super();
+        this.temperatureStages = temperatureStages.clone();
+        this.pressureStages = pressureStages.clone();
+        Map<BMP180Filter, Boolean> seen = new IdentityHashMap<>();
+        for (BMP180Filter[] stages : new BMP180Filter[][] { this.temperatureStages, this.pressureStages }) {
+            for (BMP180Filter stage : stages) {
+                if (stage == null) {
+                    throw new NullPointerException("Null filter stage.");
+                }
+                if (seen.put(stage, Boolean.TRUE) != null) {
+                    throw new IllegalArgumentException("Filter stage used more than once: " + stage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Filters the next reading into the given holder, which may be the
+     * reading itself.
+     *
+     * @param reading
+     *            the next reading.
+     * @param result
+     *            receives the filtered reading.
+     */
+    public void filter(BMP180Reading reading, BMP180Reading result) {
+        long packed = filter(reading.getPacked());
+        result.set(reading.getTimestamp(), BMP180Reading.unpackDeciCelsius(packed),
+                BMP180Reading.unpackPascals(packed));
+    }
+
+    /**
+     * Filters the next reading, with the values packed as by
+     * {@link BMP180Reading#pack(int, int)}.
+     *
+     * @param packed
+     *            the packed temperature and pressure.
+     * @return The packed filtered temperature and pressure.
+     */
+    public long filter(long packed) {
+        int deciCelsius = BMP180Reading.unpackDeciCelsius(packed);
+        for (BMP180Filter stage : temperatureStages) {
+            deciCelsius = stage.filter(deciCelsius);
+        }
+        int pascals = BMP180Reading.unpackPascals(packed);
+        for (BMP180Filter stage : pressureStages) {
+            pascals = stage.filter(pascals);
+        }
+        return BMP180Reading.pack(deciCelsius, pascals);
+    }
+
+    /**
+     * Resets every stage, so that the next reading starts the pipeline
+     * afresh, for example after a gap in the readings.
+     */
+    public void reset() {
+        for (BMP180Filter stage : temperatureStages) {
+            stage.reset();
+        }
+        for (BMP180Filter stage : pressureStages) {
+            stage.reset();
+        }
+    }
+}
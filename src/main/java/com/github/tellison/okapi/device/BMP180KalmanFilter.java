@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * A filter stage that estimates the true value of a slowly changing signal
+ * from noisy measurements, with a scalar Kalman filter.
+ *
+ * The signal is modelled as a random walk, that changes between readings
+ * with the given process noise, and is measured with the given measurement
+ * noise. Each value moves the estimate towards it by the Kalman gain, which
+ * settles to a constant that smooths more the noisier the measurements are
+ * relative to the changes in the signal. Unlike a moving average, the filter
+ * keeps only two numbers of state.
+ * <p>
+ * The measurement noise is typically the RMS noise of the sampling mode,
+ * about 3 to 6 Pa for pressures. The first value initializes the estimate.
+ */
+public class BMP180KalmanFilter implements BMP180Filter {
+
+    // Variances of the change in the signal between readings, and of the
+    // measurements.
+    private final double processVariance;
+    private final double measurementVariance;
+
+    // The estimate and its variance, once the first value has been seen.
+    private boolean started;
+    private double estimate;
+    private double variance;
+
+    /**
+     * Constructs a new Kalman filter for a signal with the given noise.
+     *
+     * @param processNoise
+     *            the standard deviation of the change in the signal between
+     *            readings, in fixed-point units.
+     * @param measurementNoise
+     *            the standard deviation of the measurement noise, in
+     *            fixed-point units.
+     */
+    public BMP180KalmanFilter(double processNoise, double measurementNoise) {
+        super();
+        if (!(processNoise >= 0 && measurementNoise > 0) || Double.isInfinite(processNoise + measurementNoise)) {
+            throw new IllegalArgumentException("Invalid noise " + processNoise + ", " + measurementNoise);
+        }
+        processVariance = processNoise * processNoise;
+        measurementVariance = measurementNoise * measurementNoise;
+    }
+
+    /**
+     * Returns the current weight given to each new value, which settles to a
+     * constant as values are filtered.
+     *
+     * @return The Kalman gain, from 0 to 1.
+     */
+    public double getGain() {
+        if (!started) {
+            return 1;
+        }
+        double predicted = variance + processVariance;
+        return predicted / (predicted + measurementVariance);
+    }
+
+    @Override
+    public int filter(int value) {
+        if (!started) {
+            started = true;
+            estimate = value;
+            variance = measurementVariance;
+        } else {
+            double predicted = variance + processVariance;
+            double gain = predicted / (predicted + measurementVariance);
+            estimate += gain * (value - estimate);
+            variance = (1 - gain) * predicted;
+        }
+        return (int) Math.round(estimate);
+    }
+
+    @Override
+    public void reset() {
+        started = false;
+    }
+}
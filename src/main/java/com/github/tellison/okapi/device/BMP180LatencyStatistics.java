@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of the distribution of latencies for an operation on a BMP180
+ * device.
+ * 
+ * Latencies are recorded in buckets with a relative width of 25%, so the
+ * percentiles are approximate, and are reported as the upper bound of their
+ * bucket.
+ *
+ * @see BMP180MetricsMXBean
+ */
+public final class BMP180LatencyStatistics {
+
+    private final String name;
+    private final long count;
+    private final long meanNanos;
+    private final long maxNanos;
+    private final long medianNanos;
+    private final long p99Nanos;
+
+    /**
+     * Constructs a latency snapshot.
+     * 
+     * @param name
+     *            the name of the measured operation.
+     * @param count
+     *            the number of operations.
+     * @param meanNanos
+     *            the mean latency in ns.
+     * @param maxNanos
+     *            the maximum latency in ns.
+     * @param medianNanos
+     *            the approximate median latency in ns.
+     * @param p99Nanos
+     *            the approximate 99th percentile latency in ns.
+     */
+    @ConstructorProperties({ "name", "count", "meanNanos", "maxNanos", "medianNanos", "p99Nanos" })
+    public BMP180LatencyStatistics(String name, long count, long meanNanos, long maxNanos, long medianNanos,
+            long p99Nanos) {
+        super();
+        this.name = name;
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.maxNanos = maxNanos;
+        this.medianNanos = medianNanos;
+        this.p99Nanos = p99Nanos;
+    }
+
+    /**
+     * Returns the name of the measured operation.
+     * 
+     * @return The operation name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of operations measured.
+     * 
+     * @return The operation count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean latency of the operations.
+     * 
+     * @return The mean latency in ns, or zero if there were no operations.
+     */
+    public long getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * Returns the maximum latency of the operations.
+     * 
+     * @return The maximum latency in ns, or zero if there were no operations.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the approximate median latency of the operations.
+     * 
+     * @return The median latency in ns, or zero if there were no operations.
+     */
+    public long getMedianNanos() {
+        return medianNanos;
+    }
+
+    /**
+     * Returns the approximate 99th percentile latency of the operations.
+     * 
+     * @return The 99th percentile latency in ns, or zero if there were no
+     *         operations.
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     * 
+     * @return A debug string showing the latency statistics.
+     */
+    @Override
+    public String toString() {
+        return name + "(count=" + count + ", mean=" + meanNanos + "ns, median=" + medianNanos + "ns, p99="
+                + p99Nanos + "ns, max=" + maxNanos + "ns)";
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the readings written to a memory-mapped file by a
+ * {@link BMP180MappedReadingWriter}, typically in another process.
+ *
+ * Readings are copied straight from the shared memory pages into holders and
+ * primitive arrays, so once the file is open reading takes no system calls,
+ * and neither takes a lock nor allocates memory. A reading that the writer
+ * overwrites while it is being copied is detected by its sequence lock and
+ * read again. Any number of threads may use a reader concurrently.
+ * <p>
+ * New readings can be followed by polling the count of readings written:
+ *
+ * <pre>
+ * BMP180MappedReadingReader reader = new BMP180MappedReadingReader(path);
+ * BMP180Reading reading = new BMP180Reading();
+ * long next = reader.getCount();
+ * ...
+ * while (reader.read(next, reading)) {
+ *     next++;
+ *     ...
+ * }
+ * </pre>
+ */
+public class BMP180MappedReadingReader implements Closeable {
+
+    private final Path file;
+
+    private final MappedByteBuffer buffer;
+
+    // Number of slots in the ring.
+    private final int slots;
+
+    private final int capacity;
+
+    /**
+     * Opens a reading file created by a writer.
+     *
+     * @param file
+     *            the reading file.
+     * @throws IOException
+     *             An exception occurred reading the file, or it is not a valid
+     *             reading file.
+     */
+    public BMP180MappedReadingReader(Path file) throws IOException {
+        super();
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < MappedReadingLayout.HEADER_BYTES) {
+                throw new IOException("Reading file " + file + " is too short.");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        buffer.order(MappedReadingLayout.BYTE_ORDER);
+        if (buffer.getInt(MappedReadingLayout.MAGIC_OFFSET) != MappedReadingLayout.MAGIC
+                || buffer.getInt(MappedReadingLayout.VERSION_OFFSET) != MappedReadingLayout.VERSION) {
+            throw new IOException("File " + file + " is not a supported reading file.");
+        }
+        this.capacity = buffer.getInt(MappedReadingLayout.CAPACITY_OFFSET);
+        this.slots = buffer.getInt(MappedReadingLayout.SLOTS_OFFSET);
+        if (capacity < 1 || capacity > MappedReadingLayout.MAX_CAPACITY
+                || slots != MappedReadingLayout.slotsFor(capacity)
+                || buffer.capacity() != MappedReadingLayout.fileLength(slots)) {
+            throw new IOException("Reading file " + file + " has an invalid header.");
+        }
+    }
+
+    /**
+     * Returns the reading file.
+     *
+     * @return The path of the file read.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of most recent readings retained by the file.
+     *
+     * @return The file capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total number of readings written to the file. This is also
+     * a convenient way to poll for new readings.
+     *
+     * @return The number of readings written.
+     */
+    public long getCount() {
+        long count = buffer.getLong(MappedReadingLayout.COUNT_OFFSET);
+        MemoryFences.acquire();
+        return count;
+    }
+
+    /**
+     * Answers whether the writer has closed the file, so no more readings
+     * will be written to it. A new writer for the same path creates a new
+     * file, which is read by opening a new reader.
+     *
+     * @return <code>true</code> if the writer is closed, and
+     *         <code>false</code> otherwise.
+     */
+    public boolean isWriterClosed() {
+        return buffer.getInt(MappedReadingLayout.CLOSED_OFFSET) != 0;
+    }
+
+    /**
+     * Copies the most recent reading into the given holder.
+     *
+     * @param reading
+     *            the holder to receive the latest values.
+     * @return <code>true</code> if a reading was copied, or
+     *         <code>false</code> if no readings have been written yet.
+     */
+    public boolean readLatest(BMP180Reading reading) {
+        for (;;) {
+            long count = getCount();
+            if (count == 0) {
+                return false;
+            }
+            if (read(count - 1, reading)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Copies the reading with the given number into the given holder, where
+     * the first reading written is number zero.
+     *
+     * @param readingNumber
+     *            the number of the reading to copy.
+     * @param reading
+     *            the holder to receive the values.
+     * @return <code>true</code> if the reading was copied, or
+     *         <code>false</code> if it has not been written yet, or has
+     *         already been overwritten.
+     */
+    public boolean read(long readingNumber, BMP180Reading reading) {
+        if (readingNumber < 0) {
+            return false;
+        }
+        int slot = MappedReadingLayout.slotOffset(readingNumber, slots);
+        long expected = MappedReadingLayout.writtenSequence(readingNumber);
+        long before = buffer.getLong(slot + MappedReadingLayout.SEQUENCE_OFFSET);
+        MemoryFences.acquire();
+        long timestamp = buffer.getLong(slot + MappedReadingLayout.TIMESTAMP_OFFSET);
+        long values = buffer.getLong(slot + MappedReadingLayout.VALUES_OFFSET);
+        MemoryFences.acquire();
+        long after = buffer.getLong(slot + MappedReadingLayout.SEQUENCE_OFFSET);
+        if (before != expected || after != expected) {
+            return false;
+        }
+        reading.set(timestamp, BMP180Reading.unpackDeciCelsius(values), BMP180Reading.unpackPascals(values));
+        return true;
+    }
+
+    /**
+     * Copies up to the last N readings into the given arrays, oldest first,
+     * with the values in fixed-point.
+     *
+     * The number of readings copied is the smallest of the array lengths, the
+     * file capacity, and the number of readings written so far.
+     *
+     * @param timestamps
+     *            receives the reading times, in milliseconds since the epoch.
+     * @param deciCelsius
+     *            receives the temperatures, in steps of 0.1 deg.C.
+     * @param pascals
+     *            receives the pressures, in Pa.
+     * @return The number of readings copied into each array.
+     */
+    public int readRecent(long[] timestamps, int[] deciCelsius, int[] pascals) {
+        int wanted = Math.min(capacity, Math.min(timestamps.length, Math.min(deciCelsius.length, pascals.length)));
+        for (;;) {
+            long count = getCount();
+            int copied = (int) Math.min(wanted, count);
+            long first = count - copied;
+            int i = 0;
+            while (i < copied && readSlot(first + i, timestamps, deciCelsius, pascals, i)) {
+                i++;
+            }
+            // Otherwise overtaken by the writer, so start again from the latest.
+            if (i == copied) {
+                return copied;
+            }
+        }
+    }
+
+    /*
+     * Copies the reading with the given number into the arrays at the given
+     * index, answering false if it is not intact.
+     */
+    private boolean readSlot(long readingNumber, long[] timestamps, int[] deciCelsius, int[] pascals, int index) {
+        int slot = MappedReadingLayout.slotOffset(readingNumber, slots);
+        long expected = MappedReadingLayout.writtenSequence(readingNumber);
+        long before = buffer.getLong(slot + MappedReadingLayout.SEQUENCE_OFFSET);
+        MemoryFences.acquire();
+        long timestamp = buffer.getLong(slot + MappedReadingLayout.TIMESTAMP_OFFSET);
+        long values = buffer.getLong(slot + MappedReadingLayout.VALUES_OFFSET);
+        MemoryFences.acquire();
+        long after = buffer.getLong(slot + MappedReadingLayout.SEQUENCE_OFFSET);
+        if (before != expected || after != expected) {
+            return false;
+        }
+        timestamps[index] = timestamp;
+        deciCelsius[index] = BMP180Reading.unpackDeciCelsius(values);
+        pascals[index] = BMP180Reading.unpackPascals(values);
+        return true;
+    }
+
+    /**
+     * Closes the reader. The memory mapping is released when the reader is
+     * garbage collected, as Java 8 has no means of unmapping it sooner.
+     */
+    @Override
+    public void close() {
+        // Nothing to release until the mapping is collected.
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     *
+     * @return A debug string showing the file and readings written.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + file + ", count=" + getCount() + ")";
+    }
+}
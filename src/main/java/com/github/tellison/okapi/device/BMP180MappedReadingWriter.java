@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes readings into a memory-mapped file, for consumers in other processes.
+ *
+ * The file holds a fixed size ring of the most recent readings, which any
+ * number of {@link BMP180MappedReadingReader}s, in this or other JVMs on the
+ * same machine, read directly from the shared memory pages. Publishing a
+ * reading is a few memory stores, with no system calls, and readers never
+ * block the writer. Each slot of the ring is protected by a sequence lock, so
+ * a reader that is overtaken by the writer sees the slot change and retries.
+ * <p>
+ * There must be a single writer for a file. The writer is a subscriber, so it
+ * can be fed directly by a sampler:
+ *
+ * <pre>
+ * BMP180MappedReadingWriter writer = new BMP180MappedReadingWriter(path, 1024);
+ * sampler.getPublisher().subscribe(writer);
+ * </pre>
+ *
+ * The file is created afresh by each writer, and replaces any existing file
+ * atomically where the file system allows, so readers of an earlier file are
+ * never disturbed. Those readers see the earlier writer as closed, and can
+ * open the file again to follow the new writer.
+ */
+public class BMP180MappedReadingWriter implements BMP180ReadingPublisher.Subscriber, Closeable {
+
+    private final Path file;
+
+    private final MappedByteBuffer buffer;
+
+    // Number of slots in the ring.
+    private final int slots;
+
+    private final int capacity;
+
+    // Count of readings written so far, only updated by the writer.
+    private volatile long count;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new reading file that retains the given number of readings.
+     *
+     * @param file
+     *            the file to create, replacing any existing file.
+     * @param capacity
+     *            the number of most recent readings retained by the file.
+     * @throws IOException
+     *             An exception occurred creating the file.
+     */
+    public BMP180MappedReadingWriter(Path file, int capacity) throws IOException {
+        super();
+        if (capacity < 1 || capacity > MappedReadingLayout.MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid reading file capacity " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.slots = MappedReadingLayout.slotsFor(capacity);
+
+        // Build the file to one side, so readers only ever see a complete
+        // header. The mapping stays valid when the file is moved.
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        int length = MappedReadingLayout.fileLength(slots);
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(temp.toFile(), "rw")) {
+                raf.setLength(length);
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            }
+            buffer.order(MappedReadingLayout.BYTE_ORDER);
+            buffer.putInt(MappedReadingLayout.MAGIC_OFFSET, MappedReadingLayout.MAGIC);
+            buffer.putInt(MappedReadingLayout.VERSION_OFFSET, MappedReadingLayout.VERSION);
+            buffer.putInt(MappedReadingLayout.CAPACITY_OFFSET, capacity);
+            buffer.putInt(MappedReadingLayout.SLOTS_OFFSET, slots);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Returns the reading file.
+     *
+     * @return The path of the file written.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of most recent readings retained by the file.
+     *
+     * @return The file capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total number of readings written to the file.
+     *
+     * @return The number of readings written.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes a reading to the file, overwriting the oldest reading. Must only
+     * be called by a single thread at a time.
+     *
+     * @param reading
+     *            the reading to write.
+     * @throws IllegalStateException
+     *             The writer is closed.
+     */
+    public void write(BMP180Reading reading) {
+        write(reading.getTimestamp(), reading.getPacked());
+    }
+
+    /**
+     * Writes a reading to the file, overwriting the oldest reading. Must only
+     * be called by a single thread at a time.
+     *
+     * @param timestamp
+     *            the reading time, in milliseconds since the epoch.
+     * @param packed
+     *            the packed temperature and pressure, see
+     *            {@link BMP180Reading#pack(int, int)}.
+     * @throws IllegalStateException
+     *             The writer is closed.
+     */
+    public void write(long timestamp, long packed) {
+        if (closed) {
+            throw new IllegalStateException("Reading file writer is closed.");
+        }
+        long next = count;
+        int slot = MappedReadingLayout.slotOffset(next, slots);
+
+        // Mark the slot as being written before changing it, and as written
+        // only once the values are in place.
+        buffer.putLong(slot + MappedReadingLayout.SEQUENCE_OFFSET, MappedReadingLayout.writtenSequence(next) - 1);
+        MemoryFences.release();
+        buffer.putLong(slot + MappedReadingLayout.TIMESTAMP_OFFSET, timestamp);
+        buffer.putLong(slot + MappedReadingLayout.VALUES_OFFSET, packed);
+        MemoryFences.release();
+        buffer.putLong(slot + MappedReadingLayout.SEQUENCE_OFFSET, MappedReadingLayout.writtenSequence(next));
+        MemoryFences.release();
+        buffer.putLong(MappedReadingLayout.COUNT_OFFSET, next + 1);
+        count = next + 1;
+    }
+
+    /**
+     * Requests every reading from the publisher.
+     *
+     * @param subscription
+     *            the new subscription.
+     */
+    @Override
+    public void onSubscribe(BMP180ReadingPublisher.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes a published reading to the file, as {@link #write(BMP180Reading)}.
+     *
+     * @param reading
+     *            the published reading.
+     */
+    @Override
+    public void onNext(BMP180Reading reading) {
+        if (!closed) {
+            write(reading);
+        }
+    }
+
+    /**
+     * Closes the writer when the publisher fails.
+     *
+     * @param throwable
+     *            the failure.
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        close();
+    }
+
+    /**
+     * Closes the writer when the publisher completes.
+     */
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    /**
+     * Marks the file as closed, so readers know no more readings will be
+     * written. The file itself is left in place for readers.
+     *
+     * The memory mapping is released when the writer is garbage collected,
+     * as Java 8 has no means of unmapping it sooner.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            MemoryFences.release();
+            buffer.putInt(MappedReadingLayout.CLOSED_OFFSET, 1);
+        }
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     *
+     * @return A debug string showing the file and readings written.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + file + ", count=" + count + ")";
+    }
+}
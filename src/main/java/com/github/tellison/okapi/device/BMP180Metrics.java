@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * The metrics for a single device, published as an MXBean.
+ *
+ * Counters are striped adders so that updating them does not contend, and
+ * latencies are recorded in histograms that are only summarized when read.
+ */
+final class BMP180Metrics implements BMP180MetricsMXBean {
+
+    // Source of unique MBean names for devices.
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private final int address;
+
+    // I2C transaction counters, updated by MeteredDevice.
+    final LongAdder i2cReads = new LongAdder();
+    final LongAdder i2cWrites = new LongAdder();
+    final LongAdder i2cCombinedReads = new LongAdder();
+    final LongAdder i2cErrors = new LongAdder();
+    final LongAdder shortReads = new LongAdder();
+
+    final LongAdder failedReadings = new LongAdder();
+    final LongAdder coalescedReadings = new LongAdder();
+
+    final LatencyHistogram lockWait = new LatencyHistogram();
+    final LatencyHistogram temperatureConversion = new LatencyHistogram();
+    private final LatencyHistogram[] pressureConversion;
+    final LatencyHistogram readingLatency = new LatencyHistogram();
+
+    // The registered MBean name, or null if not registered.
+    private ObjectName name;
+
+    BMP180Metrics(int address) {
+        super();
+        this.address = address;
+        pressureConversion = new LatencyHistogram[BMP180SamplingMode.values().length];
+        for (int i = 0; i < pressureConversion.length; i++) {
+            pressureConversion[i] = new LatencyHistogram();
+        }
+    }
+
+    /*
+     * Returns the pressure conversion histogram for the given mode.
+     */
+    LatencyHistogram pressureConversion(BMP180SamplingMode mode) {
+        return pressureConversion[mode.ordinal()];
+    }
+
+    /*
+     * Registers these metrics with the platform MBean server. The metrics are
+     * advisory, so the device is usable even if they cannot be registered.
+     */
+    void register() {
+        try {
+            ObjectName candidate = new ObjectName("com.github.tellison.okapi:type=BMP180Device,id="
+                    + nextId.getAndIncrement());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            name = candidate;
+        } catch (JMException | SecurityException ex) {
+            name = null;
+        }
+    }
+
+    /*
+     * Removes these metrics from the platform MBean server, if registered.
+     */
+    void unregister() {
+        if (name != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException | SecurityException ex) {
+                // Already gone, or never will be.
+            }
+            name = null;
+        }
+    }
+
+    /*
+     * Returns the registered MBean name, or null if not registered.
+     */
+    ObjectName getObjectName() {
+        return name;
+    }
+
+    @Override
+    public int getAddress() {
+        return address;
+    }
+
+    @Override
+    public long getI2CReadCount() {
+        return i2cReads.sum();
+    }
+
+    @Override
+    public long getI2CWriteCount() {
+        return i2cWrites.sum();
+    }
+
+    @Override
+    public long getI2CCombinedReadCount() {
+        return i2cCombinedReads.sum();
+    }
+
+    @Override
+    public long getI2CErrorCount() {
+        return i2cErrors.sum();
+    }
+
+    @Override
+    public long getShortReadCount() {
+        return shortReads.sum();
+    }
+
+    @Override
+    public long getFailedReadingCount() {
+        return failedReadings.sum();
+    }
+
+    @Override
+    public long getCoalescedReadingCount() {
+        return coalescedReadings.sum();
+    }
+
+    @Override
+    public BMP180LatencyStatistics getLockWait() {
+        return lockWait.snapshot("lockWait");
+    }
+
+    @Override
+    public BMP180LatencyStatistics getTemperatureConversion() {
+        return temperatureConversion.snapshot("temperatureConversion");
+    }
+
+    @Override
+    public BMP180LatencyStatistics[] getPressureConversion() {
+        BMP180SamplingMode[] modes = BMP180SamplingMode.values();
+        BMP180LatencyStatistics[] result = new BMP180LatencyStatistics[modes.length];
+        for (int i = 0; i < modes.length; i++) {
+            result[i] = pressureConversion[i].snapshot("pressureConversion." + modes[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public BMP180LatencyStatistics getReadingLatency() {
+        return readingLatency.snapshot("readingLatency");
+    }
+
+    @Override
+    public void reset() {
+        i2cReads.reset();
+        i2cWrites.reset();
+        i2cCombinedReads.reset();
+        i2cErrors.reset();
+        shortReads.reset();
+        failedReadings.reset();
+        coalescedReadings.reset();
+        lockWait.reset();
+        temperatureConversion.reset();
+        for (LatencyHistogram histogram : pressureConversion) {
+            histogram.reset();
+        }
+        readingLatency.reset();
+    }
+}
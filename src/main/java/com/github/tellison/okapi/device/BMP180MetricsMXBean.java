@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * Management interface for the metrics of a BMP180 device.
+ * 
+ * Each open {@link BMP180Device} registers an MBean with this interface in the
+ * platform MBean server, with a name of the form
+ * <code>com.github.tellison.okapi:type=BMP180Device,id=<i>n</i></code>. The
+ * metrics are cheap to maintain, and are only summarized when read.
+ */
+public interface BMP180MetricsMXBean {
+
+    /**
+     * Returns the I2C address of the device.
+     * 
+     * @return The device address.
+     */
+    int getAddress();
+
+    /**
+     * Returns the number of I2C read transactions with the device.
+     * 
+     * @return The number of reads.
+     */
+    long getI2CReadCount();
+
+    /**
+     * Returns the number of I2C write transactions with the device.
+     * 
+     * @return The number of writes.
+     */
+    long getI2CWriteCount();
+
+    /**
+     * Returns the number of I2C reads that were combined write-read
+     * transactions, which are included in the read count.
+     * 
+     * @return The number of combined reads.
+     */
+    long getI2CCombinedReadCount();
+
+    /**
+     * Returns the number of I2C transactions that failed with an exception.
+     * 
+     * @return The number of failed transactions.
+     */
+    long getI2CErrorCount();
+
+    /**
+     * Returns the number of I2C reads that returned fewer bytes than
+     * requested.
+     * 
+     * @return The number of short reads.
+     */
+    long getShortReadCount();
+
+    /**
+     * Returns the number of temperature and pressure readings that failed.
+     * 
+     * @return The number of failed readings.
+     */
+    long getFailedReadingCount();
+
+    /**
+     * Returns the number of readings that shared the values of another
+     * caller's reading in progress, rather than reading the device.
+     * 
+     * @return The number of coalesced readings.
+     * 
+     * @see BMP180Device#setReadCoalescing(boolean)
+     */
+    long getCoalescedReadingCount();
+
+    /**
+     * Returns the time spent waiting for access to the device.
+     * 
+     * @return The lock wait statistics.
+     */
+    BMP180LatencyStatistics getLockWait();
+
+    /**
+     * Returns the time spent waiting for temperature conversions.
+     * 
+     * @return The temperature conversion wait statistics.
+     */
+    BMP180LatencyStatistics getTemperatureConversion();
+
+    /**
+     * Returns the time spent waiting for pressure conversions, for each
+     * sampling mode in the order of {@link BMP180SamplingMode#values()}.
+     * 
+     * @return The pressure conversion wait statistics.
+     */
+    BMP180LatencyStatistics[] getPressureConversion();
+
+    /**
+     * Returns the end to end latency of successful temperature and pressure
+     * readings, including asynchronous readings.
+     * 
+     * @return The reading latency statistics.
+     */
+    BMP180LatencyStatistics getReadingLatency();
+
+    /**
+     * Resets all of the counters and statistics to zero.
+     */
+    void reset();
+}
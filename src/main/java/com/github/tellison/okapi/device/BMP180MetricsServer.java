@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the latest reading and the device metrics over HTTP, in the
+ * Prometheus text exposition format.
+ *
+ * Every scrape is answered from memory: the latest reading and its age come
+ * from the sampler's reading buffer, and the counters from the device
+ * metrics. Scrapes never read the device, or wait for the device lock, so
+ * the sampler remains the only user of the bus and a scrape takes the same
+ * time however many scrapers there are or however long conversions take.
+ * <p>
+ * The server uses the HTTP server built into the JDK, and answers
+ * <code>GET /metrics</code>.
+ *
+ * <pre>
+ * BMP180MetricsServer server = new BMP180MetricsServer(sampler, new InetSocketAddress(9180));
+ * server.start();
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class BMP180MetricsServer implements Closeable {
+
+    // The path served, as usual for Prometheus exporters.
+    private static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Threads serving scrapes. Each scrape only reads memory, so a few
+    // threads serve any number of concurrent scrapers.
+    private static final int THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final BMP180Sampler sampler;
+    private final BMP180MetricsMXBean metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a server for the readings of a sampler, bound to the given
+     * address. Scrapes are answered once the server is started.
+     *
+     * @param sampler
+     *            the sampler that owns the device.
+     * @param address
+     *            the address to listen on, or port 0 for any free port.
+     * @throws IOException
+     *             An exception occurred binding to the address.
+     */
+    public BMP180MetricsServer(BMP180Sampler sampler, InetSocketAddress address) throws IOException {
+        super();
+        this.sampler = sampler;
+        this.metrics = sampler.getDevice().getMetrics();
+        this.server = HttpServer.create(address, 0);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(THREADS, task -> {
+            Thread thread = new Thread(task, "BMP180 metrics " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+    }
+
+    /**
+     * Starts answering scrapes.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the address the server is listening on.
+     *
+     * @return The bound address, including the actual port.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /*
+     * Answers a single request.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+            } else if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                exchange.sendResponseHeaders(405, -1);
+            } else {
+                byte[] body = render(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+                if ("HEAD".equals(method)) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+     * Appends the exposition text for the current readings and metrics.
+     */
+    private String render(long now) {
+        StringBuilder text = new StringBuilder(2048);
+        BMP180Reading reading = new BMP180Reading();
+        if (sampler.getBuffer().readLatest(reading)) {
+            gauge(text, "bmp180_temperature_celsius", "Temperature of the latest reading.",
+                    reading.getDeciCelsius() / 10.0);
+            gauge(text, "bmp180_pressure_pascals", "Pressure of the latest reading.", reading.getPascals());
+            gauge(text, "bmp180_reading_timestamp_seconds", "Time of the latest reading since the epoch.",
+                    reading.getTimestamp() / 1000.0);
+            gauge(text, "bmp180_reading_age_seconds", "Time since the latest reading.",
+                    Math.max(0, now - reading.getTimestamp()) / 1000.0);
+        }
+        counter(text, "bmp180_readings_total", "Readings taken by the sampler.", sampler.getBuffer().getCount());
+        counter(text, "bmp180_sampler_failures_total", "Sampler readings that failed.", sampler.getFailureCount());
+        counter(text, "bmp180_failed_readings_total", "Device readings that failed.",
+                metrics.getFailedReadingCount());
+        counter(text, "bmp180_coalesced_readings_total", "Device readings that shared another reading in progress.",
+                metrics.getCoalescedReadingCount());
+        counter(text, "bmp180_i2c_reads_total", "I2C read transactions.", metrics.getI2CReadCount());
+        counter(text, "bmp180_i2c_writes_total", "I2C write transactions.", metrics.getI2CWriteCount());
+        counter(text, "bmp180_i2c_combined_reads_total", "I2C combined write-read transactions.",
+                metrics.getI2CCombinedReadCount());
+        counter(text, "bmp180_i2c_errors_total", "I2C transactions that failed.", metrics.getI2CErrorCount());
+        counter(text, "bmp180_i2c_short_reads_total", "I2C reads that returned too few bytes.",
+                metrics.getShortReadCount());
+        summary(text, "bmp180_reading_latency_seconds", "Latency of successful device readings.",
+                metrics.getReadingLatency());
+        summary(text, "bmp180_lock_wait_seconds", "Time spent waiting for access to the device.",
+                metrics.getLockWait());
+        return text.toString();
+    }
+
+    /* Appends the help and type lines of a metric. */
+    private static StringBuilder header(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        return text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /* Appends a gauge metric. */
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        header(text, name, help, "gauge").append(name).append(' ').append(value).append('\n');
+    }
+
+    /* Appends a counter metric. */
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        header(text, name, help, "counter").append(name).append(' ').append(value).append('\n');
+    }
+
+    /* Appends a summary metric from latency statistics. */
+    private static void summary(StringBuilder text, String name, String help, BMP180LatencyStatistics latency) {
+        header(text, name, help, "summary");
+        text.append(name).append("{quantile=\"0.5\"} ").append(latency.getMedianNanos() / 1e9).append('\n');
+        text.append(name).append("{quantile=\"0.99\"} ").append(latency.getP99Nanos() / 1e9).append('\n');
+        text.append(name).append("_sum ").append(latency.getMeanNanos() * latency.getCount() / 1e9).append('\n');
+        text.append(name).append("_count ").append(latency.getCount()).append('\n');
+    }
+
+    /**
+     * Stops the server. Scrapes in progress are abandoned, as scrapers retry
+     * anyway. The sampler and device are left running.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the sampling mode for each reading from a device, trading
+ * resolution against reading time as the pressure signal changes.
+ *
+ * Higher resolution modes average more internal samples, so they have less
+ * noise but take longer and use more power. The controller watches the
+ * variance of recent pressure readings. While the pressure is quiet, readings
+ * vary by little more than the noise of the mode, so the controller moves to
+ * higher resolution modes. While the pressure is changing quickly, the
+ * readings vary by much more than the noise of even the lowest resolution
+ * mode, so extra resolution is wasted and the controller moves to faster
+ * modes. A mode is precise enough when its typical noise is no more than half
+ * the standard deviation of the readings.
+ * <p>
+ * The controller never chooses a mode whose estimated reading time on the
+ * device exceeds the sampling period, the demanded throughput, and drops to
+ * a faster mode at once if the period is shortened or readings slow down.
+ * Changes driven by variance have hysteresis: the variance must clearly call
+ * for another mode, and the controller only reconsiders once the window of
+ * readings has been refilled since the last change.
+ *
+ * <pre>
+ * BMP180ModeController controller = new BMP180ModeController(device, 50, TimeUnit.MILLISECONDS, 32);
+ * try (BMP180Sampler sampler = new BMP180Sampler(device, controller, 64)) {
+ *     sampler.start();
+ *     ...
+ * }
+ * </pre>
+ */
+public class BMP180ModeController {
+
+    // Ratio of the standard deviation to a mode's noise needed to use it.
+    private static final int NOISE_RATIO = 2;
+
+    // How far beyond a mode's threshold the standard deviation must be before
+    // the mode is changed.
+    private static final double HYSTERESIS = 1.5;
+
+    // Largest window for which the variance is exact in long arithmetic, for
+    // pressures below 2^17 Pa.
+    private static final int MAX_WINDOW_SIZE = 4096;
+
+    private static final BMP180SamplingMode[] MODES = BMP180SamplingMode.values();
+
+    private final BMP180Device device;
+
+    // Recent pressures in Pa, in a ring, with their running sums.
+    private final int[] window;
+    private int next;
+    private int count;
+    private long sum;
+    private long sumOfSquares;
+
+    private long periodNanos;
+    private BMP180SamplingMode mode;
+
+    // Readings since the mode last changed.
+    private int readingsInMode;
+
+    private long changeCount;
+
+    /**
+     * Constructs a controller for the given device and sampling period. The
+     * controller starts in the highest resolution mode that fits the period.
+     *
+     * @param device
+     *            the device being sampled.
+     * @param period
+     *            the time between the start of each reading.
+     * @param unit
+     *            the unit of the period argument.
+     * @param windowSize
+     *            the number of recent readings whose variance is watched,
+     *            from 2 to 4096.
+     */
+    public BMP180ModeController(BMP180Device device, long period, TimeUnit unit, int windowSize) {
+        super();
+        if (windowSize < 2 || windowSize > MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException("Invalid window size " + windowSize);
+        }
+        this.device = device;
+        this.window = new int[windowSize];
+        setPeriod(period, unit);
+        this.mode = bestFitting();
+    }
+
+    /**
+     * Sets the time between the start of each reading, the demanded
+     * throughput. If the current mode no longer fits, the controller moves to
+     * a faster mode at the next reading.
+     *
+     * @param period
+     *            the time between the start of each reading.
+     * @param unit
+     *            the unit of the period argument.
+     */
+    public synchronized void setPeriod(long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Sampling period must be positive.");
+        }
+        periodNanos = unit.toNanos(period);
+    }
+
+    /**
+     * Returns the time between the start of each reading.
+     *
+     * @param unit
+     *            the unit of the returned time.
+     * @return The sampling period.
+     */
+    public synchronized long getPeriod(TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the sampling mode for the next reading.
+     *
+     * @return The current sampling mode.
+     */
+    public synchronized BMP180SamplingMode getSamplingMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of times the sampling mode has changed.
+     *
+     * @return The count of mode changes.
+     */
+    public synchronized long getModeChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Returns the standard deviation of the pressures in the window of recent
+     * readings.
+     *
+     * @return The standard deviation in Pa, or zero if there are fewer than
+     *         two readings.
+     */
+    public synchronized double getStandardDeviation() {
+        if (count < 2) {
+            return 0;
+        }
+        double variance = (double) (count * sumOfSquares - sum * sum) / ((long) count * (count - 1));
+        return Math.sqrt(Math.max(variance, 0));
+    }
+
+    /**
+     * Records a reading, and returns the sampling mode for the next reading.
+     *
+     * @param reading
+     *            the latest reading from the device.
+     * @return The sampling mode for the next reading.
+     */
+    public synchronized BMP180SamplingMode update(BMP180Reading reading) {
+        record(reading.getPascals());
+        readingsInMode++;
+
+        BMP180SamplingMode chosen = mode;
+        if (readingsInMode >= window.length) {
+            double deviation = getStandardDeviation();
+            BMP180SamplingMode lower = preciseEnough(deviation / HYSTERESIS);
+            BMP180SamplingMode higher = preciseEnough(deviation * HYSTERESIS);
+            if (lower.compareTo(mode) < 0) {
+                chosen = lower;
+            } else if (higher.compareTo(mode) > 0) {
+                chosen = higher;
+            }
+        }
+
+        // The throughput limit applies at once.
+        BMP180SamplingMode fitting = bestFitting();
+        if (chosen.compareTo(fitting) > 0) {
+            chosen = fitting;
+        }
+        if (chosen != mode) {
+            mode = chosen;
+            readingsInMode = 0;
+            changeCount++;
+        }
+        return mode;
+    }
+
+    /* Adds a pressure to the window, replacing the oldest. */
+    private void record(int pascals) {
+        if (count == window.length) {
+            int oldest = window[next];
+            sum -= oldest;
+            sumOfSquares -= (long) oldest * oldest;
+        } else {
+            count++;
+        }
+        window[next] = pascals;
+        sum += pascals;
+        sumOfSquares += (long) pascals * pascals;
+        next = (next + 1) % window.length;
+    }
+
+    /*
+     * Returns the lowest resolution mode whose noise is small enough for the
+     * given standard deviation, or the highest resolution mode if none is.
+     */
+    private static BMP180SamplingMode preciseEnough(double deviation) {
+        for (BMP180SamplingMode candidate : MODES) {
+            if (candidate.getNoisePascals() * NOISE_RATIO <= deviation) {
+                return candidate;
+            }
+        }
+        return MODES[MODES.length - 1];
+    }
+
+    /*
+     * Returns the highest resolution mode whose estimated reading time fits
+     * the period, or the lowest resolution mode if none does.
+     */
+    private BMP180SamplingMode bestFitting() {
+        BMP180SamplingMode fitting = device.getSamplingModeWithin(periodNanos, TimeUnit.NANOSECONDS);
+        return (fitting == null) ? MODES[0] : fitting;
+    }
+
+    /**
+     * Returns a readable representation of this object.
+     *
+     * @return A debug string showing the current mode and deviation.
+     */
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "(" + mode + ", sd=" + getStandardDeviation() + "Pa)";
+    }
+}
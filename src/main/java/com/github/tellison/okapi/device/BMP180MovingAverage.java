@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * A filter stage that returns the mean of a fixed number of the most recent
+ * values, rounded to the nearest unit.
+ *
+ * Until the window has filled, the mean is of the values seen so far. The
+ * mean is kept as an exact running sum, so each value is filtered in constant
+ * time whatever the window size.
+ */
+public class BMP180MovingAverage implements BMP180Filter {
+
+    // Recent values in a ring, with their exact sum.
+    private final int[] window;
+    private int next;
+    private int count;
+    private long sum;
+
+    /**
+     * Constructs a new moving average over the given number of values.
+     *
+     * @param windowSize
+     *            the number of most recent values averaged.
+     */
+    public BMP180MovingAverage(int windowSize) {
+        super();
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Invalid window size " + windowSize);
+        }
+        window = new int[windowSize];
+    }
+
+    /**
+     * Returns the number of values averaged once the window has filled.
+     *
+     * @return The window size.
+     */
+    public int getWindowSize() {
+        return window.length;
+    }
+
+    @Override
+    public int filter(int value) {
+        if (count == window.length) {
+            sum -= window[next];
+        } else {
+            count++;
+        }
+        window[next] = value;
+        sum += value;
+        next = (next + 1) % window.length;
+
+        // Round half up, for negative sums too.
+        return (int) Math.floorDiv(2 * sum + count, 2L * count);
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        count = 0;
+        sum = 0;
+    }
+}
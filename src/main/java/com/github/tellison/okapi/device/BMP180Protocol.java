@@ -0,0 +1,254 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+/*
+ * The register level protocol for talking to a BMP180 device over I2C (see
+ * device data sheet).
+ *
+ * These operations are stateless, so callers are responsible for serializing
+ * access to the device, and for supplying a transfer buffer of at least three
+ * bytes for raw readings.
+ */
+final class BMP180Protocol {
+
+    // Control register information.
+    static final int CALIB_REGISTER_ADDRESS = 0xAA;
+    static final int ID_REGISTER_ADDRESS = 0xD0;
+    static final int SOFT_RESET_ADDRESS = 0xE0;
+    static final int CONTROL_REGISTER_ADDRESS = 0xF4;
+    static final int DATA_REGISTER_ADDRESS = 0xF6;
+
+    // Command information.
+    static final byte SOFT_RESET_COMMAND = (byte) 0xB6;
+    static final byte READ_TEMPERATURE_COMMAND = (byte) 0x2E;
+    static final byte READ_PRESSURE_COMMAND = (byte) 0x34;
+
+    // Start of conversion bit in the control register, which reads as zero
+    // once a conversion has completed.
+    static final int SCO_BIT = 0x20;
+
+    // Interval between polls of the start of conversion bit, in ns.
+    static final long POLL_INTERVAL_NANOS = 250_000;
+
+    // Calibration data information.
+    static final int CALIB_BYTES_LENGTH = 22;
+
+    private BMP180Protocol() {
+        // No instances.
+    }
+
+    /*
+     * Reads the calibration data from the device. Every sensor has 11
+     * individual calibration coefficients.
+     *
+     * @throws IOException An exception occurred reading data from the device.
+     */
+    static BMP180Compensator readCalibrationData(I2CDevice device) throws IOException {
+        return parseCalibrationData(readCalibrationBytes(device));
+    }
+
+    /*
+     * Reads the raw calibration data from the device.
+     *
+     * @throws IOException An exception occurred reading data from the device.
+     */
+    static byte[] readCalibrationBytes(I2CDevice device) throws IOException {
+        // Read all of the calibration data into a byte array.
+        byte[] calibData = new byte[CALIB_BYTES_LENGTH];
+        int result = device.read(CALIB_REGISTER_ADDRESS, calibData, 0, CALIB_BYTES_LENGTH);
+        if (result < CALIB_BYTES_LENGTH) {
+            throw new IOException("Error reading calibration data.  Only read " + result);
+        }
+        return calibData;
+    }
+
+    /*
+     * Reads the chip ID of the device.
+     */
+    static int readChipID(I2CDevice device, byte[] data) throws IOException {
+        int result = device.read(ID_REGISTER_ADDRESS, data, 0, 1);
+        if (result < 1) {
+            throw new IOException("Error reading device id. Expected 1 byte but got " + result);
+        }
+        // Extract the device id
+        return (data[0] & 0xFF);
+    }
+
+    /*
+     * Extracts and validates the calibration coefficients from the raw
+     * calibration data.
+     *
+     * @throws IOException The data is not valid calibration data.
+     */
+    static BMP180Compensator parseCalibrationData(byte[] calibData) throws IOException {
+        // Extract calibration data values (see device data sheet).
+        try (DataInputStream calibDataStream = new DataInputStream(new ByteArrayInputStream(calibData));) {
+            short ac1 = calibDataStream.readShort();
+            short ac2 = calibDataStream.readShort();
+            short ac3 = calibDataStream.readShort();
+            int ac4 = calibDataStream.readUnsignedShort();
+            int ac5 = calibDataStream.readUnsignedShort();
+            int ac6 = calibDataStream.readUnsignedShort();
+            short b1 = calibDataStream.readShort();
+            short b2 = calibDataStream.readShort();
+            short mb = calibDataStream.readShort();
+            short mc = calibDataStream.readShort();
+            short md = calibDataStream.readShort();
+
+            // No value should be 0 or 0xFFFF if communications working.
+            if (ac1 == 0 || ac2 == 0 || ac3 == 0 || ac4 == 0 || ac5 == 0 || ac6 == 0 || b1 == 0 || b2 == 0 || mb == 0
+                    || mc == 0 || md == 0 || ac1 == (short) 0xFFFF || ac2 == (short) 0xFFFF || ac3 == (short) 0xFFFF
+                    || ac4 == 0xFFFF || ac5 == 0xFFFF || ac6 == 0xFFFF || b1 == (short) 0xFFFF || b2 == (short) 0xFFFF
+                    || mb == (short) 0xFFFF || mc == (short) 0xFFFF || md == (short) 0xFFFF) {
+                throw new IOException("Error reading valid calibration data from device.");
+            }
+            return new BMP180Compensator(ac1, ac2, ac3, ac4, ac5, ac6, b1, b2, mb, mc, md);
+        }
+    }
+
+    /*
+     * Starts a temperature conversion.
+     */
+    static void startTemperatureConversion(I2CDevice device) throws IOException {
+        // Write the read temperature command to the command register
+        device.write(CONTROL_REGISTER_ADDRESS, READ_TEMPERATURE_COMMAND);
+    }
+
+    /*
+     * Reads the result of a temperature conversion.
+     */
+    static int readUncalibratedTemperature(I2CDevice device, byte[] data) throws IOException {
+        int result = device.read(DATA_REGISTER_ADDRESS, data, 0, 2);
+        if (result < 2) {
+            throw new IOException("Error reading temperature. Expected 2 bytes but got " + result);
+        }
+        // Extract the uncompensated temperature
+        return ((data[0] << 8) & 0xFF00) + (data[1] & 0xFF);
+    }
+
+    /*
+     * Starts a pressure conversion in the given mode.
+     */
+    static void startPressureConversion(I2CDevice device, BMP180SamplingMode mode) throws IOException {
+        // Write the read pressure command to the command register
+        device.write(CONTROL_REGISTER_ADDRESS, pressureCommand(mode));
+    }
+
+    /*
+     * Returns the command to start a pressure conversion in the given mode.
+     */
+    static byte pressureCommand(BMP180SamplingMode mode) {
+        // Combine the hardware over sampling rate request with the read
+        // pressure command.
+        return (byte) (READ_PRESSURE_COMMAND | ((mode.getOSS() << 6) & 0xFF));
+    }
+
+    /*
+     * Reads the result of a pressure conversion in the given mode.
+     */
+    static int readUncompensatedPressure(I2CDevice device, byte[] data, BMP180SamplingMode mode) throws IOException {
+        // Read the uncompensated pressure value
+        int result = device.read(DATA_REGISTER_ADDRESS, data, 0, 3);
+        if (result < 3) {
+            throw new IOException("Error reading pressure.  Expected 3 bytes but got " + result);
+        }
+
+        // Extract the uncompensated pressure as a three byte word
+        int word = ((data[0] << 16) & 0xFF0000) + ((data[1] << 8) & 0xFF00) + (data[2] & 0xFF);
+        return (word >> (8 - mode.getOSS()));
+    }
+
+    /*
+     * Waits for a conversion in the given mode to complete.
+     */
+    static void awaitConversion(BMP180SamplingMode mode) throws InterruptedIOException {
+        try {
+            Thread.sleep(mode.getDelayMillis(), mode.getDelayNanos());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for device conversion.");
+        }
+    }
+
+    /*
+     * Waits for a conversion in the given mode to complete by sleeping for the
+     * typical conversion time, then polling the start of conversion bit until
+     * it clears. Each poll is an I2C transaction, so polls are spaced out by
+     * parking, and stop at the maximum conversion time.
+     *
+     * @throws IOException The conversion did not complete in time.
+     */
+    static void pollConversion(I2CDevice device, BMP180SamplingMode mode) throws IOException {
+        long start = System.nanoTime();
+        long deadline = start + conversionNanos(mode);
+        awaitDeadline(start + mode.getTypicalNanos());
+        while (!isConversionComplete(device)) {
+            long remaining = checkConversionDeadline(deadline);
+            awaitDeadline(System.nanoTime() + Math.min(POLL_INTERVAL_NANOS, remaining));
+        }
+    }
+
+    /*
+     * Answers whether the current conversion has completed.
+     */
+    static boolean isConversionComplete(I2CDevice device) throws IOException {
+        return (device.read(CONTROL_REGISTER_ADDRESS) & SCO_BIT) == 0;
+    }
+
+    /*
+     * Returns the time remaining until the given System.nanoTime() deadline
+     * for a conversion to complete.
+     *
+     * @throws IOException The deadline has passed.
+     */
+    static long checkConversionDeadline(long deadline) throws IOException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new IOException("Device conversion did not complete in the maximum conversion time.");
+        }
+        return remaining;
+    }
+
+    /*
+     * Waits until the given System.nanoTime() deadline has passed.
+     */
+    static void awaitDeadline(long deadline) throws InterruptedIOException {
+        long delay;
+        while ((delay = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for device conversion.");
+            }
+        }
+    }
+
+    /* Returns the total conversion delay for the given mode in ns. */
+    static long conversionNanos(BMP180SamplingMode mode) {
+        return TimeUnit.MILLISECONDS.toNanos(mode.getDelayMillis()) + mode.getDelayNanos();
+    }
+}
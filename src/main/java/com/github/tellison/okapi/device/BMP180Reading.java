@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/**
+ * A single timestamped temperature and pressure reading.
+ *
+ * Instances are mutable holders, owned by the caller, that are filled in by
+ * the APIs that produce readings. A holder can be reused for many readings to
+ * avoid creating garbage on each sample.
+ * <p>
+ * The values are held exactly as the device compensation calculates them, a
+ * temperature in steps of 0.1 deg.C and a pressure in Pa. They are available
+ * in these fixed-point units, or packed together into a single
+ * <code>long</code>, as well as converted to deg.C and hPa.
+ */
+public class BMP180Reading {
+
+    // Wall clock time of the reading, in milliseconds since the epoch.
+    private long timestamp;
+
+    // Temperature in steps of 0.1 deg.C, and pressure in Pa.
+    private int deciCelsius;
+    private int pascals;
+
+    /**
+     * Constructs a new, empty, reading holder.
+     */
+    public BMP180Reading() {
+        super();
+    }
+
+    /**
+     * Returns the time the reading was taken.
+     *
+     * @return The time of the reading, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the temperature value of this reading.
+     *
+     * @return The temperature in deg.C.
+     */
+    public float getTemperature() {
+        return (float) deciCelsius / 10;
+    }
+
+    /**
+     * Returns the pressure value of this reading.
+     *
+     * @return The pressure in hPa.
+     */
+    public float getPressure() {
+        return (float) pascals / 100;
+    }
+
+    /**
+     * Returns the temperature value of this reading in fixed-point.
+     *
+     * @return The temperature in steps of 0.1 deg.C.
+     */
+    public int getDeciCelsius() {
+        return deciCelsius;
+    }
+
+    /**
+     * Returns the pressure value of this reading in fixed-point.
+     *
+     * @return The pressure in Pa.
+     */
+    public int getPascals() {
+        return pascals;
+    }
+
+    /**
+     * Returns the temperature and pressure values of this reading packed into
+     * a single value.
+     *
+     * @return The packed values.
+     *
+     * @see #pack(int, int)
+     */
+    public long getPacked() {
+        return pack(deciCelsius, pascals);
+    }
+
+    /**
+     * Packs a temperature and pressure into a single value, with the
+     * temperature in the high 32 bits and the pressure in the low 32 bits.
+     *
+     * @param deciCelsius
+     *            the temperature in steps of 0.1 deg.C.
+     * @param pascals
+     *            the pressure in Pa.
+     * @return The packed values.
+     */
+    public static long pack(int deciCelsius, int pascals) {
+        return ((long) deciCelsius << 32) | (pascals & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the temperature from packed values.
+     *
+     * @param packed
+     *            the packed temperature and pressure.
+     * @return The temperature in steps of 0.1 deg.C.
+     *
+     * @see #pack(int, int)
+     */
+    public static int unpackDeciCelsius(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * Returns the pressure from packed values.
+     *
+     * @param packed
+     *            the packed temperature and pressure.
+     * @return The pressure in Pa.
+     *
+     * @see #pack(int, int)
+     */
+    public static int unpackPascals(long packed) {
+        return (int) packed;
+    }
+
+    /*
+     * Sets all the values of this reading.
+     */
+    void set(long timestamp, int deciCelsius, int pascals) {
+        this.timestamp = timestamp;
+        this.deciCelsius = deciCelsius;
+        this.pascals = pascals;
+    }
+
+    /**
+     * Returns a readable representation of this reading.
+     *
+     * @return A debug string showing the values of this reading.
+     */
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(timestamp=" + timestamp + ", temperature=" + getTemperature()
+                + ", pressure=" + getPressure() + ")";
+    }
+}
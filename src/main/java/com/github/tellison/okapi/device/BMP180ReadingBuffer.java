@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size ring buffer of the most recent readings from a device.
+ *
+ * The buffer has a single writer, typically a {@link BMP180Sampler}, and any
+ * number of concurrent readers. All storage is preallocated as primitive
+ * values, and neither the writer nor the readers take a lock or allocate
+ * memory. A reader that is overtaken by the writer while copying values simply
+ * retries the copy.
+ */
+public class BMP180ReadingBuffer {
+
+    // Largest capacity supported by the buffer.
+    private static final int MAX_CAPACITY = (1 << 29) - 1;
+
+    // Each slot holds two longs, the timestamp and the packed values.
+    private final AtomicLongArray slots;
+
+    // Number of slots in the ring (a power of two) and mask for indexing.
+    private final int size;
+    private final int mask;
+
+    // Number of readings that can be read back from the buffer.
+    private final int capacity;
+
+    // Count of readings published so far, only updated by the writer.
+    private volatile long sequence;
+
+    /**
+     * Constructs a new empty buffer that retains the given number of readings.
+     *
+     * @param capacity
+     *            the number of most recent readings retained by the buffer.
+     */
+    public BMP180ReadingBuffer(int capacity) {
+        super();
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid buffer capacity " + capacity);
+        }
+        // Always keep one spare slot for the writer to fill, so a reader can
+        // see the full capacity while the next reading is being written.
+        this.size = Integer.highestOneBit(capacity) << 1;
+        this.mask = size - 1;
+        this.capacity = capacity;
+        this.slots = new AtomicLongArray(size * 2);
+    }
+
+    /**
+     * Returns the number of most recent readings retained by this buffer.
+     *
+     * @return The buffer capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total number of readings written to this buffer since it was
+     * created. This is also a convenient way to poll for new readings.
+     *
+     * @return The number of readings written.
+     */
+    public long getCount() {
+        return sequence;
+    }
+
+    /*
+     * Adds a new reading to the buffer, overwriting the oldest reading. Must
+     * only be called by the single writer thread.
+     */
+    void publish(long timestamp, long packed) {
+        long next = sequence;
+        int index = slotIndex(next);
+        slots.lazySet(index, timestamp);
+        slots.lazySet(index + 1, packed);
+        sequence = next + 1;
+    }
+
+    /**
+     * Copies the most recent reading into the given holder.
+     *
+     * @param reading
+     *            the holder to receive the latest values.
+     * @return <code>true</code> if a reading was copied, or
+     *         <code>false</code> if the buffer is still empty.
+     */
+    public boolean readLatest(BMP180Reading reading) {
+        for (;;) {
+            long count = sequence;
+            if (count == 0) {
+                return false;
+            }
+            long latest = count - 1;
+            int index = slotIndex(latest);
+            long timestamp = slots.get(index);
+            long values = slots.get(index + 1);
+            if (isIntact(latest)) {
+                reading.set(timestamp, BMP180Reading.unpackDeciCelsius(values), BMP180Reading.unpackPascals(values));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Copies up to the last N readings into the given arrays, oldest first.
+     *
+     * The number of readings copied is the smallest of the array lengths, the
+     * buffer capacity, and the number of readings written so far.
+     *
+     * @param timestamps
+     *            receives the reading times, in milliseconds since the epoch.
+     * @param temperatures
+     *            receives the temperatures, in deg.C.
+     * @param pressures
+     *            receives the pressures, in hPa.
+     * @return The number of readings copied into each array.
+     */
+    public int readRecent(long[] timestamps, float[] temperatures, float[] pressures) {
+        int wanted = Math.min(capacity, Math.min(timestamps.length, Math.min(temperatures.length, pressures.length)));
+        for (;;) {
+            long count = sequence;
+            int copied = (int) Math.min(wanted, count);
+            long first = count - copied;
+            for (int i = 0; i < copied; i++) {
+                int index = slotIndex(first + i);
+                long values = slots.get(index + 1);
+                timestamps[i] = slots.get(index);
+                temperatures[i] = (float) BMP180Reading.unpackDeciCelsius(values) / 10;
+                pressures[i] = (float) BMP180Reading.unpackPascals(values) / 100;
+            }
+            if (copied == 0 || isIntact(first)) {
+                return copied;
+            }
+        }
+    }
+
+    /**
+     * Copies up to the last N readings into the given arrays, oldest first,
+     * with the values in fixed-point.
+     *
+     * The number of readings copied is the smallest of the array lengths, the
+     * buffer capacity, and the number of readings written so far.
+     *
+     * @param timestamps
+     *            receives the reading times, in milliseconds since the epoch.
+     * @param deciCelsius
+     *            receives the temperatures, in steps of 0.1 deg.C.
+     * @param pascals
+     *            receives the pressures, in Pa.
+     * @return The number of readings copied into each array.
+     */
+    public int readRecent(long[] timestamps, int[] deciCelsius, int[] pascals) {
+        int wanted = Math.min(capacity, Math.min(timestamps.length, Math.min(deciCelsius.length, pascals.length)));
+        for (;;) {
+            long count = sequence;
+            int copied = (int) Math.min(wanted, count);
+            long first = count - copied;
+            for (int i = 0; i < copied; i++) {
+                int index = slotIndex(first + i);
+                long values = slots.get(index + 1);
+                timestamps[i] = slots.get(index);
+                deciCelsius[i] = BMP180Reading.unpackDeciCelsius(values);
+                pascals[i] = BMP180Reading.unpackPascals(values);
+            }
+            if (copied == 0 || isIntact(first)) {
+                return copied;
+            }
+        }
+    }
+
+    /*
+     * Answers whether the reading at the given sequence number was not
+     * overwritten by the writer while we were reading it. The writer may be
+     * part way through writing the reading at the current sequence number.
+     */
+    private boolean isIntact(long readingNumber) {
+        return sequence - readingNumber < size;
+    }
+
+    /* Returns the index of the first long in the slot for the given reading. */
+    private int slotIndex(long readingNumber) {
+        return ((int) readingNumber & mask) << 1;
+    }
+}
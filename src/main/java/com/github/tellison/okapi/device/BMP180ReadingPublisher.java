@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the readings of a {@link BMP180Sampler} to any number of
+ * subscribers.
+ *
+ * The sampler's single sampling loop fans out to every subscriber, so adding
+ * subscribers adds no bus traffic. The subscriber and subscription interfaces
+ * follow the contract of <code>java.util.concurrent.Flow</code>: each
+ * subscriber requests readings, and is only sent as many readings as it has
+ * requested. Signals to each subscriber are delivered in order, never on the
+ * sampling thread. By default each subscriber is signalled on a thread of its
+ * own, which ends with the subscription, so a subscriber that blocks only
+ * delays itself. A sampler can instead be given an executor for signalling
+ * subscribers, in which case a blocked subscriber occupies one of the
+ * executor's threads.
+ * <p>
+ * Readings are conflated rather than queued. When a subscriber has no
+ * outstanding demand, or is still handling an earlier reading, a new reading
+ * replaces any reading not yet sent to it, so a slow subscriber only ever
+ * sees the latest reading and never stalls the sampler or other subscribers.
+ * <p>
+ * Readings that fail are not published, and are reported by the sampler's
+ * failure count instead. When the sampler is closed every subscriber is
+ * completed.
+ *
+ * <pre>
+ * sampler.getPublisher().subscribe(new BMP180ReadingPublisher.Subscriber() {
+ *     public void onSubscribe(BMP180ReadingPublisher.Subscription subscription) {
+ *         subscription.request(Long.MAX_VALUE);
+ *     }
+ *     public void onNext(BMP180Reading reading) {
+ *         float pressure = reading.getPressure();
+ *     }
+ *     ...
+ * });
+ * </pre>
+ */
+public class BMP180ReadingPublisher {
+
+    /**
+     * A receiver of readings, as <code>java.util.concurrent.Flow.Subscriber</code>.
+     */
+    public interface Subscriber {
+
+        /**
+         * Called before any other signal, with the subscription used to
+         * request readings.
+         *
+         * @param subscription
+         *            the new subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with the next reading, once for each reading requested.
+         *
+         * The reading is shared with other subscribers, and cannot be
+         * modified.
+         *
+         * @param reading
+         *            the latest reading.
+         */
+        void onNext(BMP180Reading reading);
+
+        /**
+         * Called when the subscription fails, after which there are no more
+         * signals.
+         *
+         * @param throwable
+         *            the reason for the failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when no more readings will be published, after which there
+         * are no more signals.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between the publisher and a subscriber, as
+     * <code>java.util.concurrent.Flow.Subscription</code>.
+     */
+    public interface Subscription {
+
+        /**
+         * Adds the given number of readings to the outstanding demand of the
+         * subscriber. A demand of <code>Long.MAX_VALUE</code> is unbounded.
+         *
+         * @param n
+         *            the number of additional readings, which must be
+         *            positive.
+         */
+        void request(long n);
+
+        /**
+         * Stops sending readings to the subscriber, though signals already
+         * under way may still be delivered.
+         */
+        void cancel();
+    }
+
+    // Signals subscribers, or null for a thread per subscriber.
+    private final Executor executor;
+
+    private final CopyOnWriteArrayList<ReadingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean closed;
+
+    /*
+     * Constructs a publisher that signals subscribers on the given executor,
+     * or each on its own thread if null.
+     */
+    BMP180ReadingPublisher(Executor executor) {
+        super();
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a subscriber to this publisher. The subscriber is first sent
+     * {@link Subscriber#onSubscribe(Subscription)}, and then readings as it
+     * requests them. A subscriber that subscribes after the sampler is closed
+     * is completed immediately.
+     *
+     * @param subscriber
+     *            the subscriber to receive readings.
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        ReadingSubscription subscription = new ReadingSubscription(subscriber);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.complete();
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     *
+     * @return The number of subscribers that have not cancelled or completed.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /*
+     * Offers a reading to every subscriber, conflating it with any reading
+     * not yet sent. Called by the sampling thread, and never blocks.
+     */
+    void publish(BMP180Reading reading) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        // Readings cannot be modified by subscribers, so share one copy.
+        BMP180Reading copy = new BMP180Reading();
+        copy.set(reading.getTimestamp(), reading.getDeciCelsius(), reading.getPascals());
+        for (ReadingSubscription subscription : subscriptions) {
+            subscription.latest.set(copy);
+            subscription.signal();
+        }
+    }
+
+    /*
+     * Completes every subscriber, once any reading it has requested is sent.
+     */
+    void close() {
+        closed = true;
+        for (ReadingSubscription subscription : subscriptions) {
+            subscription.complete();
+            subscription.signal();
+        }
+    }
+
+    /*
+     * Fails every subscriber with the given reason, as no more readings will
+     * be published.
+     */
+    void fail(Throwable failure) {
+        closed = true;
+        for (ReadingSubscription subscription : subscriptions) {
+            subscription.fail(failure);
+            subscription.signal();
+        }
+    }
+
+    /*
+     * The state of a single subscriber. Signals are sent by a drain task run
+     * on the executor, and the work counter ensures only one drain task runs
+     * at a time, so the subscriber is signalled serially.
+     */
+    private final class ReadingSubscription implements Subscription, Runnable {
+
+        private final Subscriber subscriber;
+
+        // The latest reading not yet sent to the subscriber.
+        final AtomicReference<BMP180Reading> latest = new AtomicReference<>();
+
+        // Outstanding requested readings.
+        private final AtomicLong demand = new AtomicLong();
+
+        // Signals not yet handled by a drain task.
+        private final AtomicInteger work = new AtomicInteger();
+
+        private volatile boolean completed;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        // Only used by the drain task.
+        private boolean subscribed;
+
+        // The subscriber's own thread when the publisher has no executor,
+        // created on first use and shut down when the subscription ends.
+        // Guarded by this.
+        private ExecutorService thread;
+
+        ReadingSubscription(Subscriber subscriber) {
+            super();
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                long current;
+                do {
+                    current = demand.get();
+                } while (!demand.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            latest.set(null);
+            synchronized (this) {
+                // Lets a drain task already running finish its signal.
+                if (thread != null) {
+                    thread.shutdown();
+                }
+            }
+        }
+
+        /* Marks that no more readings will be published. */
+        void complete() {
+            completed = true;
+        }
+
+        /* Marks that publishing failed, unless the subscriber already has. */
+        void fail(Throwable failure) {
+            if (error == null) {
+                error = failure;
+            }
+            completed = true;
+        }
+
+        /* Schedules a drain task unless one is already running. */
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                try {
+                    executor().execute(this);
+                } catch (RejectedExecutionException ex) {
+                    // Nowhere left to deliver signals.
+                    cancel();
+                }
+            }
+        }
+
+        /*
+         * Returns the executor for this subscriber's drain task.
+         */
+        private Executor executor() {
+            if (executor != null) {
+                return executor;
+            }
+            synchronized (this) {
+                if (thread == null) {
+                    thread = Executors.newSingleThreadExecutor(task -> {
+                        Thread subscriberThread = new Thread(task, "BMP180 subscriber");
+                        subscriberThread.setDaemon(true);
+                        return subscriberThread;
+                    });
+                    if (cancelled) {
+                        thread.shutdown();
+                    }
+                }
+                return thread;
+            }
+        }
+
+        /*
+         * Sends the subscriber every signal that is due.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                try {
+                    drain();
+                } catch (RuntimeException | Error ex) {
+                    // A failing subscriber is cancelled, as a Flow publisher.
+                    if (!cancelled) {
+                        cancel();
+                        subscriber.onError(ex);
+                    }
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /* Sends signals until no more are due. */
+        private void drain() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            while (!cancelled) {
+                Throwable failure = error;
+                if (failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                long requested = demand.get();
+                if (requested > 0) {
+                    BMP180Reading reading = latest.getAndSet(null);
+                    if (reading != null) {
+                        if (requested != Long.MAX_VALUE) {
+                            demand.decrementAndGet();
+                        }
+                        subscriber.onNext(reading);
+                        continue;
+                    }
+                }
+                if (completed) {
+                    cancel();
+                    subscriber.onComplete();
+                }
+                return;
+            }
+        }
+    }
+}
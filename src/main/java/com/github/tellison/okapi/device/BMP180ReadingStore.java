@@ -0,0 +1,461 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.Arrays;
+
+/**
+ * A compressed in-memory store of timestamped readings, for keeping a long
+ * history of readings in a small heap.
+ *
+ * Readings are kept in time order, and stored in fixed-size blocks of
+ * encoded bits. Within a block each timestamp is stored as the change in the
+ * interval since the previous reading (delta-of-delta), and each temperature
+ * and pressure as the change since the previous reading, using a short
+ * variable length code for each. Readings taken at a steady rate with slowly
+ * changing values take a few bits each, rather than the 16 bytes of a plain
+ * array. When the store is full the oldest block of readings is discarded.
+ * <p>
+ * Queries for a time range find the blocks that overlap the range from the
+ * block index, and only decode those blocks. The values are the fixed-point
+ * values of {@link BMP180Reading}, and are stored exactly.
+ * <p>
+ * The store is thread safe, so it can be filled by one thread, for example a
+ * subscriber to a {@link BMP180Sampler}, while other threads query it.
+ *
+ * <pre>
+ * BMP180ReadingStore store = new BMP180ReadingStore(1024, 1024);
+ * ...
+ * store.append(reading);
+ * ...
+ * int count = store.query(from, to, timestamps, deciCelsius, pascals);
+ * </pre>
+ */
+public class BMP180ReadingStore {
+
+    // Estimated fixed heap cost of a block, beyond its encoded bits.
+    private static final int BLOCK_OVERHEAD_BYTES = 96;
+
+    // Most bits needed to encode one reading after the first: a 4 bit code
+    // with a 64 bit interval change, and 4 bit codes with 32 bit temperature
+    // and pressure changes.
+    private static final int MAX_BITS_PER_READING = 4 + 64 + 2 * (4 + 32);
+
+    private final int blockSize;
+
+    // The blocks, oldest first, in a ring of maxBlocks entries.
+    private final Block[] blocks;
+    private int head;
+    private int blockCount;
+
+    // Number of readings in the store.
+    private long size;
+
+    // Total readings discarded when the store was full.
+    private long discarded;
+
+    /**
+     * Constructs a new empty store.
+     *
+     * @param blockSize
+     *            the number of readings in each block. Smaller blocks cost
+     *            more memory, but less decoding for queries that start part
+     *            way through a block.
+     * @param maxBlocks
+     *            the number of blocks retained, after which the oldest block
+     *            is discarded.
+     */
+    public BMP180ReadingStore(int blockSize, int maxBlocks) {
+        super();
+        if (blockSize < 1 || maxBlocks < 1) {
+            throw new IllegalArgumentException("Block size and maximum blocks must be positive.");
+        }
+        this.blockSize = blockSize;
+        this.blocks = new Block[maxBlocks];
+    }
+
+    /**
+     * Returns the number of readings in each block.
+     *
+     * @return The block size.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the number of readings in the store.
+     *
+     * @return The number of readings that can be queried.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of readings discarded because the store was full.
+     *
+     * @return The count of discarded readings.
+     */
+    public synchronized long getDiscardedCount() {
+        return discarded;
+    }
+
+    /**
+     * Returns an estimate of the heap memory used by the readings in this
+     * store.
+     *
+     * @return The estimated number of bytes used.
+     */
+    public synchronized long getMemoryBytes() {
+        long bytes = 0;
+        for (int i = 0; i < blockCount; i++) {
+            bytes += BLOCK_OVERHEAD_BYTES + (long) block(i).words.length * Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Appends a reading to the store.
+     *
+     * A reading older than the latest reading in the store, for example
+     * after the system clock is stepped back, is stored at the time of the
+     * latest reading, so the store stays in time order.
+     *
+     * @param reading
+     *            the reading to append.
+     */
+    public void append(BMP180Reading reading) {
+        append(reading.getTimestamp(), reading.getPacked());
+    }
+
+    /**
+     * Appends a reading to the store, with the values packed as by
+     * {@link BMP180Reading#pack(int, int)}.
+     *
+     * @param timestamp
+     *            the time of the reading, in milliseconds since the epoch.
+     * @param packed
+     *            the packed temperature and pressure.
+     * @see #append(BMP180Reading)
+     */
+    public synchronized void append(long timestamp, long packed) {
+        Block last = (blockCount == 0) ? null : block(blockCount - 1);
+        if (last != null && timestamp < last.lastTimestamp) {
+            // The clock has been stepped back.
+            timestamp = last.lastTimestamp;
+        }
+        if (last == null || last.count == blockSize) {
+            if (last != null) {
+                last.seal();
+            }
+            if (blockCount == blocks.length) {
+                discarded += blocks[head].count;
+                size -= blocks[head].count;
+                blocks[head] = null;
+                head = (head + 1) % blocks.length;
+                blockCount--;
+            }
+            blocks[(head + blockCount) % blocks.length] = new Block(blockSize, timestamp,
+                    BMP180Reading.unpackDeciCelsius(packed), BMP180Reading.unpackPascals(packed));
+            blockCount++;
+        } else {
+            last.append(timestamp, BMP180Reading.unpackDeciCelsius(packed), BMP180Reading.unpackPascals(packed));
+        }
+        size++;
+    }
+
+    /**
+     * Copies the readings taken within the given time range into the given
+     * arrays, oldest first.
+     *
+     * The number of readings copied is limited by the smallest of the array
+     * lengths.
+     *
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param to
+     *            the end of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param timestamps
+     *            receives the reading times, in milliseconds since the epoch.
+     * @param deciCelsius
+     *            receives the temperatures, in steps of 0.1 deg.C.
+     * @param pascals
+     *            receives the pressures, in Pa.
+     * @return The number of readings copied into each array.
+     */
+    public synchronized int query(long from, long to, long[] timestamps, int[] deciCelsius, int[] pascals) {
+        int limit = Math.min(timestamps.length, Math.min(deciCelsius.length, pascals.length));
+        int copied = 0;
+        for (int i = firstBlockEndingAtOrAfter(from); i < blockCount && copied < limit; i++) {
+            Block block = block(i);
+            if (block.firstTimestamp > to) {
+                break;
+            }
+            copied = block.decode(from, to, timestamps, deciCelsius, pascals, copied, limit);
+        }
+        return copied;
+    }
+
+    /**
+     * Returns the number of readings taken within the given time range.
+     *
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param to
+     *            the end of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @return The number of readings in the range.
+     */
+    public synchronized long count(long from, long to) {
+        long count = 0;
+        for (int i = firstBlockEndingAtOrAfter(from); i < blockCount; i++) {
+            Block block = block(i);
+            if (block.firstTimestamp > to) {
+                break;
+            }
+            if (block.firstTimestamp >= from && block.lastTimestamp <= to) {
+                // Wholly within the range, so no need to decode.
+                count += block.count;
+            } else {
+                count += block.decode(from, to, null, null, null, 0, Integer.MAX_VALUE);
+            }
+        }
+        return count;
+    }
+
+    /* Returns the block at the given position, oldest first. */
+    private Block block(int index) {
+        return blocks[(head + index) % blocks.length];
+    }
+
+    /*
+     * Returns the position of the first block with readings at or after the
+     * given time.
+     */
+    private int firstBlockEndingAtOrAfter(long time) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (block(mid).lastTimestamp < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /*
+     * A block of encoded readings. The first reading is held in full in the
+     * block header, and each later reading is encoded relative to the one
+     * before it.
+     *
+     * Each change is written as a prefix code selecting a field width,
+     * followed by a field of that width. Code k, for k below MAX_CODE, is k
+     * one bits then a zero bit, and MAX_CODE is MAX_CODE one bits.
+     */
+    private static final class Block {
+
+        private static final int MAX_CODE = 4;
+
+        // Field widths for each code, for changes in timestamp interval, and
+        // zigzag encoded changes in temperature and pressure.
+        private static final int[] INTERVAL_WIDTHS = { 0, 7, 9, 12, 64 };
+        private static final int[] VALUE_WIDTHS = { 0, 4, 8, 16, 32 };
+
+        final long firstTimestamp;
+        private final int firstDeciCelsius;
+        private final int firstPascals;
+
+        long lastTimestamp;
+        int count;
+
+        // The encoded bits, most significant bit first, and the number used.
+        long[] words;
+        private long bits;
+
+        // Encoder state, the previous interval and values.
+        private long lastInterval;
+        private int lastDeciCelsius;
+        private int lastPascals;
+
+        Block(int blockSize, long timestamp, int deciCelsius, int pascals) {
+            super();
+            words = new long[(int) (((long) MAX_BITS_PER_READING * (blockSize - 1) + 63) / 64)];
+            firstTimestamp = lastTimestamp = timestamp;
+            firstDeciCelsius = lastDeciCelsius = deciCelsius;
+            firstPascals = lastPascals = pascals;
+            count = 1;
+        }
+
+        void append(long timestamp, int deciCelsius, int pascals) {
+            long interval = timestamp - lastTimestamp;
+            long change = interval - lastInterval;
+            int code = 0;
+            while (code < MAX_CODE && !fitsSigned(change, INTERVAL_WIDTHS[code])) {
+                code++;
+            }
+            writeCode(code);
+            write(change, INTERVAL_WIDTHS[code]);
+            writeValueChange(deciCelsius - lastDeciCelsius);
+            writeValueChange(pascals - lastPascals);
+
+            lastInterval = interval;
+            lastTimestamp = timestamp;
+            lastDeciCelsius = deciCelsius;
+            lastPascals = pascals;
+            count++;
+        }
+
+        /* Trims the encoded bits once no more readings will be added. */
+        void seal() {
+            words = Arrays.copyOf(words, (int) ((bits + 63) / 64));
+        }
+
+        /*
+         * Decodes the readings within the given time range into the arrays
+         * from the given offset, up to the limit, and returns the new offset.
+         * Null arrays only count the readings.
+         */
+        int decode(long from, long to, long[] timestamps, int[] deciCelsius, int[] pascals, int offset,
+                int limit) {
+            long position = 0;
+            long timestamp = firstTimestamp;
+            long interval = 0;
+            int temperature = firstDeciCelsius;
+            int pressure = firstPascals;
+            for (int i = 0; i < count && offset < limit; i++) {
+                if (i > 0) {
+                    long window = peek(position);
+                    int code = code(window);
+                    int width = INTERVAL_WIDTHS[code];
+                    if (width == 64) {
+                        interval += peek(position + MAX_CODE);
+                    } else if (width > 0) {
+                        interval += (window << (code + 1)) >> (64 - width);
+                    }
+                    position += codeLength(code) + width;
+                    timestamp += interval;
+
+                    window = peek(position);
+                    code = code(window);
+                    width = VALUE_WIDTHS[code];
+                    temperature += unzigzag(field(window, code, width));
+                    position += codeLength(code) + width;
+
+                    window = peek(position);
+                    code = code(window);
+                    width = VALUE_WIDTHS[code];
+                    pressure += unzigzag(field(window, code, width));
+                    position += codeLength(code) + width;
+                }
+                if (timestamp > to) {
+                    break;
+                }
+                if (timestamp >= from) {
+                    if (timestamps != null) {
+                        timestamps[offset] = timestamp;
+                        deciCelsius[offset] = temperature;
+                        pascals[offset] = pressure;
+                    }
+                    offset++;
+                }
+            }
+            return offset;
+        }
+
+        /* Writes a change in value, zigzag encoded so small changes are small. */
+        private void writeValueChange(int change) {
+            long zigzag = ((change << 1) ^ (change >> 31)) & 0xFFFFFFFFL;
+            int code = 0;
+            while (code < MAX_CODE && (zigzag >>> VALUE_WIDTHS[code]) != 0) {
+                code++;
+            }
+            writeCode(code);
+            write(zigzag, VALUE_WIDTHS[code]);
+        }
+
+        private void writeCode(int code) {
+            // Code ones, then a zero unless it is the longest code.
+            write(((1L << code) - 1) << ((code < MAX_CODE) ? 1 : 0), codeLength(code));
+        }
+
+        /* Writes the low order bits of the value. */
+        private void write(long value, int width) {
+            if (width == 0) {
+                return;
+            }
+            int index = (int) (bits >>> 6);
+            int used = (int) (bits & 63);
+            long aligned = value << (64 - width);
+            words[index] |= aligned >>> used;
+            if (used + width > 64) {
+                words[index + 1] = aligned << (64 - used);
+            }
+            bits += width;
+        }
+
+        /*
+         * Returns the 64 bits at the given position, padded with zeros past
+         * the end of the encoded bits.
+         */
+        private long peek(long position) {
+            int index = (int) (position >>> 6);
+            int used = (int) (position & 63);
+            long value = words[index] << used;
+            if (used != 0 && index + 1 < words.length) {
+                value |= words[index + 1] >>> (64 - used);
+            }
+            return value;
+        }
+
+        /* Returns the code at the start of the given bits. */
+        private static int code(long window) {
+            return Math.min(Long.numberOfLeadingZeros(~window), MAX_CODE);
+        }
+
+        /*
+         * Returns the unsigned field after the given code at the start of the
+         * given bits, for fields of at most 32 bits.
+         */
+        private static long field(long window, int code, int width) {
+            return (width == 0) ? 0 : (window << codeLength(code)) >>> (64 - width);
+        }
+
+        private static int codeLength(int code) {
+            return (code < MAX_CODE) ? code + 1 : MAX_CODE;
+        }
+
+        private static boolean fitsSigned(long value, int width) {
+            return (width == 64) || (signExtend(value, width) == value);
+        }
+
+        private static long signExtend(long value, int width) {
+            return (width == 0) ? 0 : (value << (64 - width)) >> (64 - width);
+        }
+
+        private static int unzigzag(long zigzag) {
+            int value = (int) zigzag;
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
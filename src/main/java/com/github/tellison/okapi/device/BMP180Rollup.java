@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.Arrays;
+
+/**
+ * Incrementally maintained summaries of readings at several time resolutions,
+ * for example per minute and per hour.
+ *
+ * Each resolution keeps a fixed number of the most recent windows, aligned to
+ * multiples of the resolution since the epoch. Each window holds the count,
+ * minimum, maximum and sum of the temperatures and pressures of the readings
+ * within it, in preallocated primitive arrays. Adding a reading updates one
+ * window at each resolution in constant time, and queries are answered from
+ * the windows without needing the readings themselves.
+ * <p>
+ * Readings may arrive slightly out of order, and are added to their window
+ * for as long as it is retained. The rollup is thread safe, so it can be fed
+ * by one thread, for example a subscriber to a {@link BMP180Sampler}, while
+ * other threads query it.
+ *
+ * <pre>
+ * BMP180Rollup rollup = new BMP180Rollup(60, TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1));
+ * ...
+ * rollup.add(reading);
+ * ...
+ * BMP180Aggregate lastHour = new BMP180Aggregate();
+ * if (rollup.aggregate(TimeUnit.MINUTES.toMillis(1), now - TimeUnit.HOURS.toMillis(1), now, lastHour)) {
+ *     double meanPressure = lastHour.getMeanPascals();
+ * }
+ * </pre>
+ */
+public class BMP180Rollup {
+
+    private final Level[] levels;
+
+    /**
+     * Constructs a new rollup at the given resolutions.
+     *
+     * @param windows
+     *            the number of most recent windows retained at each
+     *            resolution.
+     * @param resolutions
+     *            the length of the windows at each resolution, in
+     *            milliseconds.
+     */
+    public BMP180Rollup(int windows, long... resolutions) {
+        super();
+        if (windows < 1 || resolutions.length == 0) {
+            throw new IllegalArgumentException("At least one window and resolution are required.");
+        }
+        levels = new Level[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            if (resolutions[i] <= 0) {
+                throw new IllegalArgumentException("Invalid resolution " + resolutions[i]);
+            }
+            levels[i] = new Level(resolutions[i], windows);
+        }
+    }
+
+    /**
+     * Returns the resolutions of this rollup.
+     *
+     * @return The length of the windows at each resolution, in milliseconds.
+     */
+    public long[] getResolutions() {
+        long[] resolutions = new long[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            resolutions[i] = levels[i].resolution;
+        }
+        return resolutions;
+    }
+
+    /**
+     * Adds a reading to the windows that contain it.
+     *
+     * @param reading
+     *            the reading to add.
+     */
+    public void add(BMP180Reading reading) {
+        add(reading.getTimestamp(), reading.getPacked());
+    }
+
+    /**
+     * Adds a reading, with the values packed as by
+     * {@link BMP180Reading#pack(int, int)}, to the windows that contain it.
+     * Readings older than the oldest window retained at a resolution are
+     * ignored at that resolution.
+     *
+     * @param timestamp
+     *            the time of the reading, in milliseconds since the epoch.
+     * @param packed
+     *            the packed temperature and pressure.
+     */
+    public synchronized void add(long timestamp, long packed) {
+        int deciCelsius = BMP180Reading.unpackDeciCelsius(packed);
+        int pascals = BMP180Reading.unpackPascals(packed);
+        for (Level level : levels) {
+            level.add(timestamp, deciCelsius, pascals);
+        }
+    }
+
+    /**
+     * Copies the windows at the given resolution that overlap the given time
+     * range and contain readings into the given holders, oldest first.
+     *
+     * The number of windows copied is limited by the length of the array.
+     * Holders are created for any null elements of the array.
+     *
+     * @param resolution
+     *            the resolution to query, in milliseconds.
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param to
+     *            the end of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param results
+     *            receives the windows.
+     * @return The number of windows copied.
+     * @throws IllegalArgumentException
+     *             if the rollup does not have the given resolution.
+     */
+    public synchronized int query(long resolution, long from, long to, BMP180Aggregate[] results) {
+        Level level = level(resolution);
+        int copied = 0;
+        long last = level.lastWindow(to);
+        for (long window = level.firstWindow(from); window <= last && copied < results.length; window++) {
+            int slot = level.slot(window);
+            if (level.windows[slot] == window) {
+                if (results[copied] == null) {
+                    results[copied] = new BMP180Aggregate();
+                }
+                level.copy(slot, results[copied], false);
+                copied++;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Combines the windows at the given resolution that overlap the given
+     * time range into a single aggregate.
+     *
+     * @param resolution
+     *            the resolution to query, in milliseconds.
+     * @param from
+     *            the start of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param to
+     *            the end of the range, inclusive, in milliseconds since the
+     *            epoch.
+     * @param result
+     *            receives the combined aggregate.
+     * @return <code>true</code> if any window in the range has readings, or
+     *         <code>false</code> if the result is unchanged.
+     * @throws IllegalArgumentException
+     *             if the rollup does not have the given resolution.
+     */
+    public synchronized boolean aggregate(long resolution, long from, long to, BMP180Aggregate result) {
+        Level level = level(resolution);
+        boolean found = false;
+        long last = level.lastWindow(to);
+        for (long window = level.firstWindow(from); window <= last; window++) {
+            int slot = level.slot(window);
+            if (level.windows[slot] == window) {
+                level.copy(slot, result, found);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /* Returns the level with the given resolution. */
+    private Level level(long resolution) {
+        for (Level level : levels) {
+            if (level.resolution == resolution) {
+                return level;
+            }
+        }
+        throw new IllegalArgumentException("No rollup at resolution " + resolution);
+    }
+
+    /*
+     * The windows at one resolution, in a ring indexed by window number, that
+     * is the window start time divided by the resolution.
+     */
+    private static final class Level {
+
+        final long resolution;
+
+        // The window number held in each slot, or Long.MIN_VALUE if none.
+        final long[] windows;
+
+        // Statistics for the window in each slot.
+        private final int[] counts;
+        private final int[] minDeciCelsius;
+        private final int[] maxDeciCelsius;
+        private final long[] sumDeciCelsius;
+        private final int[] minPascals;
+        private final int[] maxPascals;
+        private final long[] sumPascals;
+
+        // The most recent window number with readings.
+        private long latest = Long.MIN_VALUE;
+
+        Level(long resolution, int size) {
+            super();
+            this.resolution = resolution;
+            windows = new long[size];
+            Arrays.fill(windows, Long.MIN_VALUE);
+            counts = new int[size];
+            minDeciCelsius = new int[size];
+            maxDeciCelsius = new int[size];
+            sumDeciCelsius = new long[size];
+            minPascals = new int[size];
+            maxPascals = new int[size];
+            sumPascals = new long[size];
+        }
+
+        void add(long timestamp, int deciCelsius, int pascals) {
+            long window = Math.floorDiv(timestamp, resolution);
+            int slot = slot(window);
+            long current = windows[slot];
+            if (window != current) {
+                if (window < current || (latest != Long.MIN_VALUE && window <= latest - windows.length)) {
+                    // The window is no longer retained.
+                    return;
+                }
+                windows[slot] = window;
+                counts[slot] = 1;
+                minDeciCelsius[slot] = maxDeciCelsius[slot] = deciCelsius;
+                sumDeciCelsius[slot] = deciCelsius;
+                minPascals[slot] = maxPascals[slot] = pascals;
+                sumPascals[slot] = pascals;
+            } else {
+                counts[slot]++;
+                minDeciCelsius[slot] = Math.min(minDeciCelsius[slot], deciCelsius);
+                maxDeciCelsius[slot] = Math.max(maxDeciCelsius[slot], deciCelsius);
+                sumDeciCelsius[slot] += deciCelsius;
+                minPascals[slot] = Math.min(minPascals[slot], pascals);
+                maxPascals[slot] = Math.max(maxPascals[slot], pascals);
+                sumPascals[slot] += pascals;
+            }
+            latest = Math.max(latest, window);
+        }
+
+        int slot(long window) {
+            return (int) Math.floorMod(window, (long) windows.length);
+        }
+
+        /*
+         * Returns the first retained window number at or after the given
+         * time.
+         */
+        long firstWindow(long time) {
+            return Math.max(Math.floorDiv(time, resolution), latest - windows.length + 1);
+        }
+
+        /*
+         * Returns the last window number with readings at or before the given
+         * time.
+         */
+        long lastWindow(long time) {
+            return Math.min(Math.floorDiv(time, resolution), latest);
+        }
+
+        /* Copies, or merges, the window in the given slot into the aggregate. */
+        void copy(int slot, BMP180Aggregate aggregate, boolean merge) {
+            long start = windows[slot] * resolution;
+            if (merge) {
+                aggregate.merge(start, start + resolution, counts[slot], minDeciCelsius[slot], maxDeciCelsius[slot],
+                        sumDeciCelsius[slot], minPascals[slot], maxPascals[slot], sumPascals[slot]);
+            } else {
+                aggregate.set(start, start + resolution, counts[slot], minDeciCelsius[slot], maxDeciCelsius[slot],
+                        sumDeciCelsius[slot], minPascals[slot], maxPascals[slot], sumPascals[slot]);
+            }
+        }
+    }
+}
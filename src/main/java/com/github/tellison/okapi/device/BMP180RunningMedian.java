@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.Arrays;
+
+/**
+ * A filter stage that returns the median of a fixed number of the most recent
+ * values, rejecting isolated spikes that would skew a mean.
+ *
+ * For an even number of values the lower of the two middle values is
+ * returned, so the result is always one of the values seen. A spike is
+ * rejected as long as it is less than half of the window. Until the window
+ * has filled, the median is of the values seen so far.
+ * <p>
+ * The recent values are also kept in sorted order, so each value is filtered
+ * with a binary search and a shift of the window, rather than a sort.
+ */
+public class BMP180RunningMedian implements BMP180Filter {
+
+    // Recent values in a ring, in arrival order.
+    private final int[] window;
+    private int next;
+    private int count;
+
+    // The same values in ascending order, in the first count elements.
+    private final int[] sorted;
+
+    /**
+     * Constructs a new running median over the given number of values.
+     *
+     * @param windowSize
+     *            the number of most recent values considered, best odd.
+     */
+    public BMP180RunningMedian(int windowSize) {
+        super();
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Invalid window size " + windowSize);
+        }
+        window = new int[windowSize];
+        sorted = new int[windowSize];
+    }
+
+    /**
+     * Returns the number of values considered once the window has filled.
+     *
+     * @return The window size.
+     */
+    public int getWindowSize() {
+        return window.length;
+    }
+
+    @Override
+    public int filter(int value) {
+        if (count == window.length) {
+            // Remove the oldest value from the sorted values.
+            int oldest = Arrays.binarySearch(sorted, 0, count, window[next]);
+            System.arraycopy(sorted, oldest + 1, sorted, oldest, count - oldest - 1);
+            count--;
+        }
+        window[next] = value;
+        next = (next + 1) % window.length;
+
+        int insert = Arrays.binarySearch(sorted, 0, count, value);
+        if (insert < 0) {
+            insert = -insert - 1;
+        }
+        System.arraycopy(sorted, insert, sorted, insert + 1, count - insert);
+        sorted[insert] = value;
+        count++;
+
+        return sorted[(count - 1) / 2];
+    }
+
+    @Override
+    public void reset() {
+        next = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Continuously samples a BMP180 device on a dedicated thread.
+ *
+ * The sampler drives the device at a fixed sampling mode and rate, or with
+ * the mode chosen for each reading by a {@link BMP180ModeController}, and
+ * publishes each timestamped reading into a {@link BMP180ReadingBuffer}. Any
+ * number of threads can then get the latest reading, or the recent history of
+ * readings, without waiting for the device. Each reading is also pushed to the
+ * subscribers of the sampler's {@link BMP180ReadingPublisher}.
+ * <p>
+ * The sampler does not own the device, so closing the sampler stops sampling
+ * but leaves the device open.
+ *
+ * <pre>
+ * try (BMP180Sampler sampler = new BMP180Sampler(device, BMP180SamplingMode.STANDARD, 100, TimeUnit.MILLISECONDS, 64)) {
+ *     sampler.start();
+ *     ...
+ *     BMP180Reading reading = new BMP180Reading();
+ *     if (sampler.getBuffer().readLatest(reading)) {
+ *         float pressure = reading.getPressure();
+ *     }
+ * }
+ * </pre>
+ */
+public class BMP180Sampler implements Closeable {
+
+    private final BMP180Device device;
+    private final BMP180SamplingMode mode;
+    private final long periodNanos;
+
+    // Chooses the mode and period of each reading, or null if they are fixed.
+    private final BMP180ModeController controller;
+    private final BMP180ReadingBuffer buffer;
+    private final BMP180ReadingPublisher publisher;
+    private final Thread thread;
+
+    private volatile boolean running;
+
+    // Failures are only updated by the sampling thread.
+    private volatile long failureCount;
+    private volatile Exception lastFailure;
+
+    /**
+     * Constructs a new sampler for the device. Sampling begins when the
+     * sampler is started. Each subscriber is signalled on a thread of
+     * its own, so a slow subscriber never delays the others.
+     *
+     * @param device
+     *            the device to sample.
+     * @param mode
+     *            the sampling mode used for every pressure reading.
+     * @param period
+     *            the time between the start of each reading.
+     * @param unit
+     *            the unit of the period argument.
+     * @param capacity
+     *            the number of recent readings retained by the sampler.
+     */
+    public BMP180Sampler(BMP180Device device, BMP180SamplingMode mode, long period, TimeUnit unit, int capacity) {
+        this(device, mode, null, period, unit, capacity, null);
+    }
+
+    /**
+     * Constructs a new sampler for the device, that signals the subscribers
+     * of its publisher on the given executor. Sampling begins when the
+     * sampler is started.
+     *
+     * @param device
+     *            the device to sample.
+     * @param mode
+     *            the sampling mode used for every pressure reading.
+     * @param period
+     *            the time between the start of each reading.
+     * @param unit
+     *            the unit of the period argument.
+     * @param capacity
+     *            the number of recent readings retained by the sampler.
+     * @param executor
+     *            the executor used to signal subscribers, on which a blocked
+     *            subscriber occupies a thread.
+     */
+    public BMP180Sampler(BMP180Device device, BMP180SamplingMode mode, long period, TimeUnit unit, int capacity,
+            Executor executor) {
+        this(device, mode, null, period, unit, capacity, Objects.requireNonNull(executor, "executor"));
+    }
+
+    /**
+     * Constructs a new sampler for the device, that takes each reading in the
+     * mode chosen by the given controller, at the controller's sampling
+     * period. Sampling begins when the sampler is started. Each subscriber
+     * is signalled on a thread of its own, so a slow subscriber never delays
+     * the others.
+     *
+     * @param device
+     *            the device to sample.
+     * @param controller
+     *            the controller choosing the sampling mode of each reading.
+     * @param capacity
+     *            the number of recent readings retained by the sampler.
+     */
+    public BMP180Sampler(BMP180Device device, BMP180ModeController controller, int capacity) {
+        this(device, controller.getSamplingMode(), controller, controller.getPeriod(TimeUnit.NANOSECONDS),
+                TimeUnit.NANOSECONDS, capacity, null);
+    }
+
+    /**
+     * Constructs a new sampler for the device, that takes each reading in the
+     * mode chosen by the given controller, at the controller's sampling
+     * period, and signals the subscribers of its publisher on the given
+     * executor. Sampling begins when the sampler is started.
+     *
+     * @param device
+     *            the device to sample.
+     * @param controller
+     *            the controller choosing the sampling mode of each reading.
+     * @param capacity
+     *            the number of recent readings retained by the sampler.
+     * @param executor
+     *            the executor used to signal subscribers, on which a blocked
+     *            subscriber occupies a thread.
+     */
+    public BMP180Sampler(BMP180Device device, BMP180ModeController controller, int capacity, Executor executor) {
+        this(device, controller.getSamplingMode(), controller, controller.getPeriod(TimeUnit.NANOSECONDS),
+                TimeUnit.NANOSECONDS, capacity, Objects.requireNonNull(executor, "executor"));
+    }
+
+    /*
+     * Constructs a sampler with a fixed mode, or a controller if not null,
+     * that signals subscribers on the given executor, or each on its own
+     * thread if null.
+     */
+    private BMP180Sampler(BMP180Device device, BMP180SamplingMode mode, BMP180ModeController controller, long period,
+            TimeUnit unit, int capacity, Executor executor) {
+        super();
+        if (period <= 0) {
+            throw new IllegalArgumentException("Sampling period must be positive.");
+        }
+        this.device = device;
+        this.mode = mode;
+        this.controller = controller;
+        this.periodNanos = unit.toNanos(period);
+        this.buffer = new BMP180ReadingBuffer(capacity);
+        this.publisher = new BMP180ReadingPublisher(executor);
+        this.thread = new Thread(this::sample, "BMP180 sampler");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts sampling the device.
+     *
+     * @throws IllegalStateException
+     *             if the sampler was already started.
+     */
+    public synchronized void start() {
+        if (thread.getState() != Thread.State.NEW) {
+            throw new IllegalStateException("Sampler already started.");
+        }
+        running = true;
+        thread.start();
+    }
+
+    /*
+     * Returns the device sampled by this sampler.
+     */
+    BMP180Device getDevice() {
+        return device;
+    }
+
+    /**
+     * Returns the buffer of recent readings filled by this sampler.
+     *
+     * @return The reading buffer.
+     */
+    public BMP180ReadingBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the publisher that pushes this sampler's readings to
+     * subscribers.
+     *
+     * @return The reading publisher.
+     */
+    public BMP180ReadingPublisher getPublisher() {
+        return publisher;
+    }
+
+    /**
+     * Returns the sampling mode used by this sampler, which is the mode for
+     * the next reading when the mode is chosen by a controller.
+     *
+     * @return The sampling mode.
+     */
+    public BMP180SamplingMode getSamplingMode() {
+        return (controller == null) ? mode : controller.getSamplingMode();
+    }
+
+    /**
+     * Returns the controller choosing the sampling mode of each reading.
+     *
+     * @return The mode controller, or <code>null</code> if the sampling mode
+     *         is fixed.
+     */
+    public BMP180ModeController getModeController() {
+        return controller;
+    }
+
+    /**
+     * Returns the number of failures, due to a problem communicating with the
+     * device, or an unexpected runtime exception while taking a reading,
+     * updating the mode controller, or publishing the reading.
+     *
+     * @return The count of failures.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the exception from the most recent failed reading.
+     *
+     * @return The last failure, an {@link IOException} or a runtime
+     *         exception, or <code>null</code> if there has been none.
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    /*
+     * The sampling loop, run on the sampler's own thread. Failed readings are
+     * recorded and sampling continues, unless there is an error, which stops
+     * sampling and is passed on to subscribers.
+     */
+    private void sample() {
+        try {
+            sampleUntilClosed();
+        } catch (Error err) {
+            running = false;
+            publisher.fail(err);
+            throw err;
+        }
+    }
+
+    /* Takes readings each period until the sampler is closed. */
+    private void sampleUntilClosed() {
+        BMP180Reading reading = new BMP180Reading();
+        long next = System.nanoTime();
+        while (running) {
+            boolean read = false;
+            try {
+                device.getTemperatureAndPressure(getSamplingMode(), reading);
+                read = true;
+            } catch (IOException | RuntimeException ex) {
+                failed(ex);
+            }
+
+            // Publishing and the mode control are kept apart, so a failure
+            // publishing a reading does not keep it from the controller.
+            if (read) {
+                try {
+                    buffer.publish(reading.getTimestamp(), reading.getPacked());
+                    publisher.publish(reading);
+                } catch (RuntimeException ex) {
+                    failed(ex);
+                }
+            }
+            if (read && controller != null) {
+                try {
+                    controller.update(reading);
+                } catch (RuntimeException ex) {
+                    failed(ex);
+                }
+            }
+
+            // Wait for the start of the next period. If we have overrun the
+            // period, start again immediately rather than trying to catch up.
+            long periodNanos = (controller == null) ? this.periodNanos : controller.getPeriod(TimeUnit.NANOSECONDS);
+            next += periodNanos;
+            long delay;
+            while (running && (delay = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, delay);
+            }
+            if (System.nanoTime() - next > periodNanos) {
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /* Records a failure to take, control or publish a reading. */
+    private void failed(Exception ex) {
+        lastFailure = ex;
+        failureCount++;
+    }
+
+    /**
+     * Stops sampling, and waits for any reading in progress to complete. The
+     * readings already in the buffer remain available, and subscribers to the
+     * publisher are completed.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        publisher.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
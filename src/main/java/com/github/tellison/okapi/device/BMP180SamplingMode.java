@@ -27,16 +27,16 @@ package com.github.tellison.okapi.device;
 public enum BMP180SamplingMode {
 
     /** Single internal sample, 4.5ms (the minimum) conversion time. */
-    ULTRA_LOW_POWER(0, 4, 500000),
+    ULTRA_LOW_POWER(0, 4, 500000, 3000, 6),
 
     /** Two internal samples, 7.5ms conversion time. */
-    STANDARD(1, 7, 500000),
+    STANDARD(1, 7, 500000, 5000, 5),
 
     /** Four internal samples, 13.5ms conversion time. */
-    HIGH_RESOLUTION(2, 13, 500000),
+    HIGH_RESOLUTION(2, 13, 500000, 9000, 4),
 
     /** Eight internal samples, 25.5ms conversion time. */
-    ULTRA_HIGH_RESOLUTION(3, 25, 500000);
+    ULTRA_HIGH_RESOLUTION(3, 25, 500000, 17000, 3);
 
     // Device over sampling setting value.
     private final int oss;
@@ -45,10 +45,18 @@ public enum BMP180SamplingMode {
     private final int delayMillis;
     private final int delayNanos;
 
-    BMP180SamplingMode(int oss, int delayMillis, int delayNanos) {
+    // Typical conversion time for this mode (us)
+    private final int typicalMicros;
+
+    // Typical RMS noise of pressure readings in this mode (Pa)
+    private final int noisePascals;
+
+    BMP180SamplingMode(int oss, int delayMillis, int delayNanos, int typicalMicros, int noisePascals) {
         this.oss = oss;
         this.delayMillis = delayMillis;
         this.delayNanos = delayNanos;
+        this.typicalMicros = typicalMicros;
+        this.noisePascals = noisePascals;
     }
 
     /* Returns the millisecond conversion delay for this over sampling mode. */
@@ -61,6 +69,16 @@ public enum BMP180SamplingMode {
         return delayNanos;
     }
 
+    /* Returns the typical conversion time for this over sampling mode in ns. */
+    long getTypicalNanos() {
+        return typicalMicros * 1000L;
+    }
+
+    /* Returns the typical RMS noise of pressure readings in this mode in Pa. */
+    int getNoisePascals() {
+        return noisePascals;
+    }
+
     /* Returns this over sampling setting value. */
     int getOSS() {
         return oss;
@@ -76,4 +76,65 @@ public class BMP180Utils {
         double powTerm = Math.pow(term, -5.257d);
         return (float) (measuredPressure * powTerm);
     }
+
+    /**
+     * Converts a given fixed-point temperature in degrees Celsius to degrees
+     * Fahrenheit, rounding to the nearest step.
+     * 
+     * @param deciCelsius
+     *            the temperature in steps of 0.1 deg.C.
+     * @return The same temperature in steps of 0.1 deg.F.
+     */
+    public static int deciCelsiusToDeciFahrenheit(int deciCelsius) {
+        return Math.floorDiv(deciCelsius * 18 + 5, 10) + 320;
+    }
+
+    /**
+     * Returns the calculated altitude given fixed-point sea level and measured
+     * pressures, and temperature at the measured point.
+     * 
+     * This is the fixed-point equivalent of
+     * {@link #absoluteAltitude(float, float, float)}. The intermediate values
+     * are calculated with {@link StrictMath}, so the result is the same on
+     * every platform.
+     * 
+     * @param seaLevelPascals
+     *            pressure at mean sea level, in Pa
+     * @param measuredPascals
+     *            pressure at altitude, in Pa
+     * @param measuredDeciCelsius
+     *            temperature at the measured point, in steps of 0.1 deg. C.
+     * @return The altitude above sea level, in centimetres.
+     */
+    public static int absoluteAltitudeCentimetres(int seaLevelPascals, int measuredPascals, int measuredDeciCelsius) {
+        double term = StrictMath.pow((double) seaLevelPascals / measuredPascals, (1d / 5.257)) - 1d;
+        double numerator = term * (measuredDeciCelsius + 2731.5);
+        return (int) StrictMath.round(numerator / 0.0065 * 10);
+    }
+
+    /**
+     * Returns the calculated fixed-point pressure at mean sea-level given a
+     * known altitude above sea level and measured temperature and pressure at
+     * that known altitude.
+     * 
+     * This is the fixed-point equivalent of
+     * {@link #seaLevelPressure(float, float, float)}. The intermediate values
+     * are calculated with {@link StrictMath}, so the result is the same on
+     * every platform.
+     * 
+     * @param heightCentimetres
+     *            the altitude above sea level, in centimetres
+     * @param measuredPascals
+     *            pressure at altitude, in Pa
+     * @param measuredDeciCelsius
+     *            temperature at altitude, in steps of 0.1 deg. C.
+     * @return Air pressure at sea level, in Pa
+     */
+    public static int seaLevelPascals(int heightCentimetres, int measuredPascals, int measuredDeciCelsius) {
+        double heightFactor = 0.0065d * heightCentimetres / 100;
+        double denom = heightFactor + (measuredDeciCelsius + 2731.5) / 10;
+        double term = 1.0d - (heightFactor / denom);
+        double powTerm = StrictMath.pow(term, -5.257d);
+        return (int) StrictMath.round(measuredPascals * powTerm);
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.IOException;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+/*
+ * An I2C device that reads registers with a single combined transaction.
+ *
+ * A plain register read is two bus transactions, each a separate call into
+ * the kernel: a write of the register address, then a read. This device
+ * issues the register address write and the read as one combined write-read
+ * transaction with a repeated start instead. Writes are passed through
+ * unchanged.
+ *
+ * Not thread safe, callers serialize access as they do for the device.
+ */
+final class CombinedReadDevice implements I2CDevice {
+
+    private final I2CDevice device;
+
+    // The register address to write, and a single byte register value,
+    // reused for each read.
+    private final byte[] register = new byte[1];
+    private final byte[] value = new byte[1];
+
+    CombinedReadDevice(I2CDevice device) {
+        super();
+        this.device = device;
+    }
+
+    @Override
+    public void write(byte b) throws IOException {
+        device.write(b);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+        device.write(buffer, offset, size);
+    }
+
+    @Override
+    public void write(int address, byte b) throws IOException {
+        device.write(address, b);
+    }
+
+    @Override
+    public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+        device.write(address, buffer, offset, size);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return device.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        return device.read(buffer, offset, size);
+    }
+
+    @Override
+    public int read(int address) throws IOException {
+        if (read(address, value, 0, 1) < 1) {
+            throw new IOException("Error reading register " + address);
+        }
+        return value[0] & 0xFF;
+    }
+
+    @Override
+    public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+        register[0] = (byte) address;
+        return device.read(register, 0, 1, buffer, offset, size);
+    }
+
+    @Override
+    public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset,
+            int readSize) throws IOException {
+        return device.read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize);
+    }
+}
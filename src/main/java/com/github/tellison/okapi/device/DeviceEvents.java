@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+/*
+ * Flight Recorder events for the activity of a single device.
+ *
+ * Each operation is bracketed by a begin method, which returns an event token
+ * or null, and an end method that commits the event. When the runtime does
+ * not support Flight Recorder, or the event is not enabled in any recording,
+ * the begin method returns null without allocating and the end method does
+ * nothing, so the tracing costs a few branches.
+ *
+ * The events themselves are defined by FlightEvents, which is compiled for
+ * Java 11 and only present when the library is built on JDK 11 or later. It
+ * is loaded reflectively, so this class, and the device using it, build and
+ * run on Java 8, where the events are simply not recorded. Tokens are typed as
+ * Object for the same reason.
+ */
+final class DeviceEvents {
+
+    /*
+     * Records the events of devices, implemented by FlightEvents.
+     */
+    interface Recorder {
+
+        Object beginCalibrationRead();
+
+        void endCalibrationRead(Object token, int bus, int address);
+
+        Object beginCommand();
+
+        void endCommand(Object token, int bus, int address, int register, int command, BMP180SamplingMode mode);
+
+        Object beginConversionWait();
+
+        void endConversionWait(Object token, int bus, int address, BMP180SamplingMode mode, boolean polled);
+
+        Object beginDataRead();
+
+        void endDataRead(Object token, int bus, int address, int bytes, BMP180SamplingMode mode);
+
+        Object beginCompensation();
+
+        void endCompensation(Object token, int bus, int address, BMP180SamplingMode mode);
+    }
+
+    // The Flight Recorder events, or null if the build or runtime lacks them.
+    private static final Recorder RECORDER = loadRecorder();
+
+    // Whether the runtime supports Flight Recorder events.
+    static final boolean AVAILABLE = (RECORDER != null);
+
+    // Tags for the events of this device.
+    private final int bus;
+    private final int address;
+
+    /*
+     * Creates the events for the device at the given address, on the given
+     * bus number or -1 if the bus number is not known.
+     */
+    DeviceEvents(int bus, int address) {
+        super();
+        this.bus = bus;
+        this.address = address;
+    }
+
+    /*
+     * Returns the Flight Recorder events, or null if they were not built, or
+     * the runtime is older than Java 11 or lacks the jdk.jfr module.
+     */
+    private static Recorder loadRecorder() {
+        try {
+            Class<?> events = Class.forName("com.github.tellison.okapi.device.FlightEvents", true,
+                    DeviceEvents.class.getClassLoader());
+            return (Recorder) events.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    Object beginCalibrationRead() {
+        return AVAILABLE ? RECORDER.beginCalibrationRead() : null;
+    }
+
+    void endCalibrationRead(Object event) {
+        if (event != null) {
+            RECORDER.endCalibrationRead(event, bus, address);
+        }
+    }
+
+    Object beginCommand() {
+        return AVAILABLE ? RECORDER.beginCommand() : null;
+    }
+
+    /*
+     * Ends a command write, where the mode is null for commands other than
+     * pressure conversions.
+     */
+    void endCommand(Object event, int register, byte command, BMP180SamplingMode mode) {
+        if (event != null) {
+            RECORDER.endCommand(event, bus, address, register, command & 0xFF, mode);
+        }
+    }
+
+    Object beginConversionWait() {
+        return AVAILABLE ? RECORDER.beginConversionWait() : null;
+    }
+
+    /*
+     * Ends a wait for a conversion, where the mode is null for temperature
+     * conversions.
+     */
+    void endConversionWait(Object event, BMP180SamplingMode mode, boolean polled) {
+        if (event != null) {
+            RECORDER.endConversionWait(event, bus, address, mode, polled);
+        }
+    }
+
+    Object beginDataRead() {
+        return AVAILABLE ? RECORDER.beginDataRead() : null;
+    }
+
+    /*
+     * Ends a read of conversion data, where the mode is null for temperature
+     * data.
+     */
+    void endDataRead(Object event, int bytes, BMP180SamplingMode mode) {
+        if (event != null) {
+            RECORDER.endDataRead(event, bus, address, bytes, mode);
+        }
+    }
+
+    Object beginCompensation() {
+        return AVAILABLE ? RECORDER.beginCompensation() : null;
+    }
+
+    void endCompensation(Object event, BMP180SamplingMode mode) {
+        if (event != null) {
+            RECORDER.endCompensation(event, bus, address, mode);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * A mutual exclusion lock for access to a device, that is not owned by a
+ * thread.
+ *
+ * A conversion on the device spans a command write, a wait, and a data read.
+ * Blocking callers hold the lock on their own thread for the whole sequence,
+ * whereas asynchronous callers acquire the lock with a future and release it
+ * from whichever thread performs the final read. Waiters are granted the lock
+ * in the order they arrive, and an uncontended lock creates no garbage.
+ */
+final class DeviceLock {
+
+    // Futures for callers waiting for the lock, in arrival order.
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+
+    private boolean locked;
+
+    /*
+     * Acquires the lock, waiting if necessary.
+     *
+     * @throws InterruptedIOException The thread was interrupted while waiting,
+     * and does not hold the lock.
+     */
+    void lock() throws InterruptedIOException {
+        CompletableFuture<Void> ticket;
+        synchronized (this) {
+            if (!locked) {
+                locked = true;
+                return;
+            }
+            ticket = new CompletableFuture<>();
+            waiters.add(ticket);
+        }
+        try {
+            ticket.get();
+        } catch (InterruptedException ex) {
+            // If we lost the race with unlock() then we own the lock.
+            if (!ticket.cancel(false)) {
+                unlock();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for device.");
+        } catch (ExecutionException ex) {
+            // Tickets are only ever completed normally, or cancelled.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * Acquires the lock if it becomes available within the given time.
+     * Answers whether the lock was acquired.
+     *
+     * @throws InterruptedIOException The thread was interrupted while waiting,
+     * and does not hold the lock.
+     */
+    boolean tryLock(long timeoutNanos) throws InterruptedIOException {
+        CompletableFuture<Void> ticket;
+        synchronized (this) {
+            if (!locked) {
+                locked = true;
+                return true;
+            }
+            ticket = new CompletableFuture<>();
+            waiters.add(ticket);
+        }
+        try {
+            ticket.get(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException ex) {
+            // If we lost the race with unlock() then we own the lock.
+            return !ticket.cancel(false);
+        } catch (InterruptedException ex) {
+            if (!ticket.cancel(false)) {
+                unlock();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for device.");
+        } catch (ExecutionException ex) {
+            // Tickets are only ever completed normally, or cancelled.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * Returns a future that completes when the caller has acquired the lock.
+     * Cancelling the future before it completes abandons the request.
+     * Dependent actions may run on the thread that released the lock, so
+     * should be short or moved to an executor.
+     */
+    CompletableFuture<Void> lockAsync() {
+        CompletableFuture<Void> ticket = new CompletableFuture<>();
+        synchronized (this) {
+            if (locked) {
+                waiters.add(ticket);
+                return ticket;
+            }
+            locked = true;
+        }
+        ticket.complete(null);
+        return ticket;
+    }
+
+    /*
+     * Releases the lock, handing it directly to the next waiter if there is
+     * one.
+     */
+    void unlock() {
+        for (;;) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    locked = false;
+                    return;
+                }
+            }
+            // Complete outside the monitor, skipping abandoned requests.
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A concurrent histogram of latencies in ns.
+ *
+ * Values are counted in log-linear buckets: each power of two range is split
+ * into four buckets, so a bucket is at most 25% of its lower bound wide.
+ * Recording a value is a few atomic updates with no allocation, and the
+ * distribution is only summarized when a snapshot is taken.
+ */
+final class LatencyHistogram {
+
+    // Sub-buckets per power of two, as a number of bits.
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // Enough buckets for any non-negative long value.
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /*
+     * Records a latency, treating negative values as zero.
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    /*
+     * Returns a summary of the latencies recorded so far. Values recorded
+     * while the snapshot is taken may be partially included.
+     */
+    BMP180LatencyStatistics snapshot(String name) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return new BMP180LatencyStatistics(name, 0, 0, 0, 0, 0);
+        }
+        return new BMP180LatencyStatistics(name, count, total.sum() / count, max.get(),
+                percentile(counts, count, 0.5), percentile(counts, count, 0.99));
+    }
+
+    /*
+     * Discards all recorded latencies.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        total.reset();
+        max.reset();
+    }
+
+    /* Returns the upper bound of the bucket holding the given quantile. */
+    private long percentile(long[] counts, long count, double quantile) {
+        long rank = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /* Returns the bucket index for a non-negative value. */
+    static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /* Returns the largest value counted in the given bucket. */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.nio.ByteOrder;
+
+/*
+ * The layout of a memory-mapped reading file, shared by the writer and the
+ * readers, which may be in different processes.
+ *
+ * The file is a 64 byte header followed by a ring of 32 byte slots. All values
+ * are little-endian, and every long is 8 byte aligned so it is written with a
+ * single store.
+ *
+ * Header:
+ *   0  int   magic
+ *   4  int   format version
+ *   8  int   readable capacity
+ *  12  int   number of slots, a power of two
+ *  16  long  count of readings written
+ *  24  int   non-zero once the writer is closed
+ *
+ * Slot for reading number n, at index n modulo the number of slots:
+ *   0  long  sequence, 2n+1 while the slot is being written and 2n+2 after
+ *   8  long  timestamp, in milliseconds since the epoch
+ *  16  long  packed temperature and pressure, see BMP180Reading#getPacked()
+ */
+final class MappedReadingLayout {
+
+    // Identifies reading files, and their format version.
+    static final int MAGIC = 0x424D5052; // "BMPR"
+    static final int VERSION = 1;
+
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // Header field offsets.
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int CAPACITY_OFFSET = 8;
+    static final int SLOTS_OFFSET = 12;
+    static final int COUNT_OFFSET = 16;
+    static final int CLOSED_OFFSET = 24;
+    static final int HEADER_BYTES = 64;
+
+    // Slot field offsets.
+    static final int SEQUENCE_OFFSET = 0;
+    static final int TIMESTAMP_OFFSET = 8;
+    static final int VALUES_OFFSET = 16;
+    static final int SLOT_BYTES = 32;
+
+    // Largest capacity that keeps the file within a single mapping.
+    static final int MAX_CAPACITY = (1 << 25) - 1;
+
+    private MappedReadingLayout() {
+        // No instances.
+    }
+
+    /* Returns the number of slots needed for the given readable capacity. */
+    static int slotsFor(int capacity) {
+        // Always keep one spare slot for the writer to fill, so a reader can
+        // see the full capacity while the next reading is being written.
+        return Integer.highestOneBit(capacity) << 1;
+    }
+
+    /* Returns the length of a file with the given number of slots. */
+    static int fileLength(int slots) {
+        return HEADER_BYTES + slots * SLOT_BYTES;
+    }
+
+    /* Returns the offset of the slot for the given reading. */
+    static int slotOffset(long readingNumber, int slots) {
+        return HEADER_BYTES + ((int) readingNumber & (slots - 1)) * SLOT_BYTES;
+    }
+
+    /* Returns the slot sequence of the given reading once it is written. */
+    static long writtenSequence(long readingNumber) {
+        return 2 * readingNumber + 2;
+    }
+}
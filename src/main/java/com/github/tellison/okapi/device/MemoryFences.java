@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+
+/*
+ * Memory fences for memory shared with other processes, where the Java memory
+ * model does not apply.
+ *
+ * Java 8 has no public fence API, so the fences of sun.misc.Unsafe are used,
+ * which HotSpot compiles to the matching hardware barriers on x86 and ARM. A
+ * volatile write is not enough, because on AArch64 it is a single store
+ * release, which does not order later loads and stores after it. Unsafe is
+ * found reflectively, so that the class compiles with --release 8, and called
+ * through constant method handles, which the JIT compiler inlines. The Java 21
+ * version uses the VarHandle fences instead.
+ */
+final class MemoryFences {
+
+    private static final MethodHandle LOAD_FENCE;
+    private static final MethodHandle STORE_FENCE;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            LOAD_FENCE = lookup.unreflect(unsafeClass.getMethod("loadFence")).bindTo(unsafe);
+            STORE_FENCE = lookup.unreflect(unsafeClass.getMethod("storeFence")).bindTo(unsafe);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private MemoryFences() {
+        // No instances.
+    }
+
+    /*
+     * Ensures loads before the fence are not reordered with loads and stores
+     * after it.
+     */
+    static void acquire() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            // The fence methods throw nothing.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /*
+     * Ensures loads and stores before the fence are not reordered with stores
+     * after it.
+     */
+    static void release() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable ex) {
+            // The fence methods throw nothing.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
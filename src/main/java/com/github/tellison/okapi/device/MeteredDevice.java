@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.IOException;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+/*
+ * An I2C device that counts the transactions, failures, and short reads on
+ * the device it wraps.
+ */
+final class MeteredDevice implements I2CDevice {
+
+    private final I2CDevice device;
+    private final BMP180Metrics metrics;
+
+    MeteredDevice(I2CDevice device, BMP180Metrics metrics) {
+        super();
+        this.device = device;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(byte b) throws IOException {
+        metrics.i2cWrites.increment();
+        try {
+            device.write(b);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+        metrics.i2cWrites.increment();
+        try {
+            device.write(buffer, offset, size);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void write(int address, byte b) throws IOException {
+        metrics.i2cWrites.increment();
+        try {
+            device.write(address, b);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+        metrics.i2cWrites.increment();
+        try {
+            device.write(address, buffer, offset, size);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        metrics.i2cReads.increment();
+        try {
+            return device.read();
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        metrics.i2cReads.increment();
+        try {
+            return counted(device.read(buffer, offset, size), size);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(int address) throws IOException {
+        metrics.i2cReads.increment();
+        try {
+            return device.read(address);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+        metrics.i2cReads.increment();
+        try {
+            return counted(device.read(address, buffer, offset, size), size);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    @Override
+    public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset,
+            int readSize) throws IOException {
+        metrics.i2cReads.increment();
+        metrics.i2cCombinedReads.increment();
+        try {
+            return counted(device.read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize),
+                    readSize);
+        } catch (IOException | RuntimeException ex) {
+            metrics.i2cErrors.increment();
+            throw ex;
+        }
+    }
+
+    /* Counts a read that returned fewer bytes than requested. */
+    private int counted(int result, int size) {
+        if (result < size) {
+            metrics.shortReads.increment();
+        }
+        return result;
+    }
+}
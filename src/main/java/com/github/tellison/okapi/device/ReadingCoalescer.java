@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Lets callers that arrive while a blocking reading is in progress share its
+ * values, rather than each taking a reading in turn.
+ *
+ * One shared reading is in progress at a time. The caller that starts it
+ * leads, taking the reading from the device, and callers that arrive while
+ * it is in progress in the same or a lower resolution mode wait for it to
+ * finish. Callers needing a higher resolution take their own readings. The
+ * state is kept in fields rather than an object for each reading, so an
+ * uncontended reading creates no garbage, and waiting uses a
+ * java.util.concurrent lock so that virtual threads are not pinned.
+ */
+final class ReadingCoalescer {
+
+    // Returned to a caller that should take its own reading, as the shared
+    // reading was abandoned or has been overtaken. It is not a possible
+    // reading, as the temperature would be far below absolute zero.
+    static final long NO_READING = Long.MIN_VALUE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readingFinished = lock.newCondition();
+
+    // The mode of the shared reading in progress, or null if there is none.
+    private BMP180SamplingMode mode;
+
+    // The numbers of shared readings started and finished.
+    private long started;
+    private long finished;
+
+    // The outcome of the last shared reading to finish.
+    private long packed;
+    private Throwable failure;
+
+    /*
+     * Enters a reading in the given mode. Returns a positive reading number if
+     * the caller leads a new shared reading, and must finish it. Returns a
+     * negative reading number if the caller can share the reading in
+     * progress, or zero if the caller should take its own reading.
+     */
+    long enter(BMP180SamplingMode mode) {
+        lock.lock();
+        try {
+            if (this.mode == null) {
+                this.mode = mode;
+                return ++started;
+            }
+            return (this.mode.getOSS() >= mode.getOSS()) ? -started : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Finishes the shared reading with the given number, with either its
+     * packed values or its failure, and wakes the callers sharing it.
+     */
+    void finish(long number, long packed, Throwable failure) {
+        lock.lock();
+        try {
+            this.mode = null;
+            this.finished = number;
+            this.packed = packed;
+            this.failure = failure;
+            readingFinished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Waits for the shared reading with the given number to finish, and
+     * returns its packed values, or NO_READING if the caller should take its
+     * own reading.
+     *
+     * @throws IOException The shared reading failed.
+     * @throws InterruptedIOException The caller was interrupted while waiting.
+     */
+    long await(long number) throws IOException {
+        lock.lock();
+        try {
+            while (finished < number) {
+                try {
+                    readingFinished.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for shared reading.");
+                }
+            }
+            if (finished != number || failure instanceof InterruptedIOException) {
+                // The outcome was replaced by a later reading, or the reading
+                // was abandoned by its interrupted leader.
+                return NO_READING;
+            }
+            if (failure != null) {
+                throw new IOException("Shared reading failed: " + failure.getMessage(), failure);
+            }
+            return packed;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
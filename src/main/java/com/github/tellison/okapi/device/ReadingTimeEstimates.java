@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Live estimates of how long the device takes to produce a reading in each
+ * sampling mode, from acquiring the device to reading the pressure data,
+ * including the conversion waits and bus transfers.
+ *
+ * Each estimate follows the measured readings in its mode. It rises at once
+ * to a slower reading, and decays gradually towards faster ones, so that a
+ * reading chosen to fit a time budget rarely overruns it. Between readings
+ * the estimate also decays with time towards the fastest reading seen in the
+ * mode, so that a mode left out of budgets after a single slow reading is
+ * tried again, and measured afresh. A mode that has not been measured yet is
+ * estimated from the data sheet conversion times plus the transfer time seen
+ * in other modes.
+ */
+final class ReadingTimeEstimates {
+
+    // Transfer time assumed before any readings are measured: the command
+    // writes and register reads of a reading take about 17 bytes on the bus,
+    // at 90us per byte on a 100kHz bus.
+    static final long DEFAULT_TRANSFER_NANOS = 1_500_000;
+
+    // How quickly an estimate decays towards faster readings, as a shift.
+    private static final int DECAY_SHIFT = 3;
+
+    // Time for the excess of an estimate over the fastest reading to halve.
+    private static final long HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final BMP180SamplingMode[] MODES = BMP180SamplingMode.values();
+
+    // Estimates in ns indexed by mode ordinal, or zero if not yet measured.
+    private final AtomicLongArray nanos = new AtomicLongArray(MODES.length);
+
+    // The fastest reading in ns seen in each mode.
+    private final AtomicLongArray fastest = new AtomicLongArray(MODES.length);
+
+    // The System.nanoTime() at which each estimate was recorded.
+    private final AtomicLongArray recorded = new AtomicLongArray(MODES.length);
+
+    /*
+     * Records the time taken by a reading in the given mode. Readings are
+     * recorded while holding the device lock, so updates do not race.
+     */
+    void record(BMP180SamplingMode mode, long readingNanos) {
+        int index = mode.ordinal();
+        long now = System.nanoTime();
+        long estimate = measured(index, now);
+        if (readingNanos >= estimate) {
+            estimate = readingNanos;
+        } else {
+            estimate -= (estimate - readingNanos) >> DECAY_SHIFT;
+        }
+        long floor = fastest.get(index);
+        fastest.set(index, Math.max((floor == 0) ? readingNanos : Math.min(floor, readingNanos), 1));
+        recorded.set(index, now);
+        nanos.set(index, Math.max(estimate, 1));
+    }
+
+    /*
+     * Returns the estimated time for a reading in the given mode, in ns.
+     */
+    long estimate(BMP180SamplingMode mode) {
+        long estimate = measured(mode.ordinal(), System.nanoTime());
+        if (estimate != 0) {
+            return estimate;
+        }
+        return dataSheetNanos(mode) + transferNanos();
+    }
+
+    /*
+     * Returns the highest resolution mode whose estimated reading time is
+     * within the given time, or null if there is none.
+     */
+    BMP180SamplingMode bestWithin(long availableNanos) {
+        for (int i = MODES.length - 1; i >= 0; i--) {
+            if (estimate(MODES[i]) <= availableNanos) {
+                return MODES[i];
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Returns the shortest time beyond the data sheet conversion times taken
+     * by any measured mode, or the default if no mode has been measured.
+     */
+    private long transferNanos() {
+        long now = System.nanoTime();
+        long transfer = Long.MAX_VALUE;
+        for (BMP180SamplingMode mode : MODES) {
+            long estimate = measured(mode.ordinal(), now);
+            if (estimate != 0) {
+                transfer = Math.min(transfer, Math.max(estimate - dataSheetNanos(mode), 0));
+            }
+        }
+        return (transfer == Long.MAX_VALUE) ? DEFAULT_TRANSFER_NANOS : transfer;
+    }
+
+    /*
+     * Returns the measured estimate for the mode with the given ordinal,
+     * decayed towards the fastest reading by the time since it was recorded,
+     * or zero if the mode has not been measured.
+     */
+    private long measured(int index, long now) {
+        long estimate = nanos.get(index);
+        if (estimate == 0) {
+            return 0;
+        }
+        long floor = fastest.get(index);
+        long age = Math.max(now - recorded.get(index), 0);
+        long halvings = age / HALF_LIFE_NANOS;
+        if (halvings >= Long.SIZE - 1) {
+            return floor;
+        }
+        long excess = (estimate - floor) >> halvings;
+        excess -= (long) ((excess >> 1) * ((double) (age % HALF_LIFE_NANOS) / HALF_LIFE_NANOS));
+        return floor + excess;
+    }
+
+    /* Returns the data sheet temperature and pressure conversion time. */
+    private static long dataSheetNanos(BMP180SamplingMode mode) {
+        long temperature = BMP180Protocol.conversionNanos(BMP180SamplingMode.ULTRA_LOW_POWER);
+        return temperature + BMP180Protocol.conversionNanos(mode);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CFactory;
+
+/*
+ * A registry of reference counted I2C bus handles, shared by all of the
+ * devices that open a bus by number.
+ *
+ * The first device to acquire a bus opens it, and the last device to release
+ * it closes it, so that devices on the same bus share a single file
+ * descriptor, and closing one device does not affect the others.
+ */
+final class SharedBuses {
+
+    // Open buses by bus number, guarded by the class lock.
+    private static final Map<Integer, Entry> buses = new HashMap<>();
+
+    private SharedBuses() {
+        // No instances.
+    }
+
+    /*
+     * Returns the shared handle for the given bus number, opening the bus if
+     * this is the first reference. Each successful call must be balanced by a
+     * call to release(int).
+     */
+    static synchronized I2CBus acquire(int busNumber) throws IOException {
+        Entry entry = buses.get(busNumber);
+        if (entry == null) {
+            entry = new Entry(I2CFactory.getInstance(busNumber));
+            buses.put(busNumber, entry);
+        }
+        entry.references++;
+        return entry.bus;
+    }
+
+    /*
+     * Drops a reference to the given bus number, closing the bus if this is
+     * the last reference.
+     */
+    static synchronized void release(int busNumber) throws IOException {
+        Entry entry = buses.get(busNumber);
+        if (entry == null) {
+            throw new IllegalStateException("I2C bus " + busNumber + " is not open.");
+        }
+        if (--entry.references == 0) {
+            buses.remove(busNumber);
+            entry.bus.close();
+        }
+    }
+
+    /*
+     * An open bus and the number of references to it.
+     */
+    private static final class Entry {
+        final I2CBus bus;
+        int references;
+
+        Entry(I2CBus bus) {
+            this.bus = bus;
+        }
+    }
+}
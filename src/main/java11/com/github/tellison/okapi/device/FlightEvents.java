@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * The Flight Recorder event types for device activity. Only used through
+ * DeviceEvents, and only when the runtime supports Flight Recorder.
+ *
+ * This class is compiled for Java 11 from its own source tree, when building
+ * on JDK 11 or later, so that the rest of the library still builds and runs
+ * on Java 8. DeviceEvents finds it reflectively.
+ */
+final class FlightEvents implements DeviceEvents.Recorder {
+
+    private static final String TEMPERATURE = "temperature";
+    private static final String PRESSURE = "pressure";
+
+    // Event types, to check whether they are enabled without allocating.
+    private static final EventType CALIBRATION_READ = EventType.getEventType(CalibrationRead.class);
+    private static final EventType COMMAND_WRITE = EventType.getEventType(CommandWrite.class);
+    private static final EventType CONVERSION_WAIT = EventType.getEventType(ConversionWait.class);
+    private static final EventType DATA_READ = EventType.getEventType(DataRead.class);
+    private static final EventType COMPENSATION = EventType.getEventType(Compensation.class);
+
+    FlightEvents() {
+        super();
+    }
+
+    @Override
+    public Object beginCalibrationRead() {
+        return CALIBRATION_READ.isEnabled() ? begin(new CalibrationRead()) : null;
+    }
+
+    @Override
+    public void endCalibrationRead(Object token, int bus, int address) {
+        CalibrationRead event = (CalibrationRead) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(bus, address);
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginCommand() {
+        return COMMAND_WRITE.isEnabled() ? begin(new CommandWrite()) : null;
+    }
+
+    @Override
+    public void endCommand(Object token, int bus, int address, int register, int command,
+            BMP180SamplingMode mode) {
+        CommandWrite event = (CommandWrite) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(bus, address);
+            event.register = register;
+            event.command = command;
+            event.mode = nameOf(mode);
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginConversionWait() {
+        return CONVERSION_WAIT.isEnabled() ? begin(new ConversionWait()) : null;
+    }
+
+    @Override
+    public void endConversionWait(Object token, int bus, int address, BMP180SamplingMode mode, boolean polled) {
+        ConversionWait event = (ConversionWait) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(bus, address);
+            event.measurement = (mode == null) ? TEMPERATURE : PRESSURE;
+            event.mode = nameOf(mode);
+            event.polled = polled;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginDataRead() {
+        return DATA_READ.isEnabled() ? begin(new DataRead()) : null;
+    }
+
+    @Override
+    public void endDataRead(Object token, int bus, int address, int bytes, BMP180SamplingMode mode) {
+        DataRead event = (DataRead) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(bus, address);
+            event.measurement = (mode == null) ? TEMPERATURE : PRESSURE;
+            event.mode = nameOf(mode);
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginCompensation() {
+        return COMPENSATION.isEnabled() ? begin(new Compensation()) : null;
+    }
+
+    @Override
+    public void endCompensation(Object token, int bus, int address, BMP180SamplingMode mode) {
+        Compensation event = (Compensation) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.set(bus, address);
+            event.mode = nameOf(mode);
+            event.commit();
+        }
+    }
+
+    private static Event begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    private static String nameOf(BMP180SamplingMode mode) {
+        return (mode == null) ? null : mode.name();
+    }
+
+    /*
+     * The fields common to all device events.
+     */
+    @Category({ "Okapi", "BMP180" })
+    abstract static class DeviceEvent extends Event {
+
+        @Label("Bus")
+        @Description("The I2C bus number, or -1 if not known")
+        int bus;
+
+        @Label("Address")
+        @Description("The I2C address of the device")
+        int address;
+
+        final void set(int bus, int address) {
+            this.bus = bus;
+            this.address = address;
+        }
+    }
+
+    @Name("com.github.tellison.okapi.CalibrationRead")
+    @Label("BMP180 Calibration Read")
+    @Description("Reading the calibration coefficients of a device")
+    static final class CalibrationRead extends DeviceEvent {
+    }
+
+    @Name("com.github.tellison.okapi.CommandWrite")
+    @Label("BMP180 Command Write")
+    @Description("Writing a command to a device register")
+    static final class CommandWrite extends DeviceEvent {
+
+        @Label("Register")
+        int register;
+
+        @Label("Command")
+        int command;
+
+        @Label("Sampling Mode")
+        String mode;
+    }
+
+    @Name("com.github.tellison.okapi.ConversionWait")
+    @Label("BMP180 Conversion Wait")
+    @Description("Waiting for a device to complete a conversion")
+    static final class ConversionWait extends DeviceEvent {
+
+        @Label("Measurement")
+        String measurement;
+
+        @Label("Sampling Mode")
+        String mode;
+
+        @Label("Polled")
+        @Description("Whether the end of conversion was polled for")
+        boolean polled;
+    }
+
+    @Name("com.github.tellison.okapi.DataRead")
+    @Label("BMP180 Data Read")
+    @Description("Reading the result of a conversion from a device")
+    static final class DataRead extends DeviceEvent {
+
+        @Label("Measurement")
+        String measurement;
+
+        @Label("Sampling Mode")
+        String mode;
+
+        @Label("Bytes")
+        int bytes;
+    }
+
+    @Name("com.github.tellison.okapi.Compensation")
+    @Label("BMP180 Compensation")
+    @Description("Calculating true values from raw readings")
+    static final class Compensation extends DeviceEvent {
+
+        @Label("Sampling Mode")
+        String mode;
+    }
+}
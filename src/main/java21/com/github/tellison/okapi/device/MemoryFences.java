@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.device;
+
+import java.lang.invoke.VarHandle;
+
+/*
+ * Memory fences for memory shared with other processes, where the Java memory
+ * model does not apply.
+ *
+ * This is the Java 21 version, which uses the VarHandle fences rather than
+ * sun.misc.Unsafe.
+ */
+final class MemoryFences {
+
+    private MemoryFences() {
+        // No instances.
+    }
+
+    /*
+     * Ensures loads before the fence are not reordered with loads and stores
+     * after it.
+     */
+    static void acquire() {
+        VarHandle.acquireFence();
+    }
+
+    /*
+     * Ensures loads and stores before the fence are not reordered with stores
+     * after it.
+     */
+    static void release() {
+        VarHandle.releaseFence();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Array;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for an array of BMP180 devices behind a multiplexer.
+ */
+public class BMP180ArrayTest {
+
+    private static final int[] CHANNELS = { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    private MockFactory factory;
+    private BMP180Array array;
+
+    @Before
+    public void setUp() throws IOException {
+        factory = new MockFactory(CHANNELS.length);
+        I2CFactory.setFactory(factory);
+        array = new BMP180Array(I2CBus.BUS_1, BMP180Array.MULTIPLEXER_I2C_ADDRESS, CHANNELS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (array != null) {
+            array.close();
+        }
+    }
+
+    /**
+     * Channels must be in range and distinct.
+     */
+    @Test
+    public void testInvalidChannels() throws IOException {
+        int[][] invalid = { {}, { -1 }, { 8 }, { 2, 3, 2 } };
+        for (int[] channels : invalid) {
+            try {
+                new BMP180Array(I2CBus.BUS_1, BMP180Array.MULTIPLEXER_I2C_ADDRESS, channels).close();
+                fail("Should reject channels " + Arrays.toString(channels));
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Each device is calibrated, and read once per array reading.
+     */
+    @Test
+    public void testReadings() throws IOException {
+        assertEquals(CHANNELS.length, array.getSensorCount());
+        for (int i = 0; i < CHANNELS.length; i++) {
+            assertEquals(CHANNELS[i], array.getChannel(i));
+            assertEquals(408, array.getCompensator(i).getAC1());
+        }
+
+        BMP180Reading[] readings = new BMP180Reading[CHANNELS.length];
+        BMP180Reading first = new BMP180Reading();
+        readings[0] = first;
+        assertSame(readings, array.getTemperatureAndPressure(BMP180SamplingMode.STANDARD, readings));
+        assertSame(first, readings[0]);
+        for (BMP180Reading reading : readings) {
+            assertNotNull(reading);
+            assertEquals(15.0, reading.getTemperature(), 0.1f);
+            assertEquals(699.64, reading.getPressure(), 0.1f);
+            assertEquals(readings[0].getTimestamp(), reading.getTimestamp());
+        }
+
+        MockMultiplexer multiplexer = factory.getLastBus().getMultiplexer();
+        for (int channel : CHANNELS) {
+            MockI2CDevice mock = multiplexer.getChannelDevice(channel);
+            assertEquals(1, mock.temperatureCommands);
+            assertEquals(1, mock.pressureCommands);
+        }
+    }
+
+    /**
+     * The readings array must match the number of devices.
+     */
+    @Test
+    public void testReadingsLength() throws IOException {
+        try {
+            array.getTemperatureAndPressure(BMP180SamplingMode.STANDARD, new BMP180Reading[1]);
+            fail("Should reject a short readings array.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Conversions overlap, so reading all devices takes much less than the sum
+     * of their conversion times.
+     */
+    @Test
+    public void testPipelined() throws IOException {
+        BMP180SamplingMode mode = BMP180SamplingMode.ULTRA_HIGH_RESOLUTION;
+        BMP180Reading[] readings = new BMP180Reading[CHANNELS.length];
+        // Temperature conversion is 4.5ms, and pressure 25.5ms in this mode.
+        long serialNanos = CHANNELS.length * TimeUnit.MICROSECONDS.toNanos(4500 + 25500);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            array.getTemperatureAndPressure(mode, readings);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        assertTrue("Took " + best + "ns for " + CHANNELS.length + " devices", best < serialNanos / 3);
+    }
+
+    /**
+     * A closed array cannot be read.
+     */
+    @Test
+    public void testClosed() throws IOException {
+        array.close();
+        try {
+            array.getTemperatureAndPressure(BMP180SamplingMode.STANDARD, new BMP180Reading[CHANNELS.length]);
+            fail("Should not read a closed array.");
+        } catch (IOException ex) {
+            // expected
+        } finally {
+            array = null;
+        }
+    }
+}
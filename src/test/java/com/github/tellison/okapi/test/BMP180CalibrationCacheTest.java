@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180CalibrationCache;
+import com.github.tellison.okapi.device.BMP180Device;
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the calibration cache.
+ */
+public class BMP180CalibrationCacheTest {
+
+    private MockFactory factory;
+    private Path directory;
+    private BMP180CalibrationCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        factory = new MockFactory();
+        I2CFactory.setFactory(factory);
+        directory = Files.createTempDirectory("okapi");
+        cache = new BMP180CalibrationCache(directory.resolve("cache"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        MockI2CDevice.setCalibrationAC1((short) 408);
+        for (Path file : listCache()) {
+            Files.delete(file);
+        }
+        Files.deleteIfExists(cache.getDirectory());
+        Files.delete(directory);
+    }
+
+    /**
+     * The first device populates the cache, and later devices start from it
+     * and check it in the background.
+     */
+    @Test
+    public void testWarmStart() throws Exception {
+        try (BMP180Device device = open()) {
+            assertSame(Thread.currentThread(), lastDevice().calibrationReader);
+            assertTrue(device.getCalibrationCheck().get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(1, listCache().size());
+
+        try (BMP180Device device = open()) {
+            assertTrue(device.getCalibrationCheck().get(1, TimeUnit.SECONDS));
+            Thread reader = lastDevice().calibrationReader;
+            assertNotSame(Thread.currentThread(), reader);
+            checkValues(device);
+        }
+    }
+
+    /**
+     * A damaged entry is ignored and replaced.
+     */
+    @Test
+    public void testDamagedEntry() throws Exception {
+        open().close();
+        Path file = listCache().get(0);
+        byte[] contents = Files.readAllBytes(file);
+        contents[contents.length / 2] ^= 0x01;
+        Files.write(file, contents);
+
+        try (BMP180Device device = open()) {
+            assertSame(Thread.currentThread(), lastDevice().calibrationReader);
+            checkValues(device);
+        }
+        try (BMP180Device device = open()) {
+            assertNotSame(Thread.currentThread(), lastDevice().calibrationReader);
+            assertTrue(device.getCalibrationCheck().get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * A stale entry is replaced by the device's calibration data.
+     */
+    @Test
+    public void testStaleEntry() throws Exception {
+        MockI2CDevice.setCalibrationAC1((short) 409);
+        open().close();
+        MockI2CDevice.setCalibrationAC1((short) 408);
+
+        try (BMP180Device device = open()) {
+            assertFalse(device.getCalibrationCheck().get(1, TimeUnit.SECONDS));
+            assertEquals(408, device.getCompensator().getAC1());
+            checkValues(device);
+        }
+        try (BMP180Device device = open()) {
+            assertTrue(device.getCalibrationCheck().get(1, TimeUnit.SECONDS));
+            assertEquals(408, device.getCompensator().getAC1());
+        }
+        assertEquals(1, listCache().size());
+    }
+
+    /* Opens a device using the cache. */
+    private BMP180Device open() throws IOException {
+        return new BMP180Device(I2CBus.BUS_1, BMP180Device.DEVICE_I2C_ADDRESS, cache);
+    }
+
+    /* Returns the mock device on the current bus. */
+    private MockI2CDevice lastDevice() {
+        return factory.getLastBus().getLastDevice();
+    }
+
+    /* Returns the files in the cache directory. */
+    private List<Path> listCache() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(cache.getDirectory())) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(cache.getDirectory())) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /* Check the device gives the data sheet example results. */
+    private void checkValues(BMP180Device device) throws IOException {
+        float[] values = device.getTemperatureAndPressure();
+        assertEquals(15.0, values[0], 0.1f);
+        assertEquals(699.64, values[1], 0.1f);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Compensator;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+
+/**
+ * Unit tests for the compensation calculations, using the worked example from
+ * the device data sheet.
+ */
+public class BMP180CompensatorTest {
+
+    // Data sheet example calibration coefficients.
+    static final BMP180Compensator DATASHEET = new BMP180Compensator(408, -72, -14383, 32741, 32757, 23153, 6190, 4,
+            -32768, -8711, 2868);
+
+    // Data sheet example raw readings.
+    static final int UT = 27898;
+    static final int UP = 23843;
+
+    @Test
+    public void testTemperature() {
+        int b5 = DATASHEET.computeB5(UT);
+        assertEquals(2400, b5);
+        assertEquals(150, BMP180Compensator.computeTemperature(b5));
+        assertEquals(15.0f, DATASHEET.getTemperature(UT), 0.001f);
+    }
+
+    @Test
+    public void testPressure() {
+        int b5 = DATASHEET.computeB5(UT);
+        assertEquals(69964, DATASHEET.computePressure(UP, b5, BMP180SamplingMode.ULTRA_LOW_POWER));
+        assertEquals(699.64f, DATASHEET.getPressure(UT, UP, BMP180SamplingMode.ULTRA_LOW_POWER), 0.001f);
+    }
+
+    @Test
+    public void testBatch() {
+        checkBatch(1_000);
+    }
+
+    @Test
+    public void testBatchParallel() {
+        checkBatch(500_000);
+    }
+
+    /* Batch results must be identical to compensating each sample. */
+    private void checkBatch(int length) {
+        int[] ut = new int[length];
+        int[] up = new int[length];
+        for (int i = 0; i < length; i++) {
+            ut[i] = UT - 2_000 + (i % 4_000);
+            up[i] = (UP << 3) - 40_000 + (i % 80_000);
+        }
+        for (BMP180SamplingMode mode : BMP180SamplingMode.values()) {
+            float[] temperatures = new float[length];
+            float[] pressures = new float[length];
+            DATASHEET.compensate(ut, up, mode, temperatures, pressures);
+            for (int i = 0; i < length; i += 97) {
+                assertEquals(DATASHEET.getTemperature(ut[i]), temperatures[i], 0f);
+                assertEquals(DATASHEET.getPressure(ut[i], up[i], mode), pressures[i], 0f);
+            }
+            assertEquals(DATASHEET.getPressure(ut[length - 1], up[length - 1], mode), pressures[length - 1], 0f);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchLengths() {
+        DATASHEET.compensate(new int[2], new int[2], BMP180SamplingMode.STANDARD, new float[2], new float[1]);
+    }
+
+    @Test
+    public void testCoefficients() {
+        assertEquals(408, DATASHEET.getAC1());
+        assertEquals(-72, DATASHEET.getAC2());
+        assertEquals(-14383, DATASHEET.getAC3());
+        assertEquals(32741, DATASHEET.getAC4());
+        assertEquals(32757, DATASHEET.getAC5());
+        assertEquals(23153, DATASHEET.getAC6());
+        assertEquals(6190, DATASHEET.getB1());
+        assertEquals(4, DATASHEET.getB2());
+        assertEquals(-32768, DATASHEET.getMB());
+        assertEquals(-8711, DATASHEET.getMC());
+        assertEquals(2868, DATASHEET.getMD());
+    }
+
+    @Test
+    public void testInvalidCoefficients() {
+        try {
+            new BMP180Compensator(40000, -72, -14383, 32741, 32757, 23153, 6190, 4, -32768, -8711, 2868);
+            fail("AC1 is a signed 16-bit value.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            new BMP180Compensator(408, -72, -14383, -1, 32757, 23153, 6190, 4, -32768, -8711, 2868);
+            fail("AC4 is an unsigned 16-bit value.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
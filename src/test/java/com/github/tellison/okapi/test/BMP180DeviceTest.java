@@ -17,18 +17,36 @@
 package com.github.tellison.okapi.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180Reading;
 import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CBus;
 import com.pi4j.io.i2c.I2CFactory;
 
 /**
@@ -38,6 +56,7 @@ public class BMP180DeviceTest {
 
     private BMP180Device device;
     private boolean usingRealDevice;
+    private MockFactory factory;
 
     @Before
     public void setUp() throws IOException {
@@ -49,7 +68,8 @@ public class BMP180DeviceTest {
         // Install a factory that produces a mock I2C device for testing in
         // absence of the real device.
         if (!usingRealDevice) {
-            I2CFactory.setFactory(new MockFactory());
+            factory = new MockFactory();
+            I2CFactory.setFactory(factory);
         }
 
         // Create a device on our mock I2C bus.
@@ -70,6 +90,45 @@ public class BMP180DeviceTest {
     public void testConstructor() throws IOException {
         BMP180Device bmp180 = new BMP180Device();
         assertNotNull(bmp180);
+        bmp180.close();
+    }
+
+    /**
+     * Check devices opened by bus number share the bus, which is closed with
+     * the last device on it.
+     */
+    @Test
+    public void testSharedBus() throws IOException {
+        assumeTrue(!usingRealDevice);
+        MockI2CBus bus = factory.getLastBus();
+        try (BMP180Device other = new BMP180Device(I2CBus.BUS_1, BMP180Device.DEVICE_I2C_ADDRESS)) {
+            assertEquals(1, factory.getBusCount());
+            assertEquals(BMP180Device.DEVICE_ID, other.getChipID());
+        }
+        assertFalse(bus.isClosed());
+        assertEquals(BMP180Device.DEVICE_ID, device.getChipID());
+
+        tearDown();
+        try {
+            assertTrue(bus.isClosed());
+        } finally {
+            setUp();
+        }
+    }
+
+    /**
+     * Check a device on a bus supplied by the caller leaves the bus open.
+     */
+    @Test
+    public void testCallerBus() throws IOException {
+        assumeTrue(!usingRealDevice);
+        MockI2CBus bus = new MockI2CBus();
+        try (BMP180Device local = new BMP180Device(bus)) {
+            float[] values = local.getTemperatureAndPressure();
+            checkValues(values[0], values[1]);
+        }
+        assertFalse(bus.isClosed());
+        assertEquals(1, factory.getBusCount());
     }
 
     /**
@@ -111,6 +170,622 @@ public class BMP180DeviceTest {
         }
     }
 
+    /**
+     * Check we can get temp and pressure into a reading holder.
+     */
+    @Test
+    public void testGetTemperatureAndPressureReading() throws IOException {
+        BMP180Reading reading = new BMP180Reading();
+        for (BMP180SamplingMode mode : BMP180SamplingMode.values()) {
+            long before = System.currentTimeMillis();
+            assertSame(reading, device.getTemperatureAndPressure(mode, reading));
+            checkValues(reading.getTemperature(), reading.getPressure());
+            assertTrue(reading.getTimestamp() >= before);
+        }
+    }
+
+    /**
+     * Check we can get temp and pressure as packed fixed-point values, which
+     * match the holder values exactly.
+     */
+    @Test
+    public void testGetPackedTemperatureAndPressure() throws IOException {
+        BMP180Reading reading = new BMP180Reading();
+        for (BMP180SamplingMode mode : BMP180SamplingMode.values()) {
+            long packed = device.getPackedTemperatureAndPressure(mode);
+            int deciCelsius = BMP180Reading.unpackDeciCelsius(packed);
+            int pascals = BMP180Reading.unpackPascals(packed);
+            checkValues(deciCelsius / 10f, pascals / 100f);
+            assertEquals(packed, BMP180Reading.pack(deciCelsius, pascals));
+
+            device.getTemperatureAndPressure(mode, reading);
+            assertEquals(reading.getPacked(), BMP180Reading.pack(reading.getDeciCelsius(), reading.getPascals()));
+            assertEquals(reading.getDeciCelsius() / 10f, reading.getTemperature(), 0f);
+            assertEquals(reading.getPascals() / 100f, reading.getPressure(), 0f);
+            if (!usingRealDevice) {
+                assertEquals(packed, reading.getPacked());
+            }
+        }
+
+        // Negative temperatures survive packing.
+        long packed = BMP180Reading.pack(-123, 101325);
+        assertEquals(-123, BMP180Reading.unpackDeciCelsius(packed));
+        assertEquals(101325, BMP180Reading.unpackPascals(packed));
+    }
+
+    /**
+     * Check that reading into a holder creates no garbage per sample.
+     */
+    @Test
+    public void testGetTemperatureAndPressureAllocation() throws IOException {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        final int samples = 50;
+        long id = Thread.currentThread().getId();
+        BMP180Reading reading = new BMP180Reading();
+        DebugLogger.setEnabled(false);
+        try {
+            // Warm up the read path and the measurement itself.
+            for (int i = 0; i < samples; i++) {
+                device.getTemperatureAndPressure(BMP180SamplingMode.ULTRA_LOW_POWER, reading);
+            }
+            threads.getThreadAllocatedBytes(id);
+
+            long before = threads.getThreadAllocatedBytes(id);
+            for (int i = 0; i < samples; i++) {
+                device.getTemperatureAndPressure(BMP180SamplingMode.ULTRA_LOW_POWER, reading);
+            }
+            long allocated = threads.getThreadAllocatedBytes(id) - before;
+            assertEquals("Bytes allocated per sample", 0, allocated / samples);
+        } finally {
+            DebugLogger.setEnabled(true);
+        }
+    }
+
+    /**
+     * Check that pressure readings reuse a recent temperature when allowed.
+     */
+    @Test
+    public void testTemperatureReuse() throws Exception {
+        assertEquals(0, device.getTemperatureReuse(TimeUnit.MILLISECONDS));
+        device.setTemperatureReuse(1, TimeUnit.HOURS);
+        assertEquals(1, device.getTemperatureReuse(TimeUnit.HOURS));
+
+        BMP180Reading reading = new BMP180Reading();
+        for (int i = 0; i < 3; i++) {
+            device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD, reading);
+            checkValues(reading.getTemperature(), reading.getPressure());
+        }
+        reading = device.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+        checkValues(reading.getTemperature(), reading.getPressure());
+        checkConversions(1, 4);
+
+        // An explicit temperature reading is always fresh.
+        assertEquals(15.0, device.getTemperature(), 0.1f);
+        checkConversions(2, 4);
+
+        // No reuse reads the temperature every time.
+        device.setTemperatureReuse(0, TimeUnit.SECONDS);
+        device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD, reading);
+        checkConversions(3, 5);
+
+        try {
+            device.setTemperatureReuse(-1, TimeUnit.SECONDS);
+            fail("Should not accept a negative reuse time.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /* Check the number of conversions performed by the mock device. */
+    private void checkConversions(int temperature, int pressure) {
+        if (!usingRealDevice) {
+            MockI2CDevice mock = factory.getLastBus().getLastDevice();
+            assertEquals("Temperature conversions", temperature, mock.temperatureCommands);
+            assertEquals("Pressure conversions", pressure, mock.pressureCommands);
+        }
+    }
+
+    /**
+     * Check we can read temp and pressure asynchronously in every mode.
+     */
+    @Test
+    public void testReadAsync() throws Exception {
+        for (BMP180SamplingMode mode : BMP180SamplingMode.values()) {
+            BMP180Reading reading = device.readAsync(mode).get(1, TimeUnit.SECONDS);
+            checkValues(reading.getTemperature(), reading.getPressure());
+        }
+    }
+
+    /**
+     * Check that many outstanding reads are served by a single scheduler
+     * thread, since no thread waits during the conversions.
+     */
+    @Test
+    public void testReadAsyncSingleThread() throws Exception {
+        ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1);
+        try {
+            List<CompletableFuture<BMP180Reading>> readings = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                readings.add(device.readAsync(BMP180SamplingMode.STANDARD, scheduler));
+            }
+            for (CompletableFuture<BMP180Reading> reading : readings) {
+                BMP180Reading values = reading.get(5, TimeUnit.SECONDS);
+                checkValues(values.getTemperature(), values.getPressure());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Check that cancelling asynchronous reads releases the device.
+     */
+    @Test
+    public void testReadAsyncCancel() throws Exception {
+        CompletableFuture<BMP180Reading> first = device.readAsync(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION);
+        CompletableFuture<BMP180Reading> second = device.readAsync(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION);
+        Thread.sleep(2);
+        assertTrue(first.cancel(false));
+        assertTrue(second.cancel(false));
+        try {
+            first.get();
+            fail("Cancelled read should not complete.");
+        } catch (CancellationException ex) {
+            // expected
+        }
+
+        // The device must still be usable.
+        BMP180Reading reading = device.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+        checkValues(reading.getTemperature(), reading.getPressure());
+        float[] values = device.getTemperatureAndPressure();
+        checkValues(values[0], values[1]);
+    }
+
+    /**
+     * Check that cancelling an asynchronous read while one of its steps is
+     * using the bus leaves the device locked until the step returns.
+     */
+    @Test
+    public void testReadAsyncCancelRunningStep() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        CountDownLatch gate = new CountDownLatch(1);
+        mock.commandEntered = new CountDownLatch(1);
+        mock.commandGate = gate;
+        CompletableFuture<BMP180Reading> cancelled = device.readAsync(BMP180SamplingMode.STANDARD);
+        assertTrue(mock.commandEntered.await(5, TimeUnit.SECONDS));
+        assertTrue(cancelled.cancel(false));
+
+        // A blocking reader must wait for the step on the bus.
+        CompletableFuture<float[]> second = new CompletableFuture<>();
+        Thread reader = new Thread(() -> {
+            try {
+                second.complete(device.getTemperatureAndPressure());
+            } catch (IOException | RuntimeException ex) {
+                second.completeExceptionally(ex);
+            }
+        });
+        reader.start();
+        try {
+            Thread.sleep(100);
+            assertFalse("Second reader overlapped the running step.", second.isDone());
+        } finally {
+            gate.countDown();
+        }
+        float[] values = second.get(5, TimeUnit.SECONDS);
+        checkValues(values[0], values[1]);
+        reader.join();
+
+        // The device must still be usable.
+        BMP180Reading reading = device.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+        checkValues(reading.getTemperature(), reading.getPressure());
+    }
+
+    /**
+     * Check an asynchronous read on a closed device fails.
+     */
+    @Test
+    public void testReadAsyncClosed() throws InterruptedException, TimeoutException, IOException {
+        BMP180Device local = new BMP180Device();
+        local.close();
+        try {
+            local.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+            fail("Should not read from a closed device.");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * Check that polling for the end of conversions reads valid data without
+     * waiting for the maximum conversion time.
+     */
+    @Test
+    public void testConversionPolling() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        BMP180SamplingMode mode = BMP180SamplingMode.ULTRA_HIGH_RESOLUTION;
+        device.setConversionPolling(true);
+        assertTrue(device.isConversionPolling());
+
+        // Conversions running past the typical time are polled until done.
+        mock.conversionPercent = 80;
+        float[] values = device.getTemperatureAndPressure(mode);
+        checkValues(values[0], values[1]);
+        assertTrue(mock.statusReads > 2);
+        BMP180Reading reading = device.readAsync(mode).get(1, TimeUnit.SECONDS);
+        checkValues(reading.getTemperature(), reading.getPressure());
+
+        // Conversions completing early are read before the maximum time.
+        mock.conversionPercent = 60;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            device.getTemperatureAndPressure(mode, reading);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        checkValues(reading.getTemperature(), reading.getPressure());
+        assertTrue("Took " + best + "ns", best < TimeUnit.MICROSECONDS.toNanos(4500 + 25500));
+    }
+
+    /**
+     * Check that a conversion that does not complete in the maximum time is
+     * reported when polling.
+     */
+    @Test
+    public void testConversionPollingTimeout() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        device.setConversionPolling(true);
+        mock.conversionPercent = 200;
+        try {
+            device.getTemperatureAndPressure();
+            fail("Should not read an incomplete conversion.");
+        } catch (IOException ex) {
+            // expected
+        }
+        try {
+            device.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+            fail("Should not read an incomplete conversion.");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+
+        // The device must still be usable.
+        mock.conversionPercent = 100;
+        float[] values = device.getTemperatureAndPressure();
+        checkValues(values[0], values[1]);
+    }
+
+    /**
+     * Check that combined write-read transactions give the same values in
+     * fewer bus transactions.
+     */
+    @Test
+    public void testCombinedTransactions() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        BMP180SamplingMode mode = BMP180SamplingMode.STANDARD;
+
+        // Two commands, and two reads of register address and data.
+        mock.transactions = 0;
+        float[] values = device.getTemperatureAndPressure(mode);
+        checkValues(values[0], values[1]);
+        assertEquals(6, mock.transactions);
+
+        // Two commands, and two combined reads.
+        device.setCombinedTransactions(true);
+        assertTrue(device.isCombinedTransactions());
+        long combinedReads = device.getMetrics().getI2CCombinedReadCount();
+        mock.transactions = 0;
+        values = device.getTemperatureAndPressure(mode);
+        checkValues(values[0], values[1]);
+        assertEquals(4, mock.transactions);
+        assertEquals(combinedReads + 2, device.getMetrics().getI2CCombinedReadCount());
+
+        mock.transactions = 0;
+        BMP180Reading reading = device.readAsync(mode).get(1, TimeUnit.SECONDS);
+        checkValues(reading.getTemperature(), reading.getPressure());
+        assertEquals(4, mock.transactions);
+
+        // Status polls are combined too.
+        device.setConversionPolling(true);
+        assertEquals(0x55, device.getChipID());
+        values = device.getTemperatureAndPressure(mode);
+        checkValues(values[0], values[1]);
+    }
+
+    /**
+     * Check that concurrent callers share a reading in progress, so the tail
+     * latency stays near a single reading.
+     */
+    @Test
+    public void testReadCoalescing() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        assertTrue(device.isReadCoalescing());
+
+        // Each STANDARD reading takes 12ms of conversions.
+        long slowest = readConcurrently(10);
+        assertTrue("Slowest reading took " + slowest + "ms", slowest < 50);
+        int readings = mock.pressureCommands;
+        assertTrue(readings < 10);
+        assertEquals(10 - readings, device.getMetrics().getCoalescedReadingCount());
+
+        // Without coalescing every caller takes its own reading.
+        device.setReadCoalescing(false);
+        assertFalse(device.isReadCoalescing());
+        mock.pressureCommands = 0;
+        readConcurrently(10);
+        assertEquals(10, mock.pressureCommands);
+    }
+
+    /**
+     * Check that callers only share a reading in the same or a higher
+     * resolution sampling mode.
+     */
+    @Test
+    public void testReadCoalescingModes() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+
+        // A lower resolution reading shares a higher one in progress.
+        CompletableFuture<float[]> other = readInBackground(mock, BMP180SamplingMode.ULTRA_HIGH_RESOLUTION);
+        float[] values = device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD);
+        checkValues(values[0], values[1]);
+        other.get(1, TimeUnit.SECONDS);
+        assertEquals(1, mock.pressureCommands);
+        assertEquals(1, device.getMetrics().getCoalescedReadingCount());
+
+        // A higher resolution reading does not share a lower one.
+        mock.temperatureCommands = 0;
+        mock.pressureCommands = 0;
+        other = readInBackground(mock, BMP180SamplingMode.ULTRA_LOW_POWER);
+        values = device.getTemperatureAndPressure(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION);
+        checkValues(values[0], values[1]);
+        other.get(1, TimeUnit.SECONDS);
+        assertEquals(2, mock.pressureCommands);
+        assertEquals(1, device.getMetrics().getCoalescedReadingCount());
+    }
+
+    /**
+     * Check that callers sharing a reading are released when its leader fails
+     * with an Error.
+     */
+    @Test
+    public void testReadCoalescingError() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        InternalError error = new InternalError("Emulated device error");
+        CountDownLatch gate = new CountDownLatch(1);
+        mock.commandEntered = new CountDownLatch(1);
+        mock.commandGate = gate;
+        mock.commandError = error;
+        CompletableFuture<float[]> leader = readOnThread();
+        assertTrue(mock.commandEntered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<float[]> follower = readOnThread();
+        Thread.sleep(100);
+        gate.countDown();
+
+        try {
+            leader.get(5, TimeUnit.SECONDS);
+            fail("Leader should fail.");
+        } catch (ExecutionException ex) {
+            assertSame(error, ex.getCause());
+        }
+        try {
+            follower.get(5, TimeUnit.SECONDS);
+            fail("Follower should share the failure.");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+            assertSame(error, ex.getCause().getCause());
+        }
+
+        // The device must still be usable.
+        float[] values = device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD);
+        checkValues(values[0], values[1]);
+    }
+
+    /**
+     * Check that a reading with a time budget uses the highest resolution
+     * mode that fits, and fails fast without using the bus if none fits.
+     */
+    @Test
+    public void testReadingWithin() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        BMP180Reading reading = new BMP180Reading();
+
+        // Before any readings the data sheet times are used.
+        assertEquals(BMP180SamplingMode.HIGH_RESOLUTION, device.getSamplingModeWithin(20, TimeUnit.MILLISECONDS));
+        assertEquals(null, device.getSamplingModeWithin(5, TimeUnit.MILLISECONDS));
+
+        mock.transactions = 0;
+        long start = System.nanoTime();
+        try {
+            device.getTemperatureAndPressureWithin(5, TimeUnit.MILLISECONDS, reading);
+            fail("Reading should not fit in the budget.");
+        } catch (TimeoutException ex) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, mock.transactions);
+
+        assertEquals(BMP180SamplingMode.HIGH_RESOLUTION,
+                device.getTemperatureAndPressureWithin(20, TimeUnit.MILLISECONDS, reading));
+        checkValues(reading.getTemperature(), reading.getPressure());
+        assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION,
+                device.getTemperatureAndPressureWithin(1, TimeUnit.SECONDS, reading));
+        checkValues(reading.getTemperature(), reading.getPressure());
+        assertTrue(device.getEstimatedReadingTime(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION,
+                TimeUnit.MICROSECONDS) >= 30_000);
+    }
+
+    /**
+     * Check that the mode is chosen from the reading times measured on the
+     * device, rather than only the data sheet times.
+     */
+    @Test
+    public void testReadingWithinMeasured() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        BMP180SamplingMode mode = BMP180SamplingMode.ULTRA_HIGH_RESOLUTION;
+        assertEquals(BMP180SamplingMode.HIGH_RESOLUTION, device.getSamplingModeWithin(25, TimeUnit.MILLISECONDS));
+
+        // Conversions that finish early are found by polling.
+        mock.conversionPercent = 50;
+        device.setConversionPolling(true);
+        device.getTemperatureAndPressure(mode);
+        assertTrue(device.getEstimatedReadingTime(mode, TimeUnit.MILLISECONDS) < 25);
+        assertEquals(mode, device.getSamplingModeWithin(25, TimeUnit.MILLISECONDS));
+        assertEquals(mode, device.getTemperatureAndPressureWithin(25, TimeUnit.MILLISECONDS, new BMP180Reading()));
+    }
+
+    /**
+     * Check that a mode left out of budgets after one slow reading becomes
+     * eligible again as time passes.
+     */
+    @Test
+    public void testReadingWithinOutlier() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        BMP180SamplingMode mode = BMP180SamplingMode.ULTRA_HIGH_RESOLUTION;
+        mock.conversionPercent = 50;
+        device.setConversionPolling(true);
+        device.getTemperatureAndPressure(mode);
+        assertEquals(mode, device.getSamplingModeWithin(25, TimeUnit.MILLISECONDS));
+
+        // A slow bus holds up one reading.
+        MockI2CDevice.setByteTransferNanos(TimeUnit.MILLISECONDS.toNanos(2));
+        try {
+            device.getTemperatureAndPressure(mode);
+        } finally {
+            MockI2CDevice.setByteTransferNanos(0);
+        }
+        assertTrue(device.getEstimatedReadingTime(mode, TimeUnit.MILLISECONDS) >= 40);
+        assertTrue(device.getSamplingModeWithin(25, TimeUnit.MILLISECONDS) != mode);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (device.getSamplingModeWithin(25, TimeUnit.MILLISECONDS) != mode) {
+            assertTrue("Mode is still excluded.", System.nanoTime() < deadline);
+            Thread.sleep(100);
+        }
+        assertEquals(mode, device.getTemperatureAndPressureWithin(25, TimeUnit.MILLISECONDS, new BMP180Reading()));
+    }
+
+    /**
+     * Check that time spent waiting for the device comes out of the budget.
+     */
+    @Test
+    public void testReadingWithinBusy() throws Exception {
+        assumeTrue(!usingRealDevice);
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        CompletableFuture<float[]> other = readInBackground(mock, BMP180SamplingMode.ULTRA_HIGH_RESOLUTION);
+        long start = System.nanoTime();
+        try {
+            device.getTemperatureAndPressureWithin(15, TimeUnit.MILLISECONDS, new BMP180Reading());
+            fail("Reading should not fit in the budget.");
+        } catch (TimeoutException ex) {
+            // expected
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(15));
+        other.get(1, TimeUnit.SECONDS);
+        assertEquals(1, mock.pressureCommands);
+    }
+
+    /*
+     * Starts a reading on another thread, and returns once its conversions
+     * have started.
+     */
+    private CompletableFuture<float[]> readInBackground(MockI2CDevice mock, BMP180SamplingMode mode)
+            throws InterruptedException {
+        CompletableFuture<float[]> result = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                result.complete(device.getTemperatureAndPressure(mode));
+            } catch (IOException ex) {
+                result.completeExceptionally(ex);
+            }
+        }).start();
+        while (mock.temperatureCommands == 0) {
+            Thread.sleep(0, 100_000);
+        }
+        return result;
+    }
+
+    /*
+     * Starts a STANDARD reading on another thread, completing the result with
+     * whatever it throws.
+     */
+    private CompletableFuture<float[]> readOnThread() {
+        CompletableFuture<float[]> result = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                result.complete(device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD));
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+            }
+        }).start();
+        return result;
+    }
+
+    /*
+     * Takes STANDARD readings on the given number of threads at once, and
+     * returns the slowest reading time in ms.
+     */
+    private long readConcurrently(int threads) throws Exception {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<CompletableFuture<Long>> times = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            CompletableFuture<Long> time = new CompletableFuture<>();
+            times.add(time);
+            new Thread(() -> {
+                try {
+                    ready.countDown();
+                    go.await();
+                    long start = System.nanoTime();
+                    float[] values = device.getTemperatureAndPressure(BMP180SamplingMode.STANDARD);
+                    checkValues(values[0], values[1]);
+                    time.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                } catch (Throwable t) {
+                    time.completeExceptionally(t);
+                }
+            }).start();
+        }
+        ready.await();
+        go.countDown();
+        long slowest = 0;
+        for (CompletableFuture<Long> time : times) {
+            slowest = Math.max(slowest, time.get(5, TimeUnit.SECONDS));
+        }
+        return slowest;
+    }
+
+    /**
+     * Check that interrupting a blocking read is reported, and the interrupt
+     * status is preserved.
+     */
+    @Test
+    public void testInterruptedRead() throws IOException {
+        Thread.currentThread().interrupt();
+        try {
+            device.getTemperatureAndPressure();
+            fail("Interrupted read should fail.");
+        } catch (InterruptedIOException ex) {
+            // expected
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        // The device must still be usable.
+        float[] values = device.getTemperatureAndPressure();
+        checkValues(values[0], values[1]);
+    }
+
     /* Check the given values match our expectations. */
     private void checkValues(float temperature, float pressure) {
         System.out.printf("Temp=%f, Pressure=%f\n", temperature, pressure);
@@ -167,6 +842,7 @@ public class BMP180DeviceTest {
         me.testGetChipID();
         me.testGetTemperatureAndPressure();
         me.testGetTemperatureAndPressureSampling();
+        me.testGetTemperatureAndPressureReading();
         me.testSoftReset();
         me.testClose();
         me.tearDown();
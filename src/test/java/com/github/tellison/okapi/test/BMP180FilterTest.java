@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180Filter;
+import com.github.tellison.okapi.device.BMP180FilterPipeline;
+import com.github.tellison.okapi.device.BMP180KalmanFilter;
+import com.github.tellison.okapi.device.BMP180MovingAverage;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180RunningMedian;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the reading filter stages and pipeline.
+ */
+public class BMP180FilterTest {
+
+    /**
+     * The moving average is the rounded mean of the recent values.
+     */
+    @Test
+    public void testMovingAverage() {
+        BMP180MovingAverage average = new BMP180MovingAverage(4);
+        assertEquals(4, average.getWindowSize());
+        assertEquals(10, average.filter(10));
+        assertEquals(11, average.filter(11)); // 10.5
+        assertEquals(12, average.filter(15)); // 12
+        assertEquals(13, average.filter(14)); // 12.5
+        assertEquals(18, average.filter(30)); // 17.5, 10 dropped
+        assertEquals(0, average.filter(-60)); // -0.25
+
+        average.reset();
+        assertEquals(-3, average.filter(-3));
+        assertEquals(-2, average.filter(-2)); // -2.5
+
+        // Compare with a plain mean over a long run.
+        Random random = new Random(1);
+        int[] values = new int[1000];
+        average = new BMP180MovingAverage(16);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100_000 + random.nextInt(200) - 100;
+            int filtered = average.filter(values[i]);
+            double sum = 0;
+            int first = Math.max(0, i - 15);
+            for (int j = first; j <= i; j++) {
+                sum += values[j];
+            }
+            assertEquals(sum / (i - first + 1), filtered, 0.5);
+        }
+    }
+
+    /**
+     * The running median rejects spikes shorter than half its window.
+     */
+    @Test
+    public void testRunningMedian() {
+        BMP180RunningMedian median = new BMP180RunningMedian(5);
+        assertEquals(5, median.getWindowSize());
+        assertEquals(100, median.filter(100));
+        assertEquals(100, median.filter(101)); // lower median
+        assertEquals(101, median.filter(102));
+        assertEquals(101, median.filter(90_000));
+        assertEquals(101, median.filter(-5_000));
+        assertEquals(102, median.filter(103));
+        assertEquals(103, median.filter(104)); // both spikes still in window
+        assertEquals(104, median.filter(105));
+        assertEquals(104, median.filter(106)); // 90000 dropped
+
+        // Repeated values are removed one at a time.
+        median.reset();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(7, median.filter(7));
+        }
+        assertEquals(7, median.filter(8));
+        assertEquals(7, median.filter(8));
+        assertEquals(8, median.filter(8));
+
+        // Compare with sorting the window over a long run.
+        Random random = new Random(2);
+        int[] values = new int[1000];
+        median = new BMP180RunningMedian(8);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(20);
+            int filtered = median.filter(values[i]);
+            int first = Math.max(0, i - 7);
+            int[] window = Arrays.copyOfRange(values, first, i + 1);
+            Arrays.sort(window);
+            assertEquals(window[(window.length - 1) / 2], filtered);
+        }
+    }
+
+    /**
+     * The Kalman filter reduces measurement noise, and tracks a step in the
+     * signal.
+     */
+    @Test
+    public void testKalmanFilter() {
+        BMP180KalmanFilter kalman = new BMP180KalmanFilter(0.5, 6);
+        assertEquals(1.0, kalman.getGain(), 0.0);
+        assertEquals(100_010, kalman.filter(100_010));
+
+        // The gain settles to a constant.
+        for (int i = 0; i < 100; i++) {
+            kalman.filter(100_000);
+        }
+        double gain = kalman.getGain();
+        kalman.filter(100_000);
+        assertEquals(gain, kalman.getGain(), 1e-6);
+        assertTrue(gain > 0.05 && gain < 0.15);
+
+        // Filtered noise has a much smaller deviation than the noise.
+        Random random = new Random(3);
+        double sumOfSquares = 0;
+        for (int i = 0; i < 2000; i++) {
+            int filtered = kalman.filter(100_000 + (int) Math.round(random.nextGaussian() * 6));
+            sumOfSquares += (double) (filtered - 100_000) * (filtered - 100_000);
+        }
+        assertTrue(Math.sqrt(sumOfSquares / 2000) < 3);
+
+        // A step is tracked within a few time constants.
+        for (int i = 0; i < 100; i++) {
+            kalman.filter(100_100);
+        }
+        assertEquals(100_100, kalman.filter(100_100));
+
+        kalman.reset();
+        assertEquals(1.0, kalman.getGain(), 0.0);
+        assertEquals(-7, kalman.filter(-7));
+    }
+
+    /**
+     * Stages have valid parameters.
+     */
+    @Test
+    public void testInvalidStages() {
+        int invalid = 0;
+        Runnable[] constructors = { () -> new BMP180MovingAverage(0), () -> new BMP180RunningMedian(-1),
+                () -> new BMP180KalmanFilter(-1, 6), () -> new BMP180KalmanFilter(1, 0),
+                () -> new BMP180KalmanFilter(Double.NaN, 6),
+                () -> new BMP180KalmanFilter(1, Double.POSITIVE_INFINITY) };
+        for (Runnable constructor : constructors) {
+            try {
+                constructor.run();
+            } catch (IllegalArgumentException ex) {
+                invalid++;
+            }
+        }
+        assertEquals(constructors.length, invalid);
+    }
+
+    /**
+     * The pipeline applies each chain of stages to its channel in order, and
+     * keeps the timestamp.
+     */
+    @Test
+    public void testPipeline() throws IOException {
+        BMP180RunningMedian median = new BMP180RunningMedian(3);
+        BMP180FilterPipeline pipeline = new BMP180FilterPipeline(new BMP180Filter[0],
+                new BMP180Filter[] { median, new BMP180MovingAverage(2) });
+
+        int[] pascals = { 100, 104, 50_000, 108, 112 };
+        int[] expected = { 100, 100, 102, 106, 110 };
+        for (int i = 0; i < pascals.length; i++) {
+            long packed = pipeline.filter(BMP180Reading.pack(-20 - i, pascals[i]));
+            assertEquals(-20 - i, BMP180Reading.unpackDeciCelsius(packed));
+            assertEquals(expected[i], BMP180Reading.unpackPascals(packed));
+        }
+
+        // Filtering a device reading in place, after a reset.
+        pipeline.reset();
+        I2CFactory.setFactory(new MockFactory());
+        BMP180Reading reading = new BMP180Reading();
+        try (BMP180Device device = new BMP180Device()) {
+            device.getTemperatureAndPressure(BMP180SamplingMode.ULTRA_LOW_POWER, reading);
+        }
+        long timestamp = reading.getTimestamp();
+        long packed = reading.getPacked();
+        pipeline.filter(reading, reading);
+        assertEquals(timestamp, reading.getTimestamp());
+        assertEquals(packed, reading.getPacked());
+
+        // Stages hold state, so cannot be shared.
+        try {
+            new BMP180FilterPipeline(new BMP180Filter[] { median }, new BMP180Filter[] { median });
+            fail("Shared stage accepted");
+        } catch (IllegalArgumentException ex) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Check that filtering readings does not allocate.
+     */
+    @Test
+    public void testPipelineAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        BMP180FilterPipeline pipeline = new BMP180FilterPipeline(new BMP180Filter[] { new BMP180MovingAverage(8) },
+                new BMP180Filter[] { new BMP180RunningMedian(5), new BMP180MovingAverage(16),
+                        new BMP180KalmanFilter(1, 6) });
+        final int samples = 10_000;
+        long id = Thread.currentThread().getId();
+        long packed = BMP180Reading.pack(150, 100_000);
+
+        // Warm up the filters and the measurement itself.
+        for (int i = 0; i < samples; i++) {
+            packed = pipeline.filter(packed + i % 7);
+        }
+        threads.getThreadAllocatedBytes(id);
+
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < samples; i++) {
+            packed = pipeline.filter(packed + i % 7);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertEquals("Bytes allocated per reading", 0, allocated / samples);
+    }
+}
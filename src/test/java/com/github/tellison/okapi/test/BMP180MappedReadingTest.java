@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180MappedReadingReader;
+import com.github.tellison.okapi.device.BMP180MappedReadingWriter;
+import com.github.tellison.okapi.device.BMP180Reading;
+
+/**
+ * Unit tests for sharing readings through a memory-mapped file.
+ */
+public class BMP180MappedReadingTest {
+
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("okapi");
+        file = directory.resolve("readings");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.delete(directory);
+    }
+
+    /**
+     * Readings written are read back by a separate mapping of the file.
+     */
+    @Test
+    public void testReadBack() throws IOException {
+        try (BMP180MappedReadingWriter writer = new BMP180MappedReadingWriter(file, 4);
+                BMP180MappedReadingReader reader = new BMP180MappedReadingReader(file)) {
+            assertEquals(4, reader.getCapacity());
+            BMP180Reading reading = new BMP180Reading();
+            assertFalse(reader.readLatest(reading));
+
+            for (int i = 0; i < 10; i++) {
+                writer.write(1000 + i, BMP180Reading.pack(150 + i, 101_325 + i));
+            }
+            assertEquals(10, reader.getCount());
+            assertTrue(reader.readLatest(reading));
+            assertEquals(1009, reading.getTimestamp());
+            assertEquals(159, reading.getDeciCelsius());
+            assertEquals(101_334, reading.getPascals());
+
+            // Only the last few readings are retained.
+            assertTrue(reader.read(6, reading));
+            assertEquals(1006, reading.getTimestamp());
+            assertFalse(reader.read(0, reading));
+            assertFalse(reader.read(10, reading));
+
+            long[] timestamps = new long[8];
+            int[] deciCelsius = new int[8];
+            int[] pascals = new int[8];
+            assertEquals(4, reader.readRecent(timestamps, deciCelsius, pascals));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(1006 + i, timestamps[i]);
+                assertEquals(156 + i, deciCelsius[i]);
+                assertEquals(101_331 + i, pascals[i]);
+            }
+        }
+    }
+
+    /**
+     * Readers see when the writer is closed, and a new writer replaces the
+     * file without disturbing readers of the old one.
+     */
+    @Test
+    public void testReplaced() throws IOException {
+        BMP180MappedReadingWriter first = new BMP180MappedReadingWriter(file, 8);
+        first.write(1, BMP180Reading.pack(1, 1));
+        BMP180MappedReadingReader oldReader = new BMP180MappedReadingReader(file);
+        first.onComplete();
+        assertTrue(oldReader.isWriterClosed());
+
+        try (BMP180MappedReadingWriter second = new BMP180MappedReadingWriter(file, 8)) {
+            second.write(2, BMP180Reading.pack(2, 2));
+            second.write(3, BMP180Reading.pack(3, 3));
+            BMP180MappedReadingReader newReader = new BMP180MappedReadingReader(file);
+            assertFalse(newReader.isWriterClosed());
+            assertEquals(2, newReader.getCount());
+            assertEquals(1, oldReader.getCount());
+        }
+    }
+
+    /**
+     * Writing to a closed writer fails.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testWriteClosed() throws IOException {
+        BMP180MappedReadingWriter writer = new BMP180MappedReadingWriter(file, 8);
+        writer.close();
+        writer.write(1, BMP180Reading.pack(1, 1));
+    }
+
+    /**
+     * A file that is not a reading file is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        Files.write(file, new byte[128]);
+        new BMP180MappedReadingReader(file);
+    }
+
+    /**
+     * Readers that are continually overtaken by a single writer only ever see
+     * complete readings, in order.
+     */
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final int readings = 500_000;
+        final BMP180MappedReadingWriter writer = new BMP180MappedReadingWriter(file, 16);
+        final AtomicLong reads = new AtomicLong();
+        final List<Throwable> failures = new ArrayList<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            // Each reader maps the file separately, as another process would.
+            final BMP180MappedReadingReader reader = new BMP180MappedReadingReader(file);
+            readers.add(new Thread(() -> {
+                try {
+                    checkReadings(reader, reads);
+                } catch (Throwable t) {
+                    synchronized (failures) {
+                        failures.add(t);
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        // Each reading's values are derived from its timestamp, so a torn
+        // reading is detected.
+        for (int i = 1; i <= readings; i++) {
+            writer.write(i, BMP180Reading.pack(i, ~i));
+        }
+        writer.close();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(reads.get() > 0);
+    }
+
+    /*
+     * Reads the latest and recent readings until the writer is closed,
+     * checking each is intact and that readings never go backwards.
+     */
+    private static void checkReadings(BMP180MappedReadingReader reader, AtomicLong reads) {
+        BMP180Reading reading = new BMP180Reading();
+        long[] timestamps = new long[16];
+        int[] deciCelsius = new int[16];
+        int[] pascals = new int[16];
+        long latest = 0;
+        long count = 0;
+        while (!reader.isWriterClosed()) {
+            if (reader.readLatest(reading)) {
+                checkReading(reading.getTimestamp(), reading.getDeciCelsius(), reading.getPascals());
+                assertTrue(reading.getTimestamp() >= latest);
+                latest = reading.getTimestamp();
+                count++;
+            }
+            int copied = reader.readRecent(timestamps, deciCelsius, pascals);
+            for (int i = 0; i < copied; i++) {
+                checkReading(timestamps[i], deciCelsius[i], pascals[i]);
+                if (i > 0) {
+                    assertEquals(timestamps[i - 1] + 1, timestamps[i]);
+                }
+            }
+            count += copied;
+        }
+        reads.addAndGet(count);
+    }
+
+    private static void checkReading(long timestamp, int deciCelsius, int pascals) {
+        assertEquals(timestamp, deciCelsius);
+        assertEquals(~deciCelsius, pascals);
+    }
+}
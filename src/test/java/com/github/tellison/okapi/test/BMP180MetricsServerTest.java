@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180MetricsServer;
+import com.github.tellison.okapi.device.BMP180Sampler;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the Prometheus metrics endpoint.
+ */
+public class BMP180MetricsServerTest {
+
+    private BMP180Device device;
+    private BMP180Sampler sampler;
+    private BMP180MetricsServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        I2CFactory.setFactory(new MockFactory());
+        device = new BMP180Device();
+        sampler = new BMP180Sampler(device, BMP180SamplingMode.ULTRA_LOW_POWER, 1, TimeUnit.MILLISECONDS, 4);
+        sampler.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sampler.getBuffer().getCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        // Stop sampling so the bus is quiet while scraping.
+        sampler.close();
+        server = new BMP180MetricsServer(sampler, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        device.close();
+    }
+
+    /**
+     * A scrape reports the latest reading and the device counters.
+     */
+    @Test
+    public void testScrape() throws IOException {
+        String text = scrape("/metrics", 200);
+        assertTrue(text, text.contains("# TYPE bmp180_temperature_celsius gauge\nbmp180_temperature_celsius 15.0\n"));
+        assertTrue(text, text.contains("\nbmp180_pressure_pascals 69964.0\n"));
+        assertTrue(text, text.contains("\nbmp180_reading_age_seconds "));
+        assertTrue(text, text.contains("\nbmp180_readings_total " + sampler.getBuffer().getCount() + "\n"));
+        assertTrue(text, text.contains("\nbmp180_i2c_reads_total " + device.getMetrics().getI2CReadCount() + "\n"));
+        assertTrue(text, text.contains("\nbmp180_reading_latency_seconds{quantile=\"0.99\"} "));
+        assertTrue(text, text.endsWith("\n"));
+    }
+
+    /**
+     * Concurrent scrapes are answered from memory without touching the bus.
+     */
+    @Test
+    public void testConcurrentScrapes() throws Exception {
+        long reads = device.getMetrics().getI2CReadCount();
+        long writes = device.getMetrics().getI2CWriteCount();
+        ExecutorService scrapers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                results.add(scrapers.submit(() -> scrape("/metrics", 200)));
+            }
+            for (Future<String> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS).contains("bmp180_pressure_pascals"));
+            }
+        } finally {
+            scrapers.shutdown();
+        }
+        assertEquals(reads, device.getMetrics().getI2CReadCount());
+        assertEquals(writes, device.getMetrics().getI2CWriteCount());
+    }
+
+    /**
+     * Other paths and methods are rejected.
+     */
+    @Test
+    public void testRejected() throws IOException {
+        scrape("/metrics/other", 404);
+        HttpURLConnection connection = open("/metrics");
+        connection.setRequestMethod("DELETE");
+        assertEquals(405, connection.getResponseCode());
+        assertFalse(connection.getHeaderField("Allow").isEmpty());
+        connection.disconnect();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        InetSocketAddress address = server.getAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), path);
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    /*
+     * Requests the given path, checks the response code, and returns the
+     * body of a successful response.
+     */
+    private String scrape(String path, int expectedCode) throws IOException {
+        HttpURLConnection connection = open(path);
+        try {
+            assertEquals(expectedCode, connection.getResponseCode());
+            if (expectedCode != 200) {
+                return null;
+            }
+            assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[1024];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    body.write(buffer, 0, count);
+                }
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180LatencyStatistics;
+import com.github.tellison.okapi.device.BMP180MetricsMXBean;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the device metrics.
+ */
+public class BMP180MetricsTest {
+
+    private MockFactory factory;
+    private BMP180Device device;
+
+    @Before
+    public void setUp() throws IOException {
+        factory = new MockFactory();
+        I2CFactory.setFactory(factory);
+        device = new BMP180Device();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    /**
+     * A reading counts its transactions and records its latencies.
+     */
+    @Test
+    public void testReadingMetrics() throws Exception {
+        BMP180MetricsMXBean metrics = device.getMetrics();
+        assertEquals(BMP180Device.DEVICE_I2C_ADDRESS, metrics.getAddress());
+        // Reading the calibration data is a single read.
+        assertEquals(1, metrics.getI2CReadCount());
+        metrics.reset();
+
+        BMP180SamplingMode mode = BMP180SamplingMode.STANDARD;
+        device.getTemperatureAndPressure(mode);
+        assertEquals(2, metrics.getI2CWriteCount());
+        assertEquals(2, metrics.getI2CReadCount());
+        assertEquals(0, metrics.getI2CErrorCount());
+        assertEquals(0, metrics.getShortReadCount());
+        assertEquals(0, metrics.getFailedReadingCount());
+        assertEquals(1, metrics.getLockWait().getCount());
+
+        BMP180LatencyStatistics temperature = metrics.getTemperatureConversion();
+        assertEquals(1, temperature.getCount());
+        assertTrue(temperature.getMeanNanos() >= TimeUnit.MICROSECONDS.toNanos(4500));
+        assertTrue(temperature.getMedianNanos() <= temperature.getMaxNanos());
+        assertTrue(temperature.getMedianNanos() >= temperature.getMaxNanos() * 3 / 4);
+
+        BMP180LatencyStatistics[] pressure = metrics.getPressureConversion();
+        assertEquals(BMP180SamplingMode.values().length, pressure.length);
+        for (BMP180SamplingMode other : BMP180SamplingMode.values()) {
+            assertEquals("pressureConversion." + other, pressure[other.ordinal()].getName());
+            assertEquals((other == mode) ? 1 : 0, pressure[other.ordinal()].getCount());
+        }
+        assertTrue(pressure[mode.ordinal()].getMeanNanos() >= TimeUnit.MICROSECONDS.toNanos(7500));
+
+        device.readAsync(mode).get(1, TimeUnit.SECONDS);
+        assertEquals(2, metrics.getLockWait().getCount());
+        assertEquals(2, metrics.getTemperatureConversion().getCount());
+        assertEquals(2, metrics.getPressureConversion()[mode.ordinal()].getCount());
+        BMP180LatencyStatistics latency = metrics.getReadingLatency();
+        assertEquals(2, latency.getCount());
+        assertTrue(latency.getMeanNanos() >= TimeUnit.MICROSECONDS.toNanos(4500 + 7500));
+    }
+
+    /**
+     * A short read fails the reading and is counted.
+     */
+    @Test
+    public void testShortRead() throws IOException {
+        BMP180MetricsMXBean metrics = device.getMetrics();
+        factory.getLastBus().getLastDevice().shortDataReads = true;
+        try {
+            device.getTemperatureAndPressure();
+            fail("Should fail on a short read.");
+        } catch (IOException ex) {
+            // expected
+        }
+        assertEquals(1, metrics.getShortReadCount());
+        assertEquals(1, metrics.getFailedReadingCount());
+        assertEquals(0, metrics.getReadingLatency().getCount());
+    }
+
+    /**
+     * Each open device is registered as an MBean.
+     */
+    @Test
+    public void testMBean() throws IOException, JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.github.tellison.okapi:type=BMP180Device,*");
+        Set<ObjectName> before = server.queryNames(pattern, null);
+
+        ObjectName name;
+        try (BMP180Device other = new BMP180Device()) {
+            Set<ObjectName> added = new HashSet<>(server.queryNames(pattern, null));
+            added.removeAll(before);
+            assertEquals(1, added.size());
+            name = added.iterator().next();
+
+            other.getTemperatureAndPressure();
+            BMP180MetricsMXBean proxy = JMX.newMXBeanProxy(server, name, BMP180MetricsMXBean.class);
+            assertEquals(1, proxy.getReadingLatency().getCount());
+            assertEquals(3, ((Long) server.getAttribute(name, "I2CReadCount")).longValue());
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
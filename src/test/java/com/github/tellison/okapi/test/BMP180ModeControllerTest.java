@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180ModeController;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180Sampler;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the adaptive sampling mode controller, replaying synthetic
+ * pressure waveforms through the mock device.
+ */
+public class BMP180ModeControllerTest {
+
+    // Quiet, then a fast 200Pa swing, then quiet again.
+    private static final IntToDoubleFunction QUIET_ACTIVE_QUIET = sample -> (sample >= 40 && sample < 104)
+            ? 200 * Math.sin(sample * 2 * Math.PI / 20)
+            : 0;
+
+    private MockFactory factory;
+    private BMP180Device device;
+    private MockI2CDevice mock;
+
+    @Before
+    public void setUp() throws IOException {
+        factory = new MockFactory();
+        I2CFactory.setFactory(factory);
+        device = new BMP180Device();
+        mock = factory.getLastBus().getLastDevice();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    /**
+     * The controller moves to the highest resolution while the pressure is
+     * quiet, and to the lowest while it swings, without flapping.
+     */
+    @Test
+    public void testQuietAndActive() throws IOException {
+        mock.pressureWaveform = QUIET_ACTIVE_QUIET;
+        BMP180ModeController controller = new BMP180ModeController(device, 50, TimeUnit.MILLISECONDS, 16);
+        assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION, controller.getSamplingMode());
+
+        BMP180SamplingMode[] modes = replay(controller, 168);
+        assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION, modes[39]);
+        assertEquals(BMP180SamplingMode.ULTRA_LOW_POWER, modes[103]);
+        assertTrue(controller.getStandardDeviation() < 6);
+        assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION, modes[167]);
+        assertTrue("Too many mode changes: " + controller.getModeChangeCount(), controller.getModeChangeCount() <= 6);
+    }
+
+    /**
+     * Held in the lowest resolution mode by a short period on a quiet signal,
+     * the controller steps up to the highest resolution once the period is
+     * lengthened.
+     */
+    @Test
+    public void testStepUp() throws IOException {
+        mock.pressureWaveform = sample -> 0;
+        BMP180ModeController controller = new BMP180ModeController(device, 11, TimeUnit.MILLISECONDS, 16);
+        assertEquals(BMP180SamplingMode.ULTRA_LOW_POWER, controller.getSamplingMode());
+        for (BMP180SamplingMode mode : replay(controller, 16)) {
+            assertEquals(BMP180SamplingMode.ULTRA_LOW_POWER, mode);
+        }
+
+        controller.setPeriod(1, TimeUnit.SECONDS);
+        BMP180SamplingMode[] modes = replay(controller, 48);
+        assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION, modes[47]);
+        assertTrue(controller.getModeChangeCount() <= 3);
+    }
+
+    /**
+     * The controller never chooses a mode slower than the sampling period,
+     * and drops to a faster mode at once when the period is shortened.
+     */
+    @Test
+    public void testThroughputLimit() throws IOException {
+        mock.pressureWaveform = sample -> 0;
+        BMP180ModeController controller = new BMP180ModeController(device, 18, TimeUnit.MILLISECONDS, 4);
+        assertEquals(BMP180SamplingMode.STANDARD, controller.getSamplingMode());
+        for (int i = 0; i < 8; i++) {
+            // Check each mode against the estimates when it was chosen.
+            BMP180SamplingMode mode = replay(controller, 1)[0];
+            assertTrue(mode.compareTo(BMP180SamplingMode.STANDARD) <= 0);
+            assertTrue(mode == BMP180SamplingMode.ULTRA_LOW_POWER
+                    || device.getEstimatedReadingTime(mode, TimeUnit.MILLISECONDS) <= 18);
+        }
+
+        controller.setPeriod(11, TimeUnit.MILLISECONDS);
+        assertEquals(11, controller.getPeriod(TimeUnit.MILLISECONDS));
+        assertEquals(BMP180SamplingMode.ULTRA_LOW_POWER, replay(controller, 1)[0]);
+    }
+
+    /**
+     * A sampler takes each reading in the mode chosen by its controller.
+     */
+    @Test
+    public void testSampler() throws Exception {
+        mock.pressureWaveform = sample -> 200 * Math.sin(sample * 2 * Math.PI / 20);
+        BMP180ModeController controller = new BMP180ModeController(device, 50, TimeUnit.MILLISECONDS, 16);
+        try (BMP180Sampler sampler = new BMP180Sampler(device, controller, 16)) {
+            assertEquals(BMP180SamplingMode.ULTRA_HIGH_RESOLUTION, sampler.getSamplingMode());
+            sampler.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sampler.getSamplingMode() != BMP180SamplingMode.ULTRA_LOW_POWER && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(BMP180SamplingMode.ULTRA_LOW_POWER, sampler.getSamplingMode());
+            assertTrue(sampler.getBuffer().getCount() >= 16);
+        }
+    }
+
+    /*
+     * Takes the given number of readings in the modes chosen by the
+     * controller, and returns the mode chosen after each.
+     */
+    private BMP180SamplingMode[] replay(BMP180ModeController controller, int readings) throws IOException {
+        BMP180SamplingMode[] modes = new BMP180SamplingMode[readings];
+        BMP180Reading reading = new BMP180Reading();
+        for (int i = 0; i < readings; i++) {
+            device.getTemperatureAndPressure(controller.getSamplingMode(), reading);
+            modes[i] = controller.update(reading);
+        }
+        return modes;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180ReadingPublisher;
+import com.github.tellison.okapi.device.BMP180Sampler;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for publishing sampled readings to subscribers.
+ */
+public class BMP180ReadingPublisherTest {
+
+    private MockFactory factory;
+    private BMP180Device device;
+    private ExecutorService executor;
+    private BMP180Sampler sampler;
+
+    /*
+     * A subscriber that records the signals it receives, and can be made to
+     * block in onNext.
+     */
+    private static class TestSubscriber implements BMP180ReadingPublisher.Subscriber {
+        private final long initialRequest;
+        volatile BMP180ReadingPublisher.Subscription subscription;
+        volatile int received;
+        volatile BMP180Reading last;
+        volatile Throwable error;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile CountDownLatch blocker;
+
+        TestSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(BMP180ReadingPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(BMP180Reading reading) {
+            last = reading;
+            received++;
+            CountDownLatch latch = blocker;
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue("Received " + received, received >= count);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        factory = new MockFactory();
+        I2CFactory.setFactory(factory);
+        device = new BMP180Device();
+        executor = Executors.newCachedThreadPool();
+        sampler = new BMP180Sampler(device, BMP180SamplingMode.ULTRA_LOW_POWER, 1, TimeUnit.MILLISECONDS, 4,
+                executor);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sampler.close();
+        executor.shutdown();
+        device.close();
+    }
+
+    /**
+     * Every subscriber receives the readings of the one sampling loop, and is
+     * completed when the sampler is closed.
+     */
+    @Test
+    public void testFanOut() throws InterruptedException {
+        BMP180ReadingPublisher publisher = sampler.getPublisher();
+        TestSubscriber first = new TestSubscriber(Long.MAX_VALUE);
+        TestSubscriber second = new TestSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertEquals(2, publisher.getSubscriberCount());
+        sampler.start();
+        first.awaitReceived(5);
+        second.awaitReceived(5);
+        sampler.close();
+
+        assertTrue(first.done.await(5, TimeUnit.SECONDS));
+        assertTrue(second.done.await(5, TimeUnit.SECONDS));
+        assertNull(first.error);
+        assertEquals(15.0, first.last.getTemperature(), 0.1f);
+        assertEquals(699.64, first.last.getPressure(), 0.1f);
+        assertEquals(0, publisher.getSubscriberCount());
+
+        // One conversion per sample, however many subscribers.
+        MockI2CDevice mock = factory.getLastBus().getLastDevice();
+        assertEquals(sampler.getBuffer().getCount(), mock.pressureCommands);
+
+        // Late subscribers are completed straight away.
+        TestSubscriber late = new TestSubscriber(1);
+        publisher.subscribe(late);
+        assertTrue(late.done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, late.received);
+    }
+
+    /**
+     * Subscribers are only sent the readings they request.
+     */
+    @Test
+    public void testDemand() throws InterruptedException {
+        TestSubscriber subscriber = new TestSubscriber(2);
+        sampler.getPublisher().subscribe(subscriber);
+        sampler.start();
+        subscriber.awaitReceived(2);
+        long count = sampler.getBuffer().getCount();
+        while (sampler.getBuffer().getCount() < count + 5) {
+            Thread.sleep(5);
+        }
+        assertEquals(2, subscriber.received);
+
+        subscriber.subscription.request(1);
+        subscriber.awaitReceived(3);
+        Thread.sleep(50);
+        assertEquals(3, subscriber.received);
+
+        subscriber.subscription.cancel();
+        assertEquals(0, sampler.getPublisher().getSubscriberCount());
+        subscriber.subscription.request(1);
+        Thread.sleep(50);
+        assertEquals(3, subscriber.received);
+    }
+
+    /**
+     * A slow subscriber does not stall the sampler or other subscribers, and
+     * is sent only the latest reading when it catches up.
+     */
+    @Test
+    public void testSlowSubscriber() throws InterruptedException {
+        TestSubscriber slow = new TestSubscriber(Long.MAX_VALUE);
+        slow.blocker = new CountDownLatch(1);
+        TestSubscriber fast = new TestSubscriber(Long.MAX_VALUE);
+        sampler.getPublisher().subscribe(slow);
+        sampler.getPublisher().subscribe(fast);
+        sampler.start();
+
+        slow.awaitReceived(1);
+        int fastStart = fast.received;
+        fast.awaitReceived(fastStart + 10);
+        assertEquals(1, slow.received);
+
+        // The backlog is conflated to the latest reading.
+        sampler.close();
+        CountDownLatch blocker = slow.blocker;
+        slow.blocker = null;
+        blocker.countDown();
+        assertTrue(slow.done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, slow.received);
+        BMP180Reading latest = new BMP180Reading();
+        assertTrue(sampler.getBuffer().readLatest(latest));
+        assertEquals(latest.getTimestamp(), slow.last.getTimestamp());
+        assertTrue(fast.done.await(5, TimeUnit.SECONDS));
+        assertEquals(latest.getTimestamp(), fast.last.getTimestamp());
+    }
+
+    /**
+     * Requests must be positive.
+     */
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        TestSubscriber subscriber = new TestSubscriber(0);
+        sampler.getPublisher().subscribe(subscriber);
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, sampler.getPublisher().getSubscriberCount());
+    }
+
+    /**
+     * By default a subscriber is signalled on a single thread of its own,
+     * rather than a thread for each signal, which ends when the subscription
+     * is completed.
+     */
+    @Test
+    public void testDefaultExecutor() throws InterruptedException {
+        BMP180Sampler own = new BMP180Sampler(device, BMP180SamplingMode.ULTRA_LOW_POWER, 1, TimeUnit.MILLISECONDS,
+                4);
+        Set<Thread> signalled = ConcurrentHashMap.newKeySet();
+        TestSubscriber subscriber = new TestSubscriber(Long.MAX_VALUE) {
+            @Override
+            public void onNext(BMP180Reading reading) {
+                if (Thread.currentThread().getName().equals("BMP180 subscriber")) {
+                    signalled.add(Thread.currentThread());
+                }
+                super.onNext(reading);
+            }
+        };
+        try {
+            own.getPublisher().subscribe(subscriber);
+            own.start();
+            subscriber.awaitReceived(20);
+            assertTrue("Subscriber threads " + signalled, signalled.size() <= 1);
+        } finally {
+            own.close();
+        }
+        assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (subscriberThreads() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, subscriberThreads());
+    }
+
+    /**
+     * By default a subscriber blocked in onNext does not delay the others.
+     */
+    @Test
+    public void testBlockedSubscriber() throws InterruptedException {
+        BMP180Sampler own = new BMP180Sampler(device, BMP180SamplingMode.ULTRA_LOW_POWER, 1, TimeUnit.MILLISECONDS,
+                4);
+        TestSubscriber blocked = new TestSubscriber(Long.MAX_VALUE);
+        blocked.blocker = new CountDownLatch(1);
+        TestSubscriber other = new TestSubscriber(Long.MAX_VALUE);
+        try {
+            own.getPublisher().subscribe(blocked);
+            own.getPublisher().subscribe(other);
+            own.start();
+            blocked.awaitReceived(1);
+            other.awaitReceived(10);
+            assertEquals(1, blocked.received);
+        } finally {
+            blocked.blocker.countDown();
+            own.close();
+        }
+        assertTrue(blocked.done.await(5, TimeUnit.SECONDS));
+        assertTrue(other.done.await(5, TimeUnit.SECONDS));
+    }
+
+    /* Returns the number of live sampler subscriber threads. */
+    private static int subscriberThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().equals("BMP180 subscriber")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
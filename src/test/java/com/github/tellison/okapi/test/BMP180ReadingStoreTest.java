@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180ReadingStore;
+
+/**
+ * Unit tests for the compressed reading store.
+ */
+public class BMP180ReadingStoreTest {
+
+    /*
+     * Fills the arrays with readings every 100ms with some jitter and slowly
+     * changing values, and occasional large jumps.
+     */
+    private static void generate(long[] timestamps, int[] deciCelsius, int[] pascals, long seed) {
+        Random random = new Random(seed);
+        long timestamp = 1_500_000_000_000L;
+        int temperature = 215;
+        int pressure = 101_325;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += 100 + random.nextInt(5) - 2;
+            temperature += random.nextInt(3) - 1;
+            pressure += random.nextInt(21) - 10;
+            if (random.nextInt(1000) == 0) {
+                // A gap in sampling, and a sensor glitch.
+                timestamp += random.nextInt(Integer.MAX_VALUE);
+                temperature = -temperature;
+                pressure = random.nextInt();
+            }
+            timestamps[i] = timestamp;
+            deciCelsius[i] = temperature;
+            pascals[i] = pressure;
+        }
+    }
+
+    /**
+     * Every reading is stored exactly, and can be read back by range.
+     */
+    @Test
+    public void testRoundTrip() {
+        int count = 10_000;
+        long[] timestamps = new long[count];
+        int[] deciCelsius = new int[count];
+        int[] pascals = new int[count];
+        generate(timestamps, deciCelsius, pascals, 42);
+
+        BMP180ReadingStore store = new BMP180ReadingStore(256, 100);
+        for (int i = 0; i < count; i++) {
+            store.append(timestamps[i], BMP180Reading.pack(deciCelsius[i], pascals[i]));
+        }
+        assertEquals(count, store.size());
+        assertEquals(0, store.getDiscardedCount());
+
+        long[] times = new long[count + 1];
+        int[] temperatures = new int[count + 1];
+        int[] pressures = new int[count + 1];
+        assertEquals(count, store.query(Long.MIN_VALUE, Long.MAX_VALUE, times, temperatures, pressures));
+        for (int i = 0; i < count; i++) {
+            assertEquals(timestamps[i], times[i]);
+            assertEquals(deciCelsius[i], temperatures[i]);
+            assertEquals(pascals[i], pressures[i]);
+        }
+
+        // A range within and across blocks.
+        int first = 1000;
+        int last = 1700;
+        assertEquals(last - first + 1, store.count(timestamps[first], timestamps[last]));
+        assertEquals(last - first + 1, store.query(timestamps[first], timestamps[last], times, temperatures, pressures));
+        assertEquals(timestamps[first], times[0]);
+        assertEquals(pascals[last], pressures[last - first]);
+
+        // A range limited by the arrays.
+        assertEquals(10, store.query(timestamps[first], timestamps[last], new long[10], new int[20], new int[30]));
+
+        // Empty ranges.
+        assertEquals(0, store.count(timestamps[0] - 100, timestamps[0] - 1));
+        assertEquals(0, store.query(timestamps[count - 1] + 1, Long.MAX_VALUE, times, temperatures, pressures));
+    }
+
+    /**
+     * Regular readings take a few bits each.
+     */
+    @Test
+    public void testCompression() {
+        int count = 100_000;
+        long[] timestamps = new long[count];
+        int[] deciCelsius = new int[count];
+        int[] pascals = new int[count];
+        generate(timestamps, deciCelsius, pascals, 7);
+
+        BMP180ReadingStore store = new BMP180ReadingStore(1024, 1000);
+        for (int i = 0; i < count; i++) {
+            store.append(timestamps[i], BMP180Reading.pack(deciCelsius[i], pascals[i]));
+        }
+        double bytesPerReading = (double) store.getMemoryBytes() / count;
+        assertTrue("Bytes per reading " + bytesPerReading, bytesPerReading < 4);
+    }
+
+    /**
+     * The oldest block is discarded when the store is full.
+     */
+    @Test
+    public void testRetention() {
+        BMP180ReadingStore store = new BMP180ReadingStore(10, 3);
+        for (int i = 0; i < 45; i++) {
+            store.append(i * 1000L, BMP180Reading.pack(i, 100_000 + i));
+        }
+        assertEquals(25, store.size());
+        assertEquals(20, store.getDiscardedCount());
+
+        long[] times = new long[50];
+        int[] temperatures = new int[50];
+        int[] pressures = new int[50];
+        assertEquals(25, store.query(0, Long.MAX_VALUE, times, temperatures, pressures));
+        assertEquals(20_000L, times[0]);
+        assertEquals(20, temperatures[0]);
+        assertEquals(100_044, pressures[24]);
+    }
+
+    /**
+     * Readings are kept in time order, though equal times and readings from
+     * a holder are allowed, and a reading older than the latest, as when the
+     * clock is stepped back, is stored at the time of the latest.
+     */
+    @Test
+    public void testAppendOrder() {
+        BMP180ReadingStore store = new BMP180ReadingStore(4, 4);
+        store.append(new BMP180Reading());
+        store.append(0, BMP180Reading.pack(-400, 30_000));
+        store.append(1000, BMP180Reading.pack(850, 110_000));
+        store.append(500, BMP180Reading.pack(851, 110_001));
+        store.append(1010, BMP180Reading.pack(852, 110_002));
+        assertEquals(5, store.size());
+        assertEquals(2, store.count(0, 0));
+
+        long[] timestamps = new long[5];
+        int[] deciCelsius = new int[5];
+        int[] pascals = new int[5];
+        assertEquals(3, store.query(1000, 2000, timestamps, deciCelsius, pascals));
+        assertEquals(1000, timestamps[0]);
+        assertEquals(1000, timestamps[1]);
+        assertEquals(851, deciCelsius[1]);
+        assertEquals(110_001, pascals[1]);
+        assertEquals(1010, timestamps[2]);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Aggregate;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180Rollup;
+
+/**
+ * Unit tests for the incremental rollups.
+ */
+public class BMP180RollupTest {
+
+    private static final long MINUTE = 60_000;
+    private static final long HOUR = 60 * MINUTE;
+
+    /**
+     * Windows at each resolution summarize the readings within them.
+     */
+    @Test
+    public void testWindows() {
+        BMP180Rollup rollup = new BMP180Rollup(120, MINUTE, HOUR);
+        assertArrayEquals(new long[] { MINUTE, HOUR }, rollup.getResolutions());
+
+        // A reading every second for two hours, with the pressure rising by
+        // one Pa a second and the temperature cycling each minute.
+        long start = 10 * HOUR;
+        for (int i = 0; i < 7200; i++) {
+            rollup.add(start + i * 1000L, BMP180Reading.pack(200 + i % 60, 100_000 + i));
+        }
+
+        BMP180Aggregate[] minutes = new BMP180Aggregate[200];
+        assertEquals(120, rollup.query(MINUTE, 0, Long.MAX_VALUE, minutes));
+        BMP180Aggregate first = minutes[0];
+        assertEquals(start, first.getStart());
+        assertEquals(start + MINUTE, first.getEnd());
+        assertEquals(60, first.getCount());
+        assertEquals(200, first.getMinDeciCelsius());
+        assertEquals(259, first.getMaxDeciCelsius());
+        assertEquals(229.5, first.getMeanDeciCelsius(), 0.0);
+        assertEquals(100_000, first.getMinPascals());
+        assertEquals(100_059, first.getMaxPascals());
+        assertEquals(100_029.5, first.getMeanPascals(), 0.0);
+        assertEquals(107_199, minutes[119].getMaxPascals());
+
+        BMP180Aggregate[] hours = new BMP180Aggregate[2];
+        assertEquals(2, rollup.query(HOUR, start, start + 2 * HOUR - 1, hours));
+        assertEquals(3600, hours[1].getCount());
+        assertEquals(103_600, hours[1].getMinPascals());
+        assertEquals(105_399.5, hours[1].getMeanPascals(), 0.0);
+
+        // Combining minutes gives the same as the hour.
+        BMP180Aggregate combined = new BMP180Aggregate();
+        assertTrue(rollup.aggregate(MINUTE, start + HOUR, start + 2 * HOUR - 1, combined));
+        assertEquals(hours[1].getStart(), combined.getStart());
+        assertEquals(hours[1].getEnd(), combined.getEnd());
+        assertEquals(hours[1].getCount(), combined.getCount());
+        assertEquals(hours[1].getMinDeciCelsius(), combined.getMinDeciCelsius());
+        assertEquals(hours[1].getMaxPascals(), combined.getMaxPascals());
+        assertEquals(hours[1].getMeanPascals(), combined.getMeanPascals(), 0.0);
+
+        // Ranges are inclusive, and partially covered windows are included.
+        assertEquals(2, rollup.query(MINUTE, start + MINUTE - 1, start + MINUTE, minutes));
+        assertFalse(rollup.aggregate(HOUR, 0, start - 1, combined));
+    }
+
+    /**
+     * Only the most recent windows are retained, and late readings are added
+     * to their window while it is retained.
+     */
+    @Test
+    public void testRetention() {
+        BMP180Rollup rollup = new BMP180Rollup(3, MINUTE);
+        for (int i = 0; i < 5; i++) {
+            rollup.add(i * MINUTE, BMP180Reading.pack(i, i));
+        }
+        BMP180Aggregate[] windows = new BMP180Aggregate[5];
+        assertEquals(3, rollup.query(MINUTE, 0, Long.MAX_VALUE, windows));
+        assertEquals(2 * MINUTE, windows[0].getStart());
+
+        // Late readings.
+        rollup.add(2 * MINUTE + 1, BMP180Reading.pack(-50, 10));
+        rollup.add(MINUTE, BMP180Reading.pack(100, 100));
+        assertEquals(3, rollup.query(MINUTE, 0, Long.MAX_VALUE, windows));
+        assertEquals(2, windows[0].getCount());
+        assertEquals(-50, windows[0].getMinDeciCelsius());
+        assertEquals(10, windows[0].getMaxPascals());
+
+        // Gaps leave no windows.
+        rollup.add(100 * MINUTE, BMP180Reading.pack(1, 1));
+        assertEquals(1, rollup.query(MINUTE, 0, Long.MAX_VALUE, windows));
+        assertEquals(100 * MINUTE, windows[0].getStart());
+    }
+
+    /**
+     * Queries must be at one of the rollup resolutions.
+     */
+    @Test
+    public void testUnknownResolution() {
+        BMP180Rollup rollup = new BMP180Rollup(10, MINUTE);
+        try {
+            rollup.query(HOUR, 0, 1, new BMP180Aggregate[1]);
+            fail("Should not query an unknown resolution.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            new BMP180Rollup(10, 0);
+            fail("Should not allow an empty window.");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
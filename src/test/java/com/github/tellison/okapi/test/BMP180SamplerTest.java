@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180ModeController;
+import com.github.tellison.okapi.device.BMP180Reading;
+import com.github.tellison.okapi.device.BMP180ReadingBuffer;
+import com.github.tellison.okapi.device.BMP180ReadingPublisher;
+import com.github.tellison.okapi.device.BMP180Sampler;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+/**
+ * Unit tests for the continuous sampler and its reading buffer.
+ */
+public class BMP180SamplerTest {
+
+    private BMP180Device device;
+
+    @Before
+    public void setUp() throws IOException {
+        I2CFactory.setFactory(new MockFactory());
+        device = new BMP180Device();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        device.close();
+    }
+
+    /**
+     * An unstarted sampler has no readings.
+     */
+    @Test
+    public void testEmptyBuffer() {
+        try (BMP180Sampler sampler = new BMP180Sampler(device, BMP180SamplingMode.STANDARD, 1, TimeUnit.MILLISECONDS,
+                4)) {
+            BMP180ReadingBuffer buffer = sampler.getBuffer();
+            assertEquals(4, buffer.getCapacity());
+            assertEquals(0, buffer.getCount());
+            assertFalse(buffer.readLatest(new BMP180Reading()));
+            assertEquals(0, buffer.readRecent(new long[4], new float[4], new float[4]));
+        }
+    }
+
+    /**
+     * The sampler cannot be started twice.
+     */
+    @Test
+    public void testStartTwice() {
+        try (BMP180Sampler sampler = new BMP180Sampler(device, BMP180SamplingMode.STANDARD, 1, TimeUnit.MILLISECONDS,
+                4)) {
+            sampler.start();
+            try {
+                sampler.start();
+                fail("Should not start a sampler twice.");
+            } catch (IllegalStateException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Readers see the latest reading, and the history wraps around the buffer
+     * capacity oldest first.
+     */
+    @Test
+    public void testReadings() throws InterruptedException {
+        BMP180ReadingBuffer buffer;
+        try (BMP180Sampler sampler = new BMP180Sampler(device, BMP180SamplingMode.ULTRA_LOW_POWER, 1,
+                TimeUnit.MILLISECONDS, 3)) {
+            sampler.start();
+            buffer = sampler.getBuffer();
+            while (buffer.getCount() < 5) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, sampler.getFailureCount());
+        }
+        long count = buffer.getCount();
+
+        BMP180Reading reading = new BMP180Reading();
+        assertTrue(buffer.readLatest(reading));
+        assertEquals(15.0, reading.getTemperature(), 0.1f);
+        assertEquals(699.64, reading.getPressure(), 0.1f);
+        assertTrue(reading.getTimestamp() > 0);
+
+        long[] timestamps = new long[10];
+        float[] temperatures = new float[10];
+        float[] pressures = new float[10];
+        assertEquals(3, buffer.readRecent(timestamps, temperatures, pressures));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(15.0, temperatures[i], 0.1f);
+            assertEquals(699.64, pressures[i], 0.1f);
+            if (i > 0) {
+                assertTrue(timestamps[i] >= timestamps[i - 1]);
+            }
+        }
+        assertEquals(reading.getTimestamp(), timestamps[2]);
+
+        // The same values in fixed-point.
+        int[] deciCelsius = new int[10];
+        int[] pascals = new int[10];
+        assertEquals(3, buffer.readRecent(timestamps, deciCelsius, pascals));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(150, deciCelsius[i]);
+            assertEquals(temperatures[i], deciCelsius[i] / 10f, 0f);
+            assertEquals(pressures[i], pascals[i] / 100f, 0f);
+        }
+        assertEquals(reading.getPascals(), pascals[2]);
+
+        // Sampling has stopped.
+        assertEquals(count, buffer.getCount());
+    }
+
+    /**
+     * A runtime exception while taking a reading is recorded as a failure,
+     * and sampling continues.
+     */
+    @Test
+    public void testRuntimeFailure() throws InterruptedException {
+        BMP180ModeController controller = new BMP180ModeController(device, 1, TimeUnit.MILLISECONDS, 4) {
+            private int updates;
+
+            @Override
+            public synchronized BMP180SamplingMode update(BMP180Reading reading) {
+                if (++updates % 2 == 0) {
+                    throw new IllegalStateException("Test failure " + updates);
+                }
+                return super.update(reading);
+            }
+        };
+        try (BMP180Sampler sampler = new BMP180Sampler(device, controller, 4)) {
+            sampler.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sampler.getFailureCount() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(sampler.getFailureCount() >= 3);
+            assertTrue(sampler.getLastFailure() instanceof IllegalStateException);
+            assertTrue(sampler.getBuffer().getCount() >= 5);
+        }
+    }
+
+    /**
+     * A failure publishing a reading is recorded, and the reading still
+     * updates the mode controller.
+     */
+    @Test
+    public void testPublishFailure() throws InterruptedException {
+        AtomicInteger updates = new AtomicInteger();
+        BMP180ModeController controller = new BMP180ModeController(device, 1, TimeUnit.MILLISECONDS, 4) {
+            @Override
+            public synchronized BMP180SamplingMode update(BMP180Reading reading) {
+                updates.incrementAndGet();
+                return super.update(reading);
+            }
+        };
+        AtomicBoolean broken = new AtomicBoolean();
+        Executor executor = command -> {
+            if (broken.get()) {
+                throw new IllegalStateException("Test failure");
+            }
+            command.run();
+        };
+        BMP180Sampler sampler = new BMP180Sampler(device, controller, 4, executor);
+        try {
+            sampler.getPublisher().subscribe(new BMP180ReadingPublisher.Subscriber() {
+                @Override
+                public void onSubscribe(BMP180ReadingPublisher.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(BMP180Reading reading) {
+                    // Ignored.
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    // Ignored.
+                }
+
+                @Override
+                public void onComplete() {
+                    // Ignored.
+                }
+            });
+            broken.set(true);
+            sampler.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (updates.get() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            sampler.close();
+        }
+        assertTrue(sampler.getFailureCount() >= 1);
+        assertTrue(sampler.getLastFailure() instanceof IllegalStateException);
+        assertEquals(sampler.getBuffer().getCount(), updates.get());
+    }
+
+    /**
+     * An error stops sampling, and fails the subscribers.
+     */
+    @Test
+    public void testError() throws InterruptedException {
+        BMP180ModeController controller = new BMP180ModeController(device, 1, TimeUnit.MILLISECONDS, 4) {
+            @Override
+            public synchronized BMP180SamplingMode update(BMP180Reading reading) {
+                throw new AssertionError("Test error");
+            }
+        };
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (BMP180Sampler sampler = new BMP180Sampler(device, controller, 4)) {
+            sampler.getPublisher().subscribe(new BMP180ReadingPublisher.Subscriber() {
+                @Override
+                public void onSubscribe(BMP180ReadingPublisher.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(BMP180Reading reading) {
+                    // Ignored.
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    failure.set(throwable);
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            sampler.start();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(failure.get() instanceof AssertionError);
+            assertEquals(1, sampler.getBuffer().getCount());
+        }
+    }
+}
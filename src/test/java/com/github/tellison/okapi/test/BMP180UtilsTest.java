@@ -52,4 +52,36 @@ public class BMP180UtilsTest {
         // same height
         assertEquals(717.9f, BMP180Utils.seaLevelPressure(0f, 717.9f, 10), 0.01f);
     }
+
+    @Test
+    public void testDeciCelsiusToDeciFahrenheit() {
+        // The same well known values, in fixed-point
+        assertEquals(320, BMP180Utils.deciCelsiusToDeciFahrenheit(0));
+        assertEquals(2120, BMP180Utils.deciCelsiusToDeciFahrenheit(1000));
+        assertEquals(-400, BMP180Utils.deciCelsiusToDeciFahrenheit(-400));
+        assertEquals(986, BMP180Utils.deciCelsiusToDeciFahrenheit(370));
+        // rounding to the nearest step, 31.82 and 30.02 deg.F
+        assertEquals(318, BMP180Utils.deciCelsiusToDeciFahrenheit(-1));
+        assertEquals(300, BMP180Utils.deciCelsiusToDeciFahrenheit(-11));
+    }
+
+    @Test
+    public void testAbsoluteAltitudeCentimetres() {
+        // regular values
+        assertEquals(325_552, BMP180Utils.absoluteAltitudeCentimetres(101_100, 70_000, 190), 1);
+        assertEquals(30_366, BMP180Utils.absoluteAltitudeCentimetres(106_700, 102_900, 120), 1);
+        // negative altitude
+        assertEquals(-26_824, BMP180Utils.absoluteAltitudeCentimetres(99_000, 102_100, 250), 1);
+        // same pressure
+        assertEquals(0, BMP180Utils.absoluteAltitudeCentimetres(77_800, 77_800, 190));
+    }
+
+    @Test
+    public void testSeaLevelPascals() {
+        // regular values
+        assertEquals(98_764, BMP180Utils.seaLevelPascals(300_000, 70_000, 150), 10);
+        assertEquals(104_751, BMP180Utils.seaLevelPascals(40_000, 100_000, 200), 10);
+        // same height
+        assertEquals(71_790, BMP180Utils.seaLevelPascals(0, 71_790, 100));
+    }
 }
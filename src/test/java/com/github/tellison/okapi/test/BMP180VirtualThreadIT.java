@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180LatencyStatistics;
+import com.github.tellison.okapi.device.BMP180MetricsMXBean;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+
+/**
+ * Scalability of blocking readings on virtual threads, which only runs on
+ * Java 21 or later.
+ *
+ * This is an integration test, run by {@code mvn verify} on JDK 21 or later
+ * against the packaged multi-release JAR, so that it exercises the Java 21
+ * classes, with a single carrier thread and pinned threads traced.
+ */
+public class BMP180VirtualThreadIT {
+
+    private static final int DEVICES = 50;
+    private static final int READERS = 2000;
+
+    private final List<BMP180Device> devices = new ArrayList<>();
+
+    private ExecutorService executor;
+
+    private PrintStream out;
+
+    private ByteArrayOutputStream traces;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            assumeNoException(ex);
+        }
+        DebugLogger.setEnabled(false);
+
+        // Pinned thread traces are printed to System.out, so keep a copy.
+        out = System.out;
+        traces = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(new TeeOutputStream(out, traces), true));
+        for (int i = 0; i < DEVICES; i++) {
+            devices.add(new BMP180Device(new MockI2CBus()));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (out != null) {
+            System.setOut(out);
+        }
+        for (BMP180Device device : devices) {
+            device.close();
+        }
+        DebugLogger.setEnabled(true);
+    }
+
+    /**
+     * The device lock is the Java 21 version from the multi-release JAR, not
+     * the base version in the class directory.
+     */
+    @Test
+    public void testMultiReleaseLock() throws Exception {
+        Class<?> lock = Class.forName("com.github.tellison.okapi.device.DeviceLock");
+        assertEquals(ReentrantLock.class, lock.getDeclaredField("state").getType());
+    }
+
+    /**
+     * Thousands of virtual threads reading from the emulated devices, each
+     * waiting for the device lock and for conversions. Readings on different
+     * devices must overlap on a single carrier thread, so the threads waiting
+     * must not pin it.
+     */
+    @Test
+    public void testManyReaders() throws Exception {
+        assertEquals("1", System.getProperty("jdk.virtualThreadScheduler.parallelism"));
+        assertEquals("short", System.getProperty("jdk.tracePinnedThreads"));
+
+        BMP180SamplingMode mode = BMP180SamplingMode.ULTRA_LOW_POWER;
+        long start = System.nanoTime();
+        List<Future<float[]>> readings = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            BMP180Device device = devices.get(i % DEVICES);
+            readings.add(executor.submit(() -> device.getTemperatureAndPressure(mode)));
+        }
+        for (Future<float[]> reading : readings) {
+            float[] values = reading.get(30, TimeUnit.SECONDS);
+            assertEquals(15.0, values[0], 0.1f);
+            assertEquals(699.64, values[1], 0.1f);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Waiting for every conversion in turn on the pinned carrier would
+        // take at least as long as all the conversion waits together.
+        long waits = 0;
+        for (BMP180Device device : devices) {
+            BMP180MetricsMXBean metrics = device.getMetrics();
+            waits += total(metrics.getTemperatureConversion());
+            for (BMP180LatencyStatistics conversion : metrics.getPressureConversion()) {
+                waits += total(conversion);
+            }
+        }
+        assertTrue("Took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms waiting "
+                + TimeUnit.NANOSECONDS.toMillis(waits) + "ms", elapsed < waits / 4);
+        assertFalse("Pinned:\n" + traces, traces.toString().contains("<== monitors"));
+    }
+
+    private static long total(BMP180LatencyStatistics statistics) {
+        return statistics.getCount() * statistics.getMeanNanos();
+    }
+
+    /*
+     * Writes to two streams.
+     */
+    private static final class TeeOutputStream extends OutputStream {
+
+        private final OutputStream first;
+
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+}
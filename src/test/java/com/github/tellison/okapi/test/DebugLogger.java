@@ -21,12 +21,21 @@ package com.github.tellison.okapi.test;
  */
 class DebugLogger {
 
+    // Allows tests to silence the logging, e.g. when measuring allocation.
+    private static volatile boolean enabled = true;
+
     public DebugLogger() {
         super();
     }
 
+    public static void setEnabled(boolean enabled) {
+        DebugLogger.enabled = enabled;
+    }
+
     public DebugLogger log(String message) {
-        System.out.println("[mock BMP180 device] " + message);
+        if (enabled) {
+            System.out.println("[mock BMP180 device] " + message);
+        }
         return this;
     }
 
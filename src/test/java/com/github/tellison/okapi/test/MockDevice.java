@@ -19,6 +19,9 @@ package com.github.tellison.okapi.test;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntToDoubleFunction;
 
 import com.github.tellison.okapi.device.BMP180Device;
 import com.pi4j.io.i2c.I2CDevice;
@@ -54,9 +57,127 @@ class MockI2CDevice implements I2CDevice {
     // What our emulation device is current doing.
     DeviceStates state;
 
+    // Counts of the conversion commands received.
+    int temperatureCommands;
+    int pressureCommands;
+
+    // When the current conversion completes, in System.nanoTime() terms.
+    private long conversionEnd;
+
+    // The last value written to the control register.
+    private int control;
+
+    // Percentage of the maximum conversion time that conversions take, as
+    // real devices often finish early.
+    int conversionPercent = 100;
+
+    // Count of reads of the control register, i.e. conversion status polls.
+    int statusReads;
+
+    // Count of bus transactions, where reading a register is a write of the
+    // register address followed by a read, unless they are combined.
+    int transactions;
+
+    // Whether reads of conversion data return too few bytes.
+    boolean shortDataReads;
+
+    // When set, the next command written to the control register counts down
+    // the entered latch, then waits for the gate to open.
+    volatile CountDownLatch commandEntered;
+    volatile CountDownLatch commandGate;
+
+    // When set, the next command written to the control register throws it.
+    volatile Error commandError;
+
+    // A pressure waveform to replay, as the change from the data sheet
+    // pressure in Pa for each pressure conversion in turn, or null to always
+    // return the data sheet pressure. Replayed pressures have the typical
+    // noise of the conversion's sampling mode added.
+    IntToDoubleFunction pressureWaveform;
+
+    // Source of the noise added to replayed pressures.
+    Random noise = new Random(180);
+
+    // The data sheet uncompensated pressure, and the approximate change in
+    // compensated pressure for each unit of it, in ultra low power mode.
+    private static final int DATA_SHEET_UP = 23843;
+    private static final double PASCALS_PER_UP = 3.0;
+
+    // Typical RMS pressure noise from the data sheet in Pa, indexed by over
+    // sampling setting.
+    private static final double[] NOISE_PASCALS = { 6, 5, 4, 3 };
+
+    // Maximum conversion times from the data sheet, indexed by over sampling
+    // setting. Temperature conversions take the same time as oss=0.
+    private static final long[] CONVERSION_NANOS = { 4_500_000, 7_500_000, 13_500_000, 25_500_000 };
+
+    // Whether conversions complete immediately, e.g. when benchmarking.
+    private static volatile boolean zeroDelay;
+
+    // Time taken to transfer each byte over the emulated bus.
+    private static volatile long byteTransferNanos;
+
+    // The AC1 calibration coefficient reported by new devices.
+    private static volatile short calibrationAC1 = 408;
+
+    // The AC1 calibration coefficient of this device.
+    private final short ac1 = calibrationAC1;
+
+    // The thread that last read the calibration data.
+    volatile Thread calibrationReader;
+
     // A simple output to show mock device internals.
     DebugLogger logger = new DebugLogger();
 
+    /*
+     * Sets whether conversions on all mock devices complete immediately,
+     * rather than taking the data sheet conversion time.
+     */
+    static void setZeroDelay(boolean zeroDelay) {
+        MockI2CDevice.zeroDelay = zeroDelay;
+    }
+
+    /*
+     * Sets the time taken to transfer each byte over the bus to all mock
+     * devices, e.g. 90us for a 100kHz bus, or zero for no delay.
+     */
+    static void setByteTransferNanos(long nanos) {
+        byteTransferNanos = nanos;
+    }
+
+    /*
+     * Sets the AC1 calibration coefficient reported by mock devices created
+     * from now on, to emulate a different device.
+     */
+    static void setCalibrationAC1(short ac1) {
+        calibrationAC1 = ac1;
+    }
+
+    /* Waits for the given number of bytes to cross the bus. */
+    private static void transfer(int bytes) {
+        long nanos = byteTransferNanos * bytes;
+        if (nanos > 0) {
+            long end = System.nanoTime() + nanos;
+            while (System.nanoTime() - end < 0) {
+                // Busy wait, parking is too coarse for a byte time.
+            }
+        }
+    }
+
+    /* Returns when a conversion started now completes. */
+    private long conversionEnd(int oss) {
+        return zeroDelay ? Long.MIN_VALUE : System.nanoTime() + CONVERSION_NANOS[oss] * conversionPercent / 100;
+    }
+
+    /*
+     * Returns the control register value. The start of conversion bit (5) is
+     * set by the command, and reads as zero once the conversion completes.
+     */
+    private int controlStatus() {
+        statusReads++;
+        return (System.nanoTime() < conversionEnd) ? control : control & ~0x20;
+    }
+
     @Override
     public void write(byte b) throws IOException {
         write(new byte[] { b }, 0, 1);
@@ -70,16 +191,46 @@ class MockI2CDevice implements I2CDevice {
 
     @Override
     public void write(int address, byte b) throws IOException {
-        write(address, new byte[] { b }, 0, 1);
+        // Handled directly, so a single byte write creates no garbage.
+        writeRegister(address, b);
     }
 
     @Override
     public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+        if ((size != 1) || (buffer.length - size < offset)) {
+            throw new IOException("Attempt to write register with invalid arguments.");
+        }
+        writeRegister(address, buffer[offset]);
+    }
+
+    /*
+     * Waits for the latch to open, ignoring interrupts.
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (latch.getCount() > 0) {
+            try {
+                latch.await();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Writes a single byte value to the given register address.
+     */
+    private void writeRegister(int address, byte value) throws IOException {
+        transactions++;
+        transfer(2);
         switch (address) {
             // Poking the soft reset
             case SOFT_RESET_ADDRESS:
                 logger.log("Received reset command");
-                if ((size < 1) || (buffer.length - size < offset) || (buffer[offset] != SOFT_RESET_COMMAND)) {
+                if (value != SOFT_RESET_COMMAND) {
                     throw new IOException("Attempt to reset with invalid arguments.");
                 }
                 // Reset does nothing here
@@ -87,19 +238,31 @@ class MockI2CDevice implements I2CDevice {
 
             // Poking the temp/pressure command
             case CONTROL_REGISTER_ADDRESS:
-                if ((size != 1) || (buffer.length - size < offset)) {
-                    throw new IOException("Attempt to send control with invalid arguments.");
+                CountDownLatch gate = commandGate;
+                if (gate != null) {
+                    commandGate = null;
+                    commandEntered.countDown();
+                    awaitUninterruptibly(gate);
                 }
-                int control = buffer[offset];
+                Error error = commandError;
+                if (error != null) {
+                    commandError = null;
+                    throw error;
+                }
+                control = value & 0xFF;
                 // Ignore the sampling mode requested
                 switch (control & 0b00111111) {
                     case READ_TEMPERATURE_COMMAND:
                         logger.log("Received read temperature command");
                         state = DeviceStates.READING_TEMP;
+                        temperatureCommands++;
+                        conversionEnd = conversionEnd(0);
                         break;
                     case READ_PRESSURE_COMMAND:
                         logger.log("Received read pressure command");
                         state = DeviceStates.READING_PRESSURE;
+                        pressureCommands++;
+                        conversionEnd = conversionEnd((control >> 6) & 0b11);
                         break;
                     default:
                         throw new RuntimeException("Received unknown command on mock device");
@@ -123,6 +286,13 @@ class MockI2CDevice implements I2CDevice {
 
     @Override
     public int read(int address) throws IOException {
+        // Handled directly, so polling the conversion status creates no
+        // garbage.
+        if (address == CONTROL_REGISTER_ADDRESS) {
+            transactions += 2;
+            transfer(2);
+            return controlStatus();
+        }
         byte[] buffer = new byte[4];
         int bytesRead = read(address, buffer, 0, buffer.length);
         switch (bytesRead) {
@@ -144,12 +314,22 @@ class MockI2CDevice implements I2CDevice {
 
     @Override
     public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+        transactions += 2;
+        return readRegister(address, buffer, offset, size);
+    }
+
+    /*
+     * Reads the given register address into the buffer.
+     */
+    private int readRegister(int address, byte[] buffer, int offset, int size) throws IOException {
         if (buffer.length - size < offset) {
             throw new RuntimeException("Read request buffer overflow");
         }
+        transfer(1 + size);
         switch (address) {
             // Request for calibration data response
             case CALIB_REGISTER_ADDRESS:
+                calibrationReader = Thread.currentThread();
                 byte[] calib = getCalibData();
                 int len = Math.min(calib.length, size);
                 System.arraycopy(calib, 0, buffer, offset, len);
@@ -161,11 +341,23 @@ class MockI2CDevice implements I2CDevice {
                 buffer[offset] = BMP180Device.DEVICE_ID;
                 return 1;
 
+            // Request for the control register, to check conversion status
+            case CONTROL_REGISTER_ADDRESS:
+                buffer[offset] = (byte) controlStatus();
+                return 1;
+
             // Request for a temperature/ pressure reading
             // Answer values for the worked example in the data sheet so we cand
             // check the answer
             case READ_DATA_ADDRESS:
                 logger.log("Received a read data request");
+                if (System.nanoTime() < conversionEnd) {
+                    // The real device would return stale data.
+                    throw new RuntimeException("Read data before conversion completed on mock device");
+                }
+                if (shortDataReads) {
+                    return 1;
+                }
 
                 switch (state) {
                     case READING_TEMP:
@@ -173,13 +365,6 @@ class MockI2CDevice implements I2CDevice {
                         if (size < 2) {
                             throw new RuntimeException("Temperature request buffer too small");
                         }
-                        // Delay to mimic the device response time, really this
-                        // would be
-                        // between the control and the read, but hey.
-                        try {
-                            Thread.sleep(4, 500000);
-                        } catch (InterruptedException ex) {
-                        }
                         // Answer 27898
                         buffer[offset] = (byte) 0x6C;
                         buffer[offset + 1] = (byte) 0xFA;
@@ -189,12 +374,12 @@ class MockI2CDevice implements I2CDevice {
                         if (size < 3) {
                             throw new RuntimeException("Pressure request buffer too small");
                         }
-                        // Delay to mimic the device response time, really this
-                        // would be
-                        // between the control and the read, but hey.
-                        try {
-                            Thread.sleep(4, 500000);
-                        } catch (InterruptedException ex) {
+                        if (pressureWaveform != null) {
+                            int word = replayPressure();
+                            buffer[offset] = (byte) (word >> 16);
+                            buffer[offset + 1] = (byte) (word >> 8);
+                            buffer[offset + 2] = (byte) word;
+                            return 3;
                         }
                         // Answer 6103808 (23843 << 8)
                         buffer[offset] = (byte) 0x5D;
@@ -211,8 +396,26 @@ class MockI2CDevice implements I2CDevice {
     @Override
     public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset, int readSize)
             throws IOException {
-        // TODO Auto-generated method stub
-        throw new RuntimeException("Not yet implemented");
+        // A combined transaction writing the register address, then reading
+        // from it after a repeated start.
+        if ((writeSize != 1) || (writeBuffer.length - writeSize < writeOffset)) {
+            throw new IOException("Attempt to read register with invalid arguments.");
+        }
+        transactions++;
+        return readRegister(writeBuffer[writeOffset] & 0xFF, readBuffer, readOffset, readSize);
+    }
+
+    /*
+     * Returns the 24 bit pressure data word for the current conversion of the
+     * replayed waveform. The device shifts the result of the conversion left
+     * by 8 - oss bits, so the extra resolution of over sampling is kept.
+     */
+    private int replayPressure() {
+        int oss = (control >> 6) & 0b11;
+        double pascals = pressureWaveform.applyAsDouble(pressureCommands - 1)
+                + noise.nextGaussian() * NOISE_PASCALS[oss];
+        long word = Math.round((DATA_SHEET_UP + pascals / PASCALS_PER_UP) * 256);
+        return (int) Math.max(0, Math.min(word, 0xFFFFFF));
     }
 
     /*
@@ -222,7 +425,7 @@ class MockI2CDevice implements I2CDevice {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(22);
 
         try (DataOutputStream calibDataStream = new DataOutputStream(bos);) {
-            calibDataStream.writeShort(408); // AC1
+            calibDataStream.writeShort(ac1); // AC1
             calibDataStream.writeShort(-72); // AC2
             calibDataStream.writeShort(-14383); // AC3
             calibDataStream.writeShort(32741); // AC4
@@ -29,9 +29,37 @@ import junit.framework.TestCase;
  */
 class MockFactory extends TestCase implements I2CFactoryProvider {
 
+    // The most recent bus handed out by this factory.
+    private MockI2CBus lastBus;
+
+    // The number of buses handed out by this factory.
+    private int busCount;
+
+    // Number of multiplexer channels on each bus, or zero for none.
+    private final int channels;
+
+    MockFactory() {
+        this(0);
+    }
+
+    MockFactory(int channels) {
+        super();
+        this.channels = channels;
+    }
+
     @Override
     public I2CBus getBus(int busNumber) throws IOException {
         assertEquals(I2CBus.BUS_1, busNumber);
-        return new MockI2CBus();
+        lastBus = new MockI2CBus(channels);
+        busCount++;
+        return lastBus;
+    }
+
+    MockI2CBus getLastBus() {
+        return lastBus;
+    }
+
+    int getBusCount() {
+        return busCount;
     }
 }
@@ -27,17 +27,84 @@ import com.pi4j.io.i2c.I2CDevice;
  *
  */
 class MockI2CBus implements I2CBus {
+
+    // The I2C address of the emulated multiplexer.
+    static final int MULTIPLEXER_ADDRESS = 0x70;
+
+    // The most recent device handed out by this bus.
+    private MockI2CDevice lastDevice;
+
+    // An optional multiplexer with a device on each channel.
+    private final MockMultiplexer multiplexer;
+
+    // The name reported for the bus device file.
+    private final String fileName;
+
+    private boolean closed;
+
+    /*
+     * A bus with a single BMP180 device.
+     */
+    MockI2CBus() {
+        this(0);
+    }
+
+    /*
+     * A bus with a multiplexer hosting the given number of BMP180 devices, or
+     * a single BMP180 device when zero.
+     */
+    MockI2CBus(int channels) {
+        this(channels, "Undefined file name");
+    }
+
+    /*
+     * A bus with a single BMP180 device, reporting the given device file
+     * name.
+     */
+    MockI2CBus(String fileName) {
+        this(0, fileName);
+    }
+
+    private MockI2CBus(int channels, String fileName) {
+        super();
+        multiplexer = (channels > 0) ? new MockMultiplexer(channels) : null;
+        this.fileName = fileName;
+    }
+
     @Override
     public I2CDevice getDevice(int address) throws IOException {
+        if (multiplexer != null) {
+            switch (address) {
+                case MULTIPLEXER_ADDRESS:
+                    return multiplexer;
+                case BMP180Device.DEVICE_I2C_ADDRESS:
+                    return multiplexer.router;
+                default:
+                    throw new IOException("Invalid address requested for mock device on I2C bus.");
+            }
+        }
         if (BMP180Device.DEVICE_I2C_ADDRESS != address) {
             throw new IOException("Invalid address requested for mock device on I2C bus.");
         }
-        return new MockI2CDevice();
+        lastDevice = new MockI2CDevice();
+        return lastDevice;
+    }
+
+    MockI2CDevice getLastDevice() {
+        return lastDevice;
+    }
+
+    MockMultiplexer getMultiplexer() {
+        return multiplexer;
+    }
+
+    boolean isClosed() {
+        return closed;
     }
 
     @Override
     public String getFileName() {
-        return "Undefined file name";
+        return fileName;
     }
 
     @Override
@@ -47,6 +114,9 @@ class MockI2CBus implements I2CBus {
 
     @Override
     public void close() throws IOException {
-        // Do nothing
+        if (closed) {
+            throw new IOException("Mock I2C bus is already closed.");
+        }
+        closed = true;
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import java.io.IOException;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+/*
+ * A simple emulator for a TCA9548A style I2C multiplexer, with a mock BMP180
+ * device on each of its downstream channels.
+ *
+ * Writing a byte to the multiplexer selects the channels given by the bits that
+ * are set. Requests to the BMP180 address are routed to the device on the
+ * selected channel, and exactly one channel must be selected.
+ */
+class MockMultiplexer implements I2CDevice {
+
+    private final MockI2CDevice[] channels;
+
+    // Bit mask of the selected channels.
+    private int selected;
+
+    // The downstream view of the BMP180 address.
+    final I2CDevice router = new Router();
+
+    MockMultiplexer(int channelCount) {
+        super();
+        channels = new MockI2CDevice[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channels[i] = new MockI2CDevice();
+        }
+    }
+
+    MockI2CDevice getChannelDevice(int channel) {
+        return channels[channel];
+    }
+
+    /* Returns the device on the single selected channel. */
+    private MockI2CDevice selectedDevice() throws IOException {
+        if (Integer.bitCount(selected) != 1) {
+            throw new IOException("Mock multiplexer needs exactly one channel selected, has 0b"
+                    + Integer.toBinaryString(selected));
+        }
+        int channel = Integer.numberOfTrailingZeros(selected);
+        if (channel >= channels.length) {
+            throw new IOException("No mock device on multiplexer channel " + channel);
+        }
+        return channels[channel];
+    }
+
+    @Override
+    public void write(byte b) throws IOException {
+        selected = b & 0xFF;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int size) throws IOException {
+        if (size != 1) {
+            throw new IOException("Multiplexer control register is a single byte.");
+        }
+        write(buffer[offset]);
+    }
+
+    @Override
+    public void write(int address, byte b) throws IOException {
+        throw new IOException("Multiplexer has no addressable registers.");
+    }
+
+    @Override
+    public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+        throw new IOException("Multiplexer has no addressable registers.");
+    }
+
+    @Override
+    public int read() throws IOException {
+        return selected;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException {
+        buffer[offset] = (byte) selected;
+        return 1;
+    }
+
+    @Override
+    public int read(int address) throws IOException {
+        throw new IOException("Multiplexer has no addressable registers.");
+    }
+
+    @Override
+    public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+        throw new IOException("Multiplexer has no addressable registers.");
+    }
+
+    @Override
+    public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset,
+            int readSize) throws IOException {
+        throw new IOException("Multiplexer has no addressable registers.");
+    }
+
+    /*
+     * Forwards requests for the BMP180 address to the selected channel.
+     */
+    private class Router implements I2CDevice {
+
+        @Override
+        public void write(byte b) throws IOException {
+            selectedDevice().write(b);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int size) throws IOException {
+            selectedDevice().write(buffer, offset, size);
+        }
+
+        @Override
+        public void write(int address, byte b) throws IOException {
+            selectedDevice().write(address, b);
+        }
+
+        @Override
+        public void write(int address, byte[] buffer, int offset, int size) throws IOException {
+            selectedDevice().write(address, buffer, offset, size);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return selectedDevice().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int size) throws IOException {
+            return selectedDevice().read(buffer, offset, size);
+        }
+
+        @Override
+        public int read(int address) throws IOException {
+            return selectedDevice().read(address);
+        }
+
+        @Override
+        public int read(int address, byte[] buffer, int offset, int size) throws IOException {
+            return selectedDevice().read(address, buffer, offset, size);
+        }
+
+        @Override
+        public int read(byte[] writeBuffer, int writeOffset, int writeSize, byte[] readBuffer, int readOffset,
+                int readSize) throws IOException {
+            return selectedDevice().read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize);
+        }
+    }
+}
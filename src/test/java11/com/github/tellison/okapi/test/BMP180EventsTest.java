@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Tim Ellison
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.tellison.okapi.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.tellison.okapi.device.BMP180Device;
+import com.github.tellison.okapi.device.BMP180SamplingMode;
+import com.pi4j.io.i2c.I2CFactory;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Unit tests for the Flight Recorder events of a device.
+ */
+public class BMP180EventsTest {
+
+    private static final String PREFIX = "com.github.tellison.okapi.";
+
+    private Recording recording;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(FlightRecorder.isAvailable());
+        I2CFactory.setFactory(new MockFactory());
+        file = Files.createTempFile("okapi", ".jfr");
+        recording = new Recording();
+        for (String name : new String[] { "CalibrationRead", "CommandWrite", "ConversionWait", "DataRead",
+                "Compensation" }) {
+            recording.enable(PREFIX + name);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (recording != null) {
+            recording.close();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * A reading records its transactions, waits, and compensation.
+     */
+    @Test
+    public void testReadingEvents() throws Exception {
+        recording.start();
+        try (BMP180Device device = new BMP180Device()) {
+            device.getTemperatureAndPressure(BMP180SamplingMode.HIGH_RESOLUTION);
+            device.readAsync(BMP180SamplingMode.STANDARD).get(1, TimeUnit.SECONDS);
+        }
+        recording.stop();
+        recording.dump(file);
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Map<String, Integer> counts = new HashMap<>();
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            counts.merge(name.substring(PREFIX.length()), 1, Integer::sum);
+            assertEquals(1, event.getInt("bus"));
+            assertEquals(BMP180Device.DEVICE_I2C_ADDRESS, event.getInt("address"));
+
+            if (name.endsWith("ConversionWait") || name.endsWith("DataRead")) {
+                if ("temperature".equals(event.getString("measurement"))) {
+                    assertNull(event.getString("mode"));
+                } else {
+                    assertNotNull(event.getString("mode"));
+                }
+            }
+            if (name.endsWith("ConversionWait")) {
+                long minimum = "temperature".equals(event.getString("measurement")) ? 4500
+                        : "HIGH_RESOLUTION".equals(event.getString("mode")) ? 13500 : 7500;
+                assertTrue(event.getDuration().toNanos() >= TimeUnit.MICROSECONDS.toNanos(minimum));
+            }
+        }
+        assertEquals(Integer.valueOf(1), counts.get("CalibrationRead"));
+        assertEquals(Integer.valueOf(4), counts.get("CommandWrite"));
+        assertEquals(Integer.valueOf(4), counts.get("ConversionWait"));
+        assertEquals(Integer.valueOf(4), counts.get("DataRead"));
+        assertEquals(Integer.valueOf(2), counts.get("Compensation"));
+    }
+
+    /**
+     * The events of a device on a bus supplied by the caller are tagged with
+     * the bus number from its device file name.
+     */
+    @Test
+    public void testCallerBusEvents() throws Exception {
+        recording.start();
+        try (BMP180Device device = new BMP180Device(new MockI2CBus("/dev/i2c-3"))) {
+            device.getTemperatureAndPressure();
+        }
+        try (BMP180Device device = new BMP180Device(new MockI2CBus())) {
+            device.getTemperatureAndPressure();
+        }
+        recording.stop();
+        recording.dump(file);
+
+        Map<Integer, Integer> buses = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            buses.merge(event.getInt("bus"), 1, Integer::sum);
+        }
+        assertEquals(2, buses.size());
+        assertEquals(buses.get(3), buses.get(-1));
+    }
+}